@@ -1,13 +1,38 @@
 package projects;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import projects.dao.ProjectDao;
+import projects.entity.CategoryRowMapper;
+import projects.entity.MaterialRowMapper;
 import projects.entity.Project;
+import projects.entity.ProjectRowMapper;
+import projects.entity.ProjectSummary;
+import projects.entity.ProjectSummaryRowMapper;
+import projects.entity.StepRowMapper;
 import projects.exception.DbException;
 import projects.service.ProjectService;
+import projects.util.DbConnection;
 
 public class ProjectsApp {
   private Scanner scanner = new Scanner(System.in);
@@ -15,7 +40,34 @@ public class ProjectsApp {
   private Project curProject;
 
   // Store last displayed list for mapping list number -> DB ID
-  private List<Project> lastListedProjects;
+  private List<ProjectSummary> lastListedProjects;
+
+  // How many projects to show at a time
+  private static final int PAGE_SIZE = 20;
+
+  // A project list older than this is still shown, but reloaded in the background
+  private static final long LISTING_MAX_AGE_NANOS = Duration.ofSeconds(10).toNanos();
+
+  // Prefetched project details older than this are not used
+  private static final long PREFETCH_MAX_AGE_NANOS = Duration.ofSeconds(30).toNanos();
+
+  // Database calls that the menu does not have to wait for run here (one virtual thread each)
+  private final ExecutorService background = Executors.newVirtualThreadPerTaskExecutor();
+
+  // The project list, loaded (or being reloaded) in the background, and when the load started
+  private CompletableFuture<List<ProjectSummary>> projectListing;
+  private long listingStartedNanos;
+
+  // Full project details loaded ahead of time, by project ID
+  private record Prefetched(CompletableFuture<Project> project, long startedNanos) {
+    boolean isFresh() {
+      return System.nanoTime() - startedNanos <= PREFETCH_MAX_AGE_NANOS;
+    }
+  }
+  private final Map<Integer, Prefetched> prefetched = new HashMap<>();
+
+  // The projects the user worked with most recently (most recent first); likely to be next
+  private final Deque<Integer> recentProjectIds = new ArrayDeque<>();
 
   // Menu options
   private List<String> operations = List.of(
@@ -26,12 +78,83 @@ public class ProjectsApp {
       "5) Delete a project"
   );
 
+  // -Dprojects.startupTiming=true prints the time to the first menu and to the first query
+  private static final boolean STARTUP_TIMING = Boolean.getBoolean("projects.startupTiming");
+  private boolean menuTimed;
+  private boolean queryTimed;
+
   public static void main(String[] args) {
+    if (List.of(args).contains("--training-run")) {
+      new ProjectsApp().trainingRun();
+      return;
+    }
+    int batch = List.of(args).indexOf("--batch");
+    if (batch >= 0) {
+      System.exit(runBatch(batch + 1 < args.length ? args[batch + 1] : null));
+    }
     new ProjectsApp().processUserSelections();
   }
 
+  /**
+   * Used when building a class data sharing (CDS) archive (see the "cds" profile in pom.xml):
+   * add a project, list and select it the way the menu does, so the archive holds the classes
+   * those steps use, then exit without waiting for input. The queries only run against the
+   * memory store (-Dprojects.store=memory, which the pom passes), so building never writes to a
+   * real database; the JDBC store's classes are loaded without connecting.
+   */
+  private void trainingRun() {
+    printOperations();
+    try {
+      DbConnection.getShardCount(); // reads the connection settings
+
+      for (Class<?> type : List.of(ProjectDao.class, ProjectRowMapper.class,
+          MaterialRowMapper.class, StepRowMapper.class, CategoryRowMapper.class,
+          ProjectSummaryRowMapper.class)) {
+        Class.forName(type.getName(), true, type.getClassLoader()); // runs its static setup
+      }
+
+      Class.forName("com.mysql.cj.jdbc.Driver");
+    } catch (ClassNotFoundException e) {
+      System.out.println("MySQL JDBC Driver not found.");
+    }
+
+    if (!"memory".equals(System.getProperty("projects.store"))) {
+      System.out.println("No sample queries: they only run with -Dprojects.store=memory.");
+      return;
+    }
+
+    Project project = new Project();
+    project.setProjectName("Training run");
+    project.setEstimatedHours(new BigDecimal("1.00"));
+    project.setDifficulty(1);
+    projectService.addProject(project);
+
+    listProjects(); // option 2 (one page, so it does not ask for input)
+    curProject = loadProject(lastListedProjects.get(0).projectId()); // option 3
+    rememberRecent(curProject.getProjectId());
+    printOperations();
+  }
+
+  /**
+   * Batch mode (see ProjectsBatch): run the commands in the file, or on standard input if no
+   * file is given. Returns the exit code: 0 if all commands worked, 1 if some failed, 2 if the
+   * input could not be read.
+   */
+  private static int runBatch(String fileName) {
+    try (BufferedReader in = Objects.isNull(fileName)
+        ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+        : Files.newBufferedReader(Path.of(fileName))) {
+      return new ProjectsBatch(new ProjectService(), System.out).run(in) == 0 ? 0 : 1;
+    } catch (IOException e) {
+      System.out.println("Unable to read " + Objects.requireNonNullElse(fileName, "input")
+          + ": " + e.getMessage());
+      return 2;
+    }
+  }
+
   private void processUserSelections() {
     boolean done = false;
+    reloadListing(); // load the list while the user reads the menu
 
     while (!done) {
       try {
@@ -47,6 +170,10 @@ public class ProjectsApp {
           default:
             System.out.println("\n" + selection + " is not a valid selection. Try again.");
         }
+        if (selection >= 1 && selection <= 5 && !queryTimed) {
+          queryTimed = true;
+          printStartupTime("first query");
+        }
       } catch (Exception e) {
         System.out.println("\nError: " + e + " Try again.");
       }
@@ -55,22 +182,23 @@ public class ProjectsApp {
 
   /** Option 5: Delete using list number, not DB ID */
   private void deleteProject() {
-    listProjects(); // Refresh list
-
-    Integer choice = getIntInput("Enter the number from the list to delete");
+    Integer choice = chooseFromList("Enter the number from the list to delete");
     if (choice == null || lastListedProjects == null ||
         choice < 1 || choice > lastListedProjects.size()) {
       System.out.println("Invalid selection. Nothing deleted.");
       return;
     }
 
-    Project toDelete = lastListedProjects.get(choice - 1);
-    Integer projectId = toDelete.getProjectId();
-    String projectName = toDelete.getProjectName();
+    ProjectSummary toDelete = lastListedProjects.get(choice - 1);
+    Integer projectId = toDelete.projectId();
+    String projectName = toDelete.projectName();
 
     try {
       projectService.deleteProject(projectId);
       System.out.println("Project '" + projectName + "' was deleted successfully.");
+      prefetched.remove(projectId);
+      recentProjectIds.remove(projectId);
+      reloadListing();
       if (curProject != null && Objects.equals(curProject.getProjectId(), projectId)) {
         curProject = null;
       }
@@ -91,40 +219,195 @@ public class ProjectsApp {
     Integer diffIn = getIntInput("Enter the project difficulty (1-5) [" + curProject.getDifficulty() + "]");
     String notesIn = getStringInput("Enter the project notes [" + curProject.getNotes() + "]");
 
+    // Only set what the user typed, so only those columns are written
     Project p = new Project();
     p.setProjectId(curProject.getProjectId());
-    p.setProjectName(Objects.isNull(nameIn)  ? curProject.getProjectName()  : nameIn);
-    p.setEstimatedHours(Objects.isNull(estIn) ? curProject.getEstimatedHours() : estIn);
-    p.setActualHours(Objects.isNull(actIn)    ? curProject.getActualHours()    : actIn);
-    p.setDifficulty(Objects.isNull(diffIn)    ? curProject.getDifficulty()     : diffIn);
-    p.setNotes(Objects.isNull(notesIn)        ? curProject.getNotes()          : notesIn);
+    p.setVersion(curProject.getVersion()); // lets the DB detect edits made by someone else
+    if (Objects.nonNull(nameIn))  p.setProjectName(nameIn);
+    if (Objects.nonNull(estIn))   p.setEstimatedHours(estIn);
+    if (Objects.nonNull(actIn))   p.setActualHours(actIn);
+    if (Objects.nonNull(diffIn))  p.setDifficulty(diffIn);
+    if (Objects.nonNull(notesIn)) p.setNotes(notesIn);
 
     projectService.modifyProjectDetails(p);
-    curProject = projectService.fetchProjectById(curProject.getProjectId());
+    prefetched.remove(p.getProjectId());
+    curProject = projectService.loadDeferredTexts(
+        projectService.fetchProjectById(curProject.getProjectId()));
+    if (Objects.nonNull(nameIn)) {
+      reloadListing(); // the list shows the name
+    }
 
     System.out.println("Project updated.");
   }
 
   /** Option 3: Select project using list number */
   private void selectProject() {
-    listProjects();
-    Integer choice = getIntInput("Enter the number from the list to select");
+    recentProjectIds.forEach(this::prefetch); // likely picks, loaded while the user chooses
+    Integer choice = chooseFromList("Enter the number from the list to select");
     if (choice == null || lastListedProjects == null ||
         choice < 1 || choice > lastListedProjects.size()) {
       System.out.println("Invalid selection.");
       return;
     }
-    Project selected = lastListedProjects.get(choice - 1);
-    curProject = projectService.fetchProjectById(selected.getProjectId());
+    ProjectSummary selected = lastListedProjects.get(choice - 1);
+    curProject = loadProject(selected.projectId());
+    rememberRecent(curProject.getProjectId());
+
+    // Browsing often moves to the next or previous project: load those now
+    if (choice > 1) {
+      prefetch(lastListedProjects.get(choice - 2).projectId());
+    }
+    if (choice < lastListedProjects.size()) {
+      prefetch(lastListedProjects.get(choice).projectId());
+    }
   }
 
   /** Option 2: Show numbered list for user, store mapping to DB IDs */
   private void listProjects() {
-    lastListedProjects = projectService.fetchAllProjects();
+    lastListedProjects = currentListing();
     System.out.println("\nProjects:");
-    int displayNum = 1;
-    for (Project p : lastListedProjects) {
-      System.out.println("   " + (displayNum++) + ": " + p.getProjectName());
+    int shown = printProjects(0);
+
+    while (shown < lastListedProjects.size()) {
+      String input = getStringInput("Enter + for more, or press Enter to go back");
+      if (!"+".equals(input)) {
+        return;
+      }
+      shown = printProjects(shown);
+    }
+  }
+
+  /*
+   * Show the project list a page at a time and read a list number. "+" shows the next page.
+   */
+  private Integer chooseFromList(String prompt) {
+    lastListedProjects = currentListing();
+    System.out.println("\nProjects:");
+    int shown = printProjects(0);
+
+    while (true) {
+      boolean more = shown < lastListedProjects.size();
+      String input = getStringInput(more ? prompt + " (+ for more)" : prompt);
+
+      if (more && "+".equals(input)) {
+        shown = printProjects(shown);
+      } else {
+        return toInteger(input);
+      }
+    }
+  }
+
+  /*
+   * Print the next page of lastListedProjects, starting at index "from".
+   * Returns how many projects have been shown in total.
+   */
+  private int printProjects(int from) {
+    int to = Math.min(from + PAGE_SIZE, lastListedProjects.size());
+
+    for (int i = from; i < to; i++) {
+      System.out.println("   " + (i + 1) + ": " + lastListedProjects.get(i).projectName());
+    }
+
+    if (to < lastListedProjects.size()) {
+      System.out.println("   ... " + (lastListedProjects.size() - to) + " more");
+    }
+
+    return to;
+  }
+
+  /*
+   * Start loading the project list in the background (after a change, or when it is old).
+   */
+  private void reloadListing() {
+    projectListing = inBackground(projectService::fetchProjectSummaries);
+    listingStartedNanos = System.nanoTime();
+  }
+
+  /*
+   * The newest project list. Waits only if it is still loading; an old list is shown as is and
+   * reloaded in the background for next time.
+   */
+  private List<ProjectSummary> currentListing() {
+    if (Objects.isNull(projectListing) || projectListing.isCompletedExceptionally()) {
+      reloadListing();
+    }
+
+    CompletableFuture<List<ProjectSummary>> listing = projectListing;
+
+    if (!listing.isDone()) {
+      System.out.println("(loading projects...)");
+    }
+
+    List<ProjectSummary> projects = await(listing);
+
+    if (System.nanoTime() - listingStartedNanos > LISTING_MAX_AGE_NANOS) {
+      reloadListing();
+    }
+
+    return projects;
+  }
+
+  /*
+   * Start loading a project's full details in the background, unless that already happened.
+   */
+  private void prefetch(Integer projectId) {
+    Prefetched entry = prefetched.get(projectId);
+
+    if (Objects.isNull(entry) || !entry.isFresh()) {
+      prefetched.put(projectId, new Prefetched(
+          inBackground(() -> fetchWithTexts(projectId)), System.nanoTime()));
+    }
+  }
+
+  /*
+   * Run a read on a background thread. It sees this thread's latest write: the write time goes
+   * along, so the read is sent to the primary while the replicas may still lag behind it.
+   */
+  private <T> CompletableFuture<T> inBackground(Supplier<T> read) {
+    Long lastWrite = DbConnection.lastWriteNanos();
+    return CompletableFuture.supplyAsync(() -> DbConnection.afterWriteAt(lastWrite, read),
+        background);
+  }
+
+  /*
+   * A project's full details: prefetched if available and recent, else loaded now.
+   */
+  private Project loadProject(Integer projectId) {
+    Prefetched entry = prefetched.remove(projectId);
+
+    if (Objects.nonNull(entry) && entry.isFresh() && !entry.project().isCompletedExceptionally()) {
+      return await(entry.project());
+    }
+
+    return fetchWithTexts(projectId);
+  }
+
+  /*
+   * A project with its long texts too: the app shows them all.
+   */
+  private Project fetchWithTexts(Integer projectId) {
+    return projectService.loadDeferredTexts(projectService.fetchProjectById(projectId));
+  }
+
+  private void rememberRecent(Integer projectId) {
+    recentProjectIds.remove(projectId);
+    recentProjectIds.addFirst(projectId);
+    while (recentProjectIds.size() > 3) {
+      recentProjectIds.removeLast();
+    }
+  }
+
+  /*
+   * Wait for background work; its errors are thrown as they are (e.g. DbException).
+   */
+  private static <T> T await(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
     }
   }
 
@@ -145,6 +428,8 @@ public class ProjectsApp {
 
     Project dbProject = projectService.addProject(project);
     System.out.println("Created project: " + dbProject.getProjectName());
+    rememberRecent(dbProject.getProjectId());
+    reloadListing();
   }
 
   private BigDecimal getDecimalInput(String prompt) {
@@ -172,7 +457,10 @@ public class ProjectsApp {
   }
 
   private Integer getIntInput(String prompt) {
-    String input = getStringInput(prompt);
+    return toInteger(getStringInput(prompt));
+  }
+
+  private Integer toInteger(String input) {
     if (Objects.isNull(input)) {
       return null;
     }
@@ -185,6 +473,9 @@ public class ProjectsApp {
 
   private String getStringInput(String prompt) {
     System.out.print(prompt + ": ");
+    if (!scanner.hasNextLine()) {
+      return null; // end of input (e.g. piped input ran out): same as pressing Enter
+    }
     String input = scanner.nextLine();
     return input.isBlank() ? null : input.trim();
   }
@@ -197,5 +488,21 @@ public class ProjectsApp {
     } else {
       System.out.println("\nYou are working with project: " + curProject.getProjectName());
     }
+    if (!menuTimed) {
+      menuTimed = true;
+      printStartupTime("first menu");
+    }
+  }
+
+  /**
+   * With -Dprojects.startupTiming=true, print how long it took from process start to this point.
+   * Pipe the input in (e.g. printf '2\n\n' | ...) so no typing time is included.
+   */
+  private static void printStartupTime(String milestone) {
+    if (STARTUP_TIMING) {
+      ProcessHandle.current().info().startInstant().ifPresent(start -> System.out.println(
+          "[startup] time to " + milestone + ": "
+              + Duration.between(start, Instant.now()).toMillis() + " ms"));
+    }
   }
 } 
@@ -0,0 +1,256 @@
+package projects;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import projects.entity.Project;
+import projects.entity.ProjectSummary;
+import projects.exception.DbException;
+import projects.service.ProjectService;
+
+/**
+ * Batch mode: runs commands from a file or from standard input, one per line, without prompts,
+ * so scripts can do many operations with one program start:
+ *   java projects.ProjectsApp --batch commands.txt
+ *   make-commands | java projects.ProjectsApp --batch
+ *
+ * Commands (fields are "name=value", separated by ";"; write "\;" for a ";" inside a value):
+ *   add name=Garden shed; estimated=10; actual=12.5; difficulty=3; notes=Paint it green
+ *   update id=7; version=2; name=...; estimated=...; actual=...; difficulty=...; notes=...
+ *   delete id=7
+ *   get id=7
+ *   list
+ * Only the fields given are set. "version" is optional; with it, the update fails if someone
+ * else changed the project in the meantime. Blank lines and lines starting with # are skipped.
+ *
+ * Output: one line per command, in input order, with tabs between the parts:
+ *   line number, OK or ERROR, then the result (e.g. the new ID) or the error message.
+ * A last line starting with # gives the totals.
+ *
+ * Runs of add and update commands are not sent one by one: they go through the service's
+ * write-behind buffer, which commits them in batches (one connection and one transaction per
+ * batch) while the next lines are being read. Before any other command, the buffer is flushed,
+ * so every command sees the effects of the lines before it. Required fields are checked before
+ * a line is buffered, and a batch that fails is written again row by row, so a bad line only
+ * fails itself.
+ */
+public class ProjectsBatch {
+  private static final int MAX_BATCH_SIZE = 500;
+  private static final Duration MAX_BATCH_DELAY = Duration.ofMillis(20);
+
+  private final ProjectService projectService;
+  private final PrintStream out;
+
+  // Commands whose result has not been printed yet, in input order
+  private final Deque<Pending> pending = new ArrayDeque<>();
+  private record Pending(int lineNumber, CompletableFuture<String> result) {}
+
+  private int commands;
+  private int errors;
+
+  public ProjectsBatch(ProjectService projectService, PrintStream out) {
+    this.projectService = projectService;
+    this.out = out;
+  }
+
+  /**
+   * Run every command from the reader.
+   * @return the number of commands that failed
+   */
+  public int run(BufferedReader in) throws IOException {
+    long start = System.nanoTime();
+    projectService.enableWriteBehind(MAX_BATCH_SIZE, MAX_BATCH_DELAY);
+
+    try {
+      String line;
+      int lineNumber = 0;
+
+      while ((line = in.readLine()) != null) {
+        lineNumber++;
+        line = line.strip();
+
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+
+        commands++;
+        pending.add(new Pending(lineNumber, execute(line)));
+        printFinished(false);
+      }
+    } finally {
+      projectService.disableWriteBehind(); // writes whatever is still buffered
+      printFinished(true);
+    }
+
+    out.printf("# %d commands, %d errors, %d ms%n", commands, errors,
+        Duration.ofNanos(System.nanoTime() - start).toMillis());
+    return errors;
+  }
+
+  /*
+   * Start one command. Adds and updates are buffered and finish later; everything else first
+   * flushes the buffer and then runs right away.
+   */
+  private CompletableFuture<String> execute(String line) {
+    String[] parts = line.split("\\s+", 2);
+    String command = parts[0].toLowerCase();
+
+    try {
+      Map<String, String> fields = parseFields(parts.length > 1 ? parts[1] : "");
+
+      switch (command) {
+        case "add":
+          // Checked here, so one bad line fails alone instead of in the middle of a batch
+          if (Objects.isNull(fields.get("name")) || fields.get("name").isEmpty()) {
+            throw new DbException("Missing name=... (every project needs a name)");
+          }
+          return projectService.addProjectAsync(toProject(fields))
+              .thenApply(project -> "id=" + project.getProjectId());
+
+        case "update":
+          if ("".equals(fields.get("name"))) {
+            throw new DbException("name=... must not be empty");
+          }
+          Project project = toProject(fields);
+          project.setProjectId(requiredInt(fields, "id"));
+          project.setVersion(toInteger(fields.get("version")));
+          return projectService.modifyProjectDetailsAsync(project).thenApply(none -> "updated");
+
+        default:
+          projectService.flushWrites();
+          return CompletableFuture.completedFuture(executeNow(command, fields));
+      }
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  private String executeNow(String command, Map<String, String> fields) {
+    switch (command) {
+      case "delete":
+        projectService.deleteProject(requiredInt(fields, "id"));
+        return "deleted";
+
+      case "get":
+        Project project = projectService.loadDeferredTexts(
+            projectService.fetchProjectById(requiredInt(fields, "id")));
+        return "id=" + project.getProjectId() + "; version=" + project.getVersion() + "; name="
+            + project.getProjectName() + "; estimated=" + project.getEstimatedHours()
+            + "; actual=" + project.getActualHours() + "; difficulty=" + project.getDifficulty()
+            + "; notes=" + project.getNotes();
+
+      case "list":
+        List<ProjectSummary> projects = projectService.fetchProjectSummaries();
+        StringBuilder result = new StringBuilder(projects.size() + " projects");
+        for (ProjectSummary p : projects) {
+          result.append("\t").append(p.projectId()).append("=").append(p.projectName());
+        }
+        return result.toString();
+
+      default:
+        throw new DbException("Unknown command: " + command);
+    }
+  }
+
+  /*
+   * Print the results that are ready, in input order (or wait for all of them).
+   */
+  private void printFinished(boolean waitForAll) {
+    while (!pending.isEmpty() && (waitForAll || pending.peek().result().isDone())) {
+      Pending next = pending.remove();
+
+      try {
+        out.println(next.lineNumber() + "\tOK\t" + next.result().join());
+      } catch (CompletionException e) {
+        Throwable cause = Objects.requireNonNullElse(e.getCause(), e);
+        errors++;
+        out.println(next.lineNumber() + "\tERROR\t" + cause.getMessage());
+      }
+    }
+  }
+
+  private Project toProject(Map<String, String> fields) {
+    Project project = new Project();
+
+    if (fields.containsKey("name")) {
+      project.setProjectName(fields.get("name"));
+    }
+    if (fields.containsKey("estimated")) {
+      project.setEstimatedHours(toDecimal(fields.get("estimated")));
+    }
+    if (fields.containsKey("actual")) {
+      project.setActualHours(toDecimal(fields.get("actual")));
+    }
+    if (fields.containsKey("difficulty")) {
+      project.setDifficulty(toInteger(fields.get("difficulty")));
+    }
+    if (fields.containsKey("notes")) {
+      project.setNotes(fields.get("notes"));
+    }
+
+    return project;
+  }
+
+  /*
+   * "name=Shed; notes=a\;b" -> {name=Shed, notes=a;b}
+   */
+  private Map<String, String> parseFields(String text) {
+    Map<String, String> fields = new HashMap<>();
+
+    for (String field : text.split("(?<!\\\\);")) {
+      if (field.isBlank()) {
+        continue;
+      }
+
+      String[] pair = field.split("=", 2);
+      if (pair.length != 2) {
+        throw new DbException("Expected name=value, found: " + field.strip());
+      }
+
+      fields.put(pair[0].strip().toLowerCase(), pair[1].strip().replace("\\;", ";"));
+    }
+
+    return fields;
+  }
+
+  private Integer requiredInt(Map<String, String> fields, String name) {
+    Integer value = toInteger(fields.get(name));
+    if (Objects.isNull(value)) {
+      throw new DbException("Missing " + name + "=...");
+    }
+    return value;
+  }
+
+  private Integer toInteger(String input) {
+    if (Objects.isNull(input) || input.isEmpty()) {
+      return null;
+    }
+    try {
+      return Integer.valueOf(input);
+    } catch (NumberFormatException e) {
+      throw new DbException(input + " is not a valid number.");
+    }
+  }
+
+  private BigDecimal toDecimal(String input) {
+    if (Objects.isNull(input) || input.isEmpty()) {
+      return null;
+    }
+    try {
+      return new BigDecimal(input).setScale(2, RoundingMode.HALF_UP);
+    } catch (NumberFormatException e) {
+      throw new DbException(input + " is not a valid decimal number.");
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package projects.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import projects.entity.Category;
+
+/**
+ * A copy of the category table (ID to name) shared by the whole process, so loading a project
+ * only needs its rows in project_category, not a join with category.
+ *
+ * Categories are few and rarely change. The copy is loaded on first use and loaded again:
+ * - when an ID is not in it (a category was added since), but at most once per MISS_RELOAD, so
+ *   lookups of an ID that does not exist do not each read the whole table;
+ * - when it is older than MAX_AGE (to pick up renamed categories).
+ * Readers never lock: the copy is an immutable map that is swapped as a whole.
+ */
+final class CategoryCache {
+  private static final long MAX_AGE_NANOS = TimeUnit.MINUTES.toNanos(5);
+  private static final long MISS_RELOAD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final Supplier<Map<Integer, String>> loader;
+
+  private volatile Map<Integer, String> names;  // null until loaded
+  private volatile long loadedAt;
+
+  // A lock rather than synchronized: the query runs while it is held, and a virtual thread
+  // waiting on a monitor would pin its carrier thread
+  private final ReentrantLock reloadLock = new ReentrantLock();
+
+  /**
+   * @param loader - reads the whole category table
+   */
+  CategoryCache(Supplier<Map<Integer, String>> loader) {
+    this.loader = loader;
+  }
+
+  /**
+   * @return the category's name, or null if there is no category with this ID
+   */
+  String nameOf(Integer categoryId) {
+    Map<Integer, String> current = fresh();
+    String name = current.get(categoryId);
+
+    // Unknown ID: read the table again, unless the copy is very recent (then it is not there)
+    if (Objects.isNull(name) && System.nanoTime() - loadedAt > MISS_RELOAD_NANOS) {
+      name = reload(current).get(categoryId);
+    }
+
+    return name;
+  }
+
+  /**
+   * @return a new Category object with this ID and its name (null name if it does not exist)
+   */
+  Category categoryOf(Integer categoryId) {
+    return newCategory(categoryId, nameOf(categoryId));
+  }
+
+  /**
+   * @return every category, sorted by ID
+   */
+  List<Category> all() {
+    Map<Integer, String> current = fresh();
+    List<Category> categories = new ArrayList<>(current.size());
+
+    current.keySet().stream().sorted()
+        .forEach(id -> categories.add(newCategory(id, current.get(id))));
+    return categories;
+  }
+
+  private Map<Integer, String> fresh() {
+    Map<Integer, String> current = names;
+
+    if (Objects.isNull(current) || System.nanoTime() - loadedAt > MAX_AGE_NANOS) {
+      return reload(current);
+    }
+
+    return current;
+  }
+
+  /*
+   * Load the table, unless another thread already replaced the copy we looked at (then use its
+   * copy), so a burst of lookups causes one query, not one each.
+   */
+  private Map<Integer, String> reload(Map<Integer, String> seen) {
+    reloadLock.lock();
+    try {
+      Map<Integer, String> current = names;
+
+      if (current != seen && Objects.nonNull(current)) {
+        return current;
+      }
+
+      current = Map.copyOf(loader.get());
+      loadedAt = System.nanoTime();
+      names = current;
+      return current;
+    } finally {
+      reloadLock.unlock();
+    }
+  }
+
+  private static Category newCategory(Integer categoryId, String categoryName) {
+    Category category = new Category();
+    category.setCategoryId(categoryId);
+    category.setCategoryName(categoryName);
+    return category;
+  }
+}
@@ -0,0 +1,53 @@
+package projects.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import projects.entity.ProjectChange;
+import projects.util.DbConnection;
+
+/**
+ * A position in the change feed: for each shard, the ID of the last change read from its outbox.
+ *
+ * Each shard numbers its changes on its own, so one number cannot say how far a consumer got:
+ * after change 1000 from one shard, another shard may still add change 998. Start with START and
+ * move on with after(change) for every change processed.
+ */
+public record ChangeCursor(List<Long> lastChangeIds) {
+
+  /** Before every change: use this to read the feed from the beginning. */
+  public static final ChangeCursor START = new ChangeCursor(List.of());
+
+  public ChangeCursor {
+    lastChangeIds = List.copyOf(lastChangeIds);
+  }
+
+  /**
+   * @return the ID of the last change read from this shard's outbox (0 if none)
+   */
+  public long lastChangeId(int shard) {
+    return shard < lastChangeIds.size() ? lastChangeIds.get(shard) : 0;
+  }
+
+  /**
+   * @return the highest change ID read from any shard (the position in a store without shards)
+   */
+  public long highest() {
+    return lastChangeIds.stream().mapToLong(Long::longValue).max().orElse(0);
+  }
+
+  /**
+   * The cursor just after a change. A change is kept on the shard of its project.
+   */
+  public ChangeCursor after(ProjectChange change) {
+    int shard = DbConnection.shardFor(change.getProjectId());
+    List<Long> ids = new ArrayList<>(lastChangeIds);
+
+    while (ids.size() <= shard) {
+      ids.add(0L);
+    }
+
+    ids.set(shard, Math.max(ids.get(shard), change.getChangeId()));
+    return new ChangeCursor(ids);
+  }
+}
@@ -0,0 +1,325 @@
+package projects.dao;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import projects.entity.Project;
+import projects.entity.ProjectChange;
+import projects.entity.ProjectChange.ChangeType;
+import projects.exception.ChangeCursorExpiredException;
+
+/**
+ * A ProjectRepository that keeps everything in memory, for tests and for deployments that do not
+ * need to keep data when the program stops (e.g. a cache-warm read tier). It behaves like the
+ * JDBC DAO (IDs, versions and conflicts, updated_at, the change feed).
+ *
+ * Projects are kept in an IntKeyMap (lock-striped, keyed by the plain int ID, with lock-free
+ * optimistic reads), so reads on many cores hardly ever wait, and writes only wait for writes
+ * to projects in the same stripe. New IDs come from an AtomicInteger.
+ *
+ * Saved projects are never changed in place: an update stores a new copy, and every read returns
+ * a copy, so callers can change what they get without affecting the store. Each project change
+ * is atomic; a batch is applied one project after the other. The change feed keeps at least the
+ * most recent MAX_CHANGES changes (and at most twice as many); reading it from an older cursor
+ * throws a ChangeCursorExpiredException.
+ */
+public class InMemoryProjectDao extends LocalProjectStore {
+  static final int MAX_CHANGES = 100_000;
+
+  private final IntKeyMap<Project> projects = new IntKeyMap<>();
+  private final AtomicInteger nextProjectId = new AtomicInteger(1);
+
+  /*
+   * Change IDs are handed out and logged under changeLock, while the changed project's stripe is
+   * still locked, so the log is in change ID order and matches the order of the writes.
+   */
+  private final Lock changeLock = new ReentrantLock();
+  private final List<ProjectChange> changeLog = new ArrayList<>(); // guarded by changeLock
+  private long nextChangeId = 1; // guarded by changeLock
+  private long droppedThroughChangeId; // the newest change dropped from the log; guarded
+
+  @Override
+  public Project insertProject(Project project) {
+    insertProjects(List.of(project));
+    return project;
+  }
+
+  @Override
+  public List<Project> insertProjects(List<Project> newProjects) {
+    newProjects.forEach(this::loadDeferredTexts); // texts left out by another store's fetch
+    List<ProjectChange> changes = new ArrayList<>(newProjects.size());
+
+    for (Project project : newProjects) {
+      Project copy = copyOf(project, true);
+      assignId(copy, nextProjectId.getAndIncrement());
+      copy.setVersion(0);
+
+      projects.compute(copy.getProjectId(), absent -> {
+        changes.add(logChange(copy, ChangeType.INSERT, ProjectDao.INSERT_COLUMNS));
+        return copy;
+      });
+
+      project.setProjectId(copy.getProjectId());
+      project.setVersion(copy.getVersion());
+      project.setUpdatedAt(copy.getUpdatedAt());
+      project.clearModifiedFields();
+    }
+
+    publishChanges(changes);
+    return newProjects;
+  }
+
+  @Override
+  public List<Project> fetchAllProjects() {
+    List<Project> all = new ArrayList<>(projects.size());
+    projects.forEach(project -> all.add(copyOf(project, false)));
+    all.sort(Comparator.comparing(Project::getProjectId));
+    return new LinkedList<>(all);
+  }
+
+  @Override
+  public <R> List<R> fetchAllProjects(ProjectProjection<R> projection) {
+    // Projected straight from the stored projects: no copies
+    List<Project> all = new ArrayList<>(projects.size());
+    projects.forEach(all::add);
+    all.sort(Comparator.comparing(Project::getProjectId));
+
+    List<R> projected = new ArrayList<>(all.size());
+    all.forEach(project -> projected.add(projection.fromProject().apply(project)));
+    return projected;
+  }
+
+  @Override
+  public Optional<Project> fetchProjectById(Integer projectId) {
+    return Optional.ofNullable(projects.get(projectId)).map(project -> copyOf(project, true));
+  }
+
+  @Override
+  public List<Project> fetchChangedSince(ProjectWatermark watermark, int limit) {
+    Comparator<Project> order =
+        Comparator.comparing(Project::getUpdatedAt).thenComparing(Project::getProjectId);
+    Project after = new Project();
+    after.setUpdatedAt(watermark.updatedAt());
+    after.setProjectId(watermark.projectId());
+
+    List<Project> changed = new ArrayList<>();
+    projects.forEach(project -> {
+      if (order.compare(project, after) > 0) {
+        changed.add(project);
+      }
+    });
+    changed.sort(order);
+
+    List<Project> page = new LinkedList<>();
+    for (Project project : changed.subList(0, Math.min(limit, changed.size()))) {
+      page.add(copyOf(project, true));
+    }
+    return page;
+  }
+
+  @Override
+  public UpdateResult modifyProjectDetails(Project project) {
+    List<ProjectChange> changes = new ArrayList<>(1);
+    UpdateResult result = updateProject(project, changes);
+
+    publishChanges(changes);
+    ProjectDao.afterUpdate(project, result);
+    return result;
+  }
+
+  @Override
+  public List<UpdateResult> modifyProjectDetails(List<Project> updates) {
+    List<UpdateResult> results = new ArrayList<>(updates.size());
+    List<ProjectChange> changes = new ArrayList<>(updates.size());
+
+    for (Project project : updates) {
+      results.add(updateProject(project, changes));
+    }
+
+    publishChanges(changes);
+
+    for (int i = 0; i < updates.size(); i++) {
+      ProjectDao.afterUpdate(updates.get(i), results.get(i));
+    }
+
+    return results;
+  }
+
+  /*
+   * Check the version and store an updated copy, all while the project's stripe is locked.
+   */
+  private UpdateResult updateProject(Project project, List<ProjectChange> changes) {
+    List<ProjectDao.ProjectColumn> columns = ProjectDao.modifiedColumns(project);
+    UpdateResult[] result = {UpdateResult.NOT_FOUND};
+
+    projects.compute(project.getProjectId(), current -> {
+      if (current == null) {
+        return null;
+      }
+
+      if (Objects.nonNull(project.getVersion())
+          && !project.getVersion().equals(current.getVersion())) {
+        result[0] = UpdateResult.CONFLICT;
+        return current;
+      }
+
+      result[0] = UpdateResult.UPDATED;
+
+      if (columns.isEmpty()) {
+        return current; // nothing to write
+      }
+
+      Project copy = copyOf(current, true);
+      applyModifiedFields(project, copy);
+      copy.setVersion(current.getVersion() + 1);
+      copy.clearModifiedFields();
+      changes.add(logChange(copy, ChangeType.UPDATE, ProjectDao.columnNames(columns)));
+      return copy;
+    });
+
+    return result[0];
+  }
+
+  @Override
+  public List<ProjectChange> fetchChangesSince(ChangeCursor cursor, int limit) {
+    changeLock.lock();
+    try {
+      long afterChangeId = cursor.highest(); // one counter for the whole store
+
+      if (afterChangeId < droppedThroughChangeId) {
+        throw new ChangeCursorExpiredException("The change feed no longer has the changes after "
+            + afterChangeId + " (the oldest kept is " + (droppedThroughChangeId + 1)
+            + "). Reload all projects and read on from the cursor given.",
+            new ChangeCursor(List.of(droppedThroughChangeId)));
+      }
+
+      List<ProjectChange> changes = new LinkedList<>();
+
+      for (int i = firstChangeAfter(afterChangeId);
+          i < changeLog.size() && changes.size() < limit; i++) {
+        changes.add(copyOf(changeLog.get(i))); // the log's own objects stay private
+      }
+
+      return changes;
+    } finally {
+      changeLock.unlock();
+    }
+  }
+
+  @Override
+  public boolean deleteProject(Integer projectId) {
+    List<ProjectChange> changes = new ArrayList<>(1);
+
+    projects.compute(projectId, current -> {
+      if (current != null) {
+        changes.add(logChange(projectId, ChangeType.DELETE, ""));
+      }
+      return null;
+    });
+
+    publishChanges(changes);
+    return !changes.isEmpty();
+  }
+
+  /*
+   * Edit a copy of the project and store it, all while the project's stripe is locked.
+   */
+  @Override
+  protected boolean editChildren(Integer projectId, String changedFields,
+      Predicate<Project> edit) {
+    List<ProjectChange> changes = new ArrayList<>(1);
+
+    projects.compute(projectId, current -> {
+      if (current == null) {
+        return null;
+      }
+
+      Project copy = copyOf(current, true); // steps in rank order
+
+      if (!edit.test(copy)) {
+        return current;
+      }
+
+      changes.add(logChange(copy, ChangeType.UPDATE, changedFields));
+      return copy;
+    });
+
+    publishChanges(changes);
+    return !changes.isEmpty();
+  }
+
+  @Override
+  protected void forEachSavedProject(Consumer<Project> action) {
+    projects.forEach(action);
+  }
+
+  /*
+   * Give an inserted or updated project its updated_at, and log the change.
+   */
+  private ProjectChange logChange(Project project, ChangeType changeType, String changedFields) {
+    changeLock.lock();
+    try {
+      project.setUpdatedAt(now());
+      return logChange(project.getProjectId(), changeType, changedFields);
+    } finally {
+      changeLock.unlock();
+    }
+  }
+
+  /*
+   * Give a change the next change ID and add it to the change log. Once the log holds twice
+   * MAX_CHANGES, the older half is dropped in one go, so the copy that shifts the rest down
+   * happens once every MAX_CHANGES writes instead of on every write.
+   */
+  private ProjectChange logChange(Integer projectId, ChangeType changeType, String changedFields) {
+    changeLock.lock();
+    try {
+      ProjectChange change = newChange(nextChangeId++, projectId, changeType, changedFields);
+      changeLog.add(copyOf(change)); // the caller publishes "change" to listeners
+
+      if (changeLog.size() >= 2 * MAX_CHANGES) {
+        List<ProjectChange> dropped = changeLog.subList(0, changeLog.size() - MAX_CHANGES);
+        droppedThroughChangeId = dropped.get(dropped.size() - 1).getChangeId();
+        dropped.clear();
+      }
+
+      return change;
+    } finally {
+      changeLock.unlock();
+    }
+  }
+
+  private ProjectChange copyOf(ProjectChange change) {
+    return newChange(change.getChangeId(), change.getProjectId(), change.getChangeType(),
+        change.getChangedFields());
+  }
+
+  /*
+   * The log is sorted by change ID, so a binary search finds where to start.
+   */
+  private int firstChangeAfter(long afterChangeId) {
+    int low = 0;
+    int high = changeLog.size();
+
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+
+      if (changeLog.get(middle).getChangeId() <= afterChangeId) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    return low;
+  }
+}
@@ -0,0 +1,281 @@
+package projects.dao;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * A concurrent hash map from int keys to values, without boxing the keys into Integer objects.
+ *
+ * The map is split into SEGMENTS independent parts (lock striping), picked by the key's hash, so
+ * writes to different parts do not wait for each other. Each part is an open-addressing table
+ * (parallel int[] and Object[] arrays, linear probing) guarded by a StampedLock. Reads first try
+ * without locking at all (an optimistic read that is validated afterwards) and only take the
+ * read lock if a write happened in between, so reads on many cores do not contend.
+ *
+ * Key 0 marks an empty slot and cannot be stored. Null values cannot be stored.
+ *
+ * @param <V> The value type
+ */
+final class IntKeyMap<V> {
+  private static final int SEGMENT_BITS = 6;
+  private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+  private final Segment<V>[] segments;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  IntKeyMap() {
+    segments = new Segment[SEGMENTS];
+
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment<>();
+    }
+  }
+
+  /**
+   * @return the value for this key, or null
+   */
+  V get(int key) {
+    int hash = hash(key);
+    return segments[hash >>> (32 - SEGMENT_BITS)].get(key, hash);
+  }
+
+  /**
+   * Store a value.
+   * @return the previous value, or null
+   */
+  V put(int key, V value) {
+    checkKey(key);
+    int hash = hash(key);
+    return segments[hash >>> (32 - SEGMENT_BITS)].compute(key, hash, old -> value);
+  }
+
+  /**
+   * Remove a key.
+   * @return the value it had, or null
+   */
+  V remove(int key) {
+    int hash = hash(key);
+    return segments[hash >>> (32 - SEGMENT_BITS)].compute(key, hash, old -> null);
+  }
+
+  /**
+   * Replace the value of a key atomically. The function gets the current value (or null) and
+   * returns the new one (or null to remove the key). No other write to the same segment happens
+   * while it runs, so it must be quick and must not use this map.
+   * @return the previous value, or null
+   */
+  V compute(int key, UnaryOperator<V> remapping) {
+    checkKey(key);
+    int hash = hash(key);
+    return segments[hash >>> (32 - SEGMENT_BITS)].compute(key, hash, remapping);
+  }
+
+  /**
+   * Call the action with every value. Each segment is read under its read lock, so the action
+   * sees a consistent view of each segment, but not of the whole map at one instant.
+   */
+  void forEach(Consumer<? super V> action) {
+    for (Segment<V> segment : segments) {
+      segment.forEach(action);
+    }
+  }
+
+  int size() {
+    int size = 0;
+
+    for (Segment<V> segment : segments) {
+      size += segment.size();
+    }
+
+    return size;
+  }
+
+  private static void checkKey(int key) {
+    if (key == 0) {
+      throw new IllegalArgumentException("Key 0 cannot be stored");
+    }
+  }
+
+  /*
+   * IDs are mostly consecutive; mixing the bits spreads them over segments and slots.
+   */
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * One lock-protected open-addressing table.
+   */
+  private static final class Segment<V> {
+    private final StampedLock lock = new StampedLock();
+    private int[] keys = new int[16];
+    private Object[] values = new Object[16];
+    private int size;
+
+    V get(int key, int hash) {
+      long stamp = lock.tryOptimisticRead();
+
+      if (stamp != 0) {
+        V value = find(keys, values, key, hash);
+        if (lock.validate(stamp)) {
+          return value;
+        }
+      }
+
+      stamp = lock.readLock();
+      try {
+        return find(keys, values, key, hash);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    /*
+     * Works on the arrays it is given, which may be changing under an optimistic read; it then
+     * returns garbage (but never fails or loops forever) and the caller throws the result away.
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> V find(int[] keys, Object[] values, int key, int hash) {
+      if (keys.length != values.length) {
+        return null;
+      }
+
+      int mask = keys.length - 1;
+      int slot = hash & mask;
+
+      for (int probes = 0; probes < keys.length; probes++) {
+        int k = keys[slot];
+
+        if (k == key) {
+          return (V)values[slot];
+        }
+
+        if (k == 0) {
+          return null;
+        }
+
+        slot = (slot + 1) & mask;
+      }
+
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V compute(int key, int hash, UnaryOperator<V> remapping) {
+      long stamp = lock.writeLock();
+      try {
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+
+        while (keys[slot] != 0 && keys[slot] != key) {
+          slot = (slot + 1) & mask;
+        }
+
+        V old = keys[slot] == key ? (V)values[slot] : null;
+        V value = remapping.apply(old);
+
+        if (value != null) {
+          if (old == null) {
+            keys[slot] = key;
+            size++;
+          }
+          values[slot] = value;
+
+          if (size * 2 > keys.length) {
+            resize();
+          }
+        } else if (old != null) {
+          delete(slot);
+        }
+
+        return old;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(Consumer<? super V> action) {
+      long stamp = lock.readLock();
+      try {
+        for (int slot = 0; slot < keys.length; slot++) {
+          if (keys[slot] != 0) {
+            action.accept((V)values[slot]);
+          }
+        }
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    int size() {
+      long stamp = lock.readLock();
+      try {
+        return size;
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    /*
+     * Empty a slot and move later entries of the same probe run back, so lookups never need to
+     * skip over removed entries.
+     */
+    private void delete(int slot) {
+      int mask = keys.length - 1;
+      int hole = slot;
+      int next = slot;
+
+      while (true) {
+        next = (next + 1) & mask;
+
+        if (keys[next] == 0) {
+          break;
+        }
+
+        int home = hash(keys[next]) & mask;
+
+        // Move the entry into the hole unless its home slot lies cyclically in (hole, next]
+        boolean stays = hole <= next
+            ? hole < home && home <= next
+            : hole < home || home <= next;
+
+        if (!stays) {
+          keys[hole] = keys[next];
+          values[hole] = values[next];
+          hole = next;
+        }
+      }
+
+      keys[hole] = 0;
+      values[hole] = null;
+      size--;
+    }
+
+    private void resize() {
+      int[] oldKeys = keys;
+      Object[] oldValues = values;
+      int[] newKeys = new int[oldKeys.length * 2];
+      Object[] newValues = new Object[oldKeys.length * 2];
+      int mask = newKeys.length - 1;
+
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != 0) {
+          int slot = hash(oldKeys[i]) & mask;
+
+          while (newKeys[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+
+          newKeys[slot] = oldKeys[i];
+          newValues[slot] = oldValues[i];
+        }
+      }
+
+      keys = newKeys;
+      values = newValues;
+    }
+  }
+}
@@ -0,0 +1,226 @@
+package projects.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import projects.entity.Project;
+import projects.exception.DbException;
+
+/**
+ * Long text columns (project notes, step texts) for the JDBC DAO.
+ *
+ * Deferred loading: browsing reads texts up to INLINE_CHARS long with the row, as usual. A longer
+ * text is left out of the row and read only when the program asks for it with
+ * ProjectRepository.loadDeferredTexts; until then the getters return null. All texts left out
+ * by one fetch share a Batch, so loading the first one reads it together with up to BATCH_SIZE
+ * others in one query, instead of one query each. A deferred text is read after the rest of the
+ * row, so it can be newer; saving still checks the version. The read runs outside the fetch's
+ * own call: the service gives it a time limit and admission control
+ * (ProjectRepository.setDeferredReadWrapper), and loadDeferredTexts throws a DbException if it
+ * fails.
+ *
+ * Compression (off unless projects.notes.compressAbove is set): notes longer than that many
+ * characters are stored gzip-compressed in notes_gz, with notes left NULL.
+ */
+final class LargeText {
+  /** Texts up to this many characters are read with their row (projects.text.inlineChars). */
+  static final int INLINE_CHARS = Integer.getInteger("projects.text.inlineChars", 2048);
+
+  /** The most deferred texts read by one query. */
+  static final int BATCH_SIZE = 100;
+
+  // Notes longer than this are stored compressed; 0 = never
+  private static final int COMPRESS_NOTES_ABOVE =
+      Integer.getInteger("projects.notes.compressAbove", 0);
+
+  private LargeText() {
+  }
+
+  /**
+   * @return the value for the notes column: the notes, or null if they are stored compressed
+   */
+  static String plainNotes(String notes) {
+    return isCompressed(notes) ? null : notes;
+  }
+
+  /**
+   * @return the value for the notes_gz column: the compressed notes, or null if not compressed
+   */
+  static byte[] compressedNotes(String notes) {
+    return isCompressed(notes) ? compress(notes) : null;
+  }
+
+  /**
+   * Replace the notes read by the row mapper with the compressed notes of the row, if it has
+   * any. The project stays unmodified.
+   */
+  static void readCompressedNotes(ResultSet rs, Project project) throws SQLException {
+    byte[] compressed = rs.getBytes("notes_gz");
+
+    if (Objects.nonNull(compressed)) {
+      project.setNotes(decompress(compressed));
+      project.clearModifiedFields();
+    }
+  }
+
+  /**
+   * @return the notes of a row that has both the notes and the notes_gz column
+   */
+  static String notesOf(ResultSet rs) throws SQLException {
+    byte[] compressed = rs.getBytes("notes_gz");
+    return Objects.nonNull(compressed) ? decompress(compressed) : rs.getString("notes");
+  }
+
+  /**
+   * @return a select-list expression that reads the column only if it is at most INLINE_CHARS
+   *         long, and NULL otherwise, under the column's own name
+   */
+  static String inlineOnly(String column) {
+    return "IF(CHAR_LENGTH(" + column + ") <= " + INLINE_CHARS + ", " + column + ", NULL) AS "
+        + column;
+  }
+
+  private static boolean isCompressed(String notes) {
+    return COMPRESS_NOTES_ABOVE > 0 && Objects.nonNull(notes)
+        && notes.length() > COMPRESS_NOTES_ABOVE;
+  }
+
+  private static byte[] compress(String text) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+      out.write(text.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // cannot happen in memory
+    }
+
+    return bytes.toByteArray();
+  }
+
+  private static String decompress(byte[] compressed) {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new DbException("The compressed notes (notes_gz) are corrupt", e);
+    }
+  }
+
+  /**
+   * The deferred texts of one fetch, read in batches when they are loaded.
+   * Shared by the objects of that fetch, which may be used by different threads.
+   *
+   * A loaded text is kept only by the objects it belongs to (and their copies, see
+   * Project.copy()), not by the batch, so it is freed together with them.
+   */
+  static final class Batch {
+    // Reads the texts of some IDs (an ID that is gone since is simply missing)
+    private final Function<List<Integer>, Map<Integer, String>> loader;
+
+    // A lock rather than synchronized: the query runs while it is held, and a virtual thread
+    // waiting on a monitor would pin its carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // The texts not read yet, by ID, in the order they were deferred. Guarded by "lock"
+    private final Map<Integer, Deferred> pending = new LinkedHashMap<>();
+
+    /**
+     * @param loader - reads the texts of a list of IDs in one query
+     */
+    Batch(Function<List<Integer>, Map<Integer, String>> loader) {
+      this.loader = loader;
+    }
+
+    /**
+     * Add an ID to the batch.
+     * @return the loader to give the object, for ProjectRepository.loadDeferredTexts
+     */
+    Supplier<String> defer(Integer id) {
+      Deferred deferred = new Deferred(id);
+
+      lock.lock();
+      try {
+        pending.put(id, deferred);
+      } finally {
+        lock.unlock();
+      }
+
+      return () -> textOf(deferred);
+    }
+
+    /*
+     * Read the text, together with up to BATCH_SIZE - 1 other pending ones: those deferred after
+     * it first (lists are usually gone through in order), then the ones before it.
+     * If the query fails, nothing is marked as read, so the next call tries again.
+     */
+    private String textOf(Deferred deferred) {
+      lock.lock();
+      try {
+        if (!deferred.loaded) {
+          List<Deferred> batch = new ArrayList<>(Math.min(pending.size(), BATCH_SIZE));
+          List<Deferred> before = new ArrayList<>();
+          boolean after = false;
+          batch.add(deferred);
+
+          for (Deferred other : pending.values()) {
+            if (other == deferred) {
+              after = true;
+            } else if (after && batch.size() < BATCH_SIZE) {
+              batch.add(other);
+            } else if (!after) {
+              before.add(other);
+            }
+          }
+
+          for (int i = 0; i < before.size() && batch.size() < BATCH_SIZE; i++) {
+            batch.add(before.get(i));
+          }
+
+          Map<Integer, String> texts =
+              loader.apply(batch.stream().map(Deferred::id).toList());
+
+          for (Deferred loaded : batch) {
+            loaded.text = texts.get(loaded.id());
+            loaded.loaded = true;
+            pending.remove(loaded.id());
+          }
+        }
+
+        return deferred.text; // copies of an object share its loader, so it can be asked twice
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /*
+     * One deferred text. Fields are guarded by the batch's lock.
+     */
+    private static final class Deferred {
+      private final Integer id;
+      private String text;
+      private boolean loaded;
+
+      Deferred(Integer id) {
+        this.id = id;
+      }
+
+      Integer id() {
+        return id;
+      }
+    }
+  }
+}
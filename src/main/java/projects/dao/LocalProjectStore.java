@@ -0,0 +1,415 @@
+package projects.dao;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.ProjectChange;
+import projects.entity.ProjectChange.ChangeType;
+import projects.entity.Step;
+import projects.exception.DbException;
+
+/**
+ * What the repositories that keep projects in this process (in memory or in a local file) have
+ * in common: copying projects, applying an update the way the JDBC DAO does, time stamps, step
+ * ranks, category links and the change listener.
+ *
+ * These stores have no category table: the known categories are the ones saved on projects.
+ */
+abstract class LocalProjectStore implements ProjectRepository {
+
+  // Told about every committed change. May be null.
+  private volatile Consumer<ProjectChange> changeListener;
+
+  // The newest updated_at handed out (see now())
+  private LocalDateTime lastUpdatedAt = LocalDateTime.MIN;
+
+  // The last step ID handed out; -1 until the saved steps were looked at (see nextStepId())
+  private final AtomicInteger lastStepId = new AtomicInteger(-1);
+
+  // Category names by ID, as found on saved projects (see categoryNamed())
+  private final Map<Integer, String> categoryNames = new ConcurrentHashMap<>();
+
+  /**
+   * Change a saved project's children, atomically. The edit gets a copy of the project (steps in
+   * rank order) and returns true if it changed it; the store then saves the copy with a new
+   * updated_at, and logs an UPDATE of changedFields (like the JDBC DAO).
+   * @return true if the project exists and the edit returned true
+   */
+  protected abstract boolean editChildren(Integer projectId, String changedFields,
+      Predicate<Project> edit);
+
+  /**
+   * Call the action with every saved project, with its children. May be slow; only used for rare
+   * scans.
+   */
+  protected abstract void forEachSavedProject(Consumer<Project> action);
+
+  @Override
+  public Optional<Step> insertStep(Step step, Integer beforeStepId) {
+    Step saved = new Step();
+    saved.setStepId(nextStepId());
+    saved.setProjectId(step.getProjectId());
+    saved.setStepText(step.getStepText());
+
+    boolean inserted = editSteps(step.getProjectId(), steps -> {
+      int position = Objects.isNull(beforeStepId) ? steps.size() : indexOf(steps, beforeStepId);
+
+      if (position < 0) {
+        return false;
+      }
+
+      steps.add(position, saved);
+      rankAt(steps, position);
+      return true;
+    });
+
+    if (!inserted) {
+      return Optional.empty();
+    }
+
+    step.setStepId(saved.getStepId());
+    step.setStepOrder(saved.getStepOrder());
+    return Optional.of(step);
+  }
+
+  @Override
+  public boolean moveStep(Integer projectId, Integer stepId, Integer beforeStepId) {
+    boolean[] found = {false};
+
+    editSteps(projectId, steps -> {
+      int from = indexOf(steps, stepId);
+      boolean beforeExists = Objects.isNull(beforeStepId) || indexOf(steps, beforeStepId) >= 0;
+
+      if (from < 0 || !beforeExists) {
+        return false;
+      }
+
+      found[0] = true;
+
+      if (stepId.equals(beforeStepId)) {
+        return false; // already there
+      }
+
+      Step step = steps.remove(from);
+      int position = Objects.isNull(beforeStepId) ? steps.size() : indexOf(steps, beforeStepId);
+      steps.add(position, step);
+      rankAt(steps, position);
+      return true;
+    });
+
+    return found[0];
+  }
+
+  @Override
+  public boolean deleteStep(Integer projectId, Integer stepId) {
+    return editSteps(projectId, steps -> steps.removeIf(step -> stepId.equals(step.getStepId())));
+  }
+
+  /**
+   * All categories found on saved projects, sorted by ID.
+   */
+  @Override
+  public List<Category> fetchAllCategories() {
+    scanCategories();
+
+    List<Category> categories = new ArrayList<>();
+    categoryNames.forEach((id, name) -> categories.add(newCategory(id, name)));
+    categories.sort(Comparator.comparing(Category::getCategoryId));
+    return categories;
+  }
+
+  /**
+   * Link the projects to the categories, one project at a time (each project is saved
+   * atomically). Projects that do not exist are skipped.
+   */
+  @Override
+  public int assignCategories(Collection<Integer> projectIds, Collection<Integer> categoryIds) {
+    List<Category> categories = new ArrayList<>(categoryIds.size());
+
+    for (Integer categoryId : categoryIds) {
+      categories.add(newCategory(categoryId, categoryNamed(categoryId)));
+    }
+
+    int[] added = {0};
+
+    for (Integer projectId : projectIds) {
+      editChildren(projectId, "categories", project -> {
+        int before = added[0];
+
+        for (Category category : categories) {
+          boolean linked = project.getCategories().stream()
+              .anyMatch(c -> category.getCategoryId().equals(c.getCategoryId()));
+
+          if (!linked) {
+            project.getCategories().add(newCategory(category.getCategoryId(),
+                category.getCategoryName()));
+            added[0]++;
+          }
+        }
+
+        return added[0] > before;
+      });
+    }
+
+    return added[0];
+  }
+
+  /**
+   * Remove the links between the projects and the categories, one project at a time.
+   */
+  @Override
+  public int unassignCategories(Collection<Integer> projectIds, Collection<Integer> categoryIds) {
+    int[] removed = {0};
+
+    for (Integer projectId : projectIds) {
+      editChildren(projectId, "categories", project -> {
+        int before = project.getCategories().size();
+        project.getCategories().removeIf(c -> categoryIds.contains(c.getCategoryId()));
+        removed[0] += before - project.getCategories().size();
+        return project.getCategories().size() < before;
+      });
+    }
+
+    return removed[0];
+  }
+
+  /**
+   * A new step ID. The first call looks for the highest saved one, so IDs stay unique after the
+   * store is reopened.
+   */
+  protected int nextStepId() {
+    if (lastStepId.get() < 0) {
+      synchronized (lastStepId) {
+        if (lastStepId.get() < 0) {
+          int[] max = {0};
+
+          forEachSavedProject(project -> project.getSteps().forEach(step -> {
+            if (Objects.nonNull(step.getStepId())) {
+              max[0] = Math.max(max[0], step.getStepId());
+            }
+          }));
+
+          lastStepId.set(max[0]);
+        }
+      }
+    }
+
+    return lastStepId.incrementAndGet();
+  }
+
+  /*
+   * The name of a known category. Projects saved since the last scan may have brought new
+   * categories, so an unknown ID triggers a new scan before it is reported.
+   */
+  private String categoryNamed(Integer categoryId) {
+    String name = categoryNames.get(categoryId);
+
+    if (Objects.isNull(name)) {
+      scanCategories();
+      name = categoryNames.get(categoryId);
+    }
+
+    if (Objects.isNull(name)) {
+      throw new DbException("Category with ID=" + categoryId + " does not exist.");
+    }
+
+    return name;
+  }
+
+  private void scanCategories() {
+    forEachSavedProject(project -> project.getCategories().forEach(category -> {
+      if (Objects.nonNull(category.getCategoryId())
+          && Objects.nonNull(category.getCategoryName())) {
+        categoryNames.put(category.getCategoryId(), category.getCategoryName());
+      }
+    }));
+  }
+
+  private static Category newCategory(Integer categoryId, String categoryName) {
+    Category category = new Category();
+    category.setCategoryId(categoryId);
+    category.setCategoryName(categoryName);
+    return category;
+  }
+
+  /*
+   * Steps are children too: their edits are saved the same way.
+   */
+  private boolean editSteps(Integer projectId, Predicate<List<Step>> edit) {
+    return editChildren(projectId, "steps", project -> edit.test(project.getSteps()));
+  }
+
+  /*
+   * Give the step at this position a rank between its neighbours. The whole project is saved
+   * anyway, so if the neighbours are crowded, all steps are renumbered right away.
+   */
+  private static void rankAt(List<Step> steps, int position) {
+    Integer previous = position > 0 ? steps.get(position - 1).getStepOrder() : null;
+    Integer next = position < steps.size() - 1 ? steps.get(position + 1).getStepOrder() : null;
+    Integer rank = StepRanks.between(previous, next);
+
+    if (Objects.isNull(rank) || StepRanks.crowded(previous, rank, next)) {
+      StepRanks.renumber(steps);
+    } else {
+      steps.get(position).setStepOrder(rank);
+    }
+  }
+
+  private static int indexOf(List<Step> steps, Integer stepId) {
+    for (int i = 0; i < steps.size(); i++) {
+      if (stepId.equals(steps.get(i).getStepId())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public void setChangeListener(Consumer<ProjectChange> changeListener) {
+    this.changeListener = changeListener;
+  }
+
+  /*
+   * Every text is read with its project, so there are no deferred reads to wrap.
+   */
+  @Override
+  public void setDeferredReadWrapper(UnaryOperator<Supplier<Map<Integer, String>>> wrapper) {
+  }
+
+  /**
+   * Hand committed changes to the listener, if there is one.
+   */
+  protected void publishChanges(List<ProjectChange> changes) {
+    Consumer<ProjectChange> listener = changeListener;
+
+    if (Objects.nonNull(listener)) {
+      changes.forEach(listener);
+    }
+  }
+
+  /**
+   * The updated_at for a change made now. Time stamps have millisecond precision (like
+   * updated_at in MySQL) and never go backwards, so incremental sync sees changes in the order
+   * they were made. Call it while holding the store's write lock.
+   */
+  protected LocalDateTime now() {
+    LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.MILLIS);
+
+    if (now.isBefore(lastUpdatedAt)) {
+      now = lastUpdatedAt;
+    }
+
+    lastUpdatedAt = now;
+    return now;
+  }
+
+  /**
+   * Make sure now() does not hand out anything older than this (e.g. after reading a file).
+   */
+  protected void seenUpdatedAt(LocalDateTime updatedAt) {
+    if (updatedAt.isAfter(lastUpdatedAt)) {
+      lastUpdatedAt = updatedAt;
+    }
+  }
+
+  /**
+   * Copy the fields that were changed through a setter onto the saved project (an update only
+   * writes the changed columns; the others keep their saved values).
+   */
+  protected void applyModifiedFields(Project from, Project to) {
+    for (String field : from.getModifiedFields()) {
+      switch (field) {
+        case "projectName" -> to.setProjectName(from.getProjectName());
+        case "estimatedHours" -> to.setEstimatedHours(from.getEstimatedHours());
+        case "actualHours" -> to.setActualHours(from.getActualHours());
+        case "difficulty" -> to.setDifficulty(from.getDifficulty());
+        case "notes" -> to.setNotes(from.getNotes());
+        default -> throw new DbException("Unknown project field: " + field);
+      }
+    }
+  }
+
+  /**
+   * A copy that shares nothing with the original (children are copied too, if asked for, with
+   * the steps in rank order), with nothing marked as modified.
+   */
+  protected Project copyOf(Project project, boolean withChildren) {
+    Project copy = new Project();
+    copy.setProjectId(project.getProjectId());
+    copy.setProjectName(project.getProjectName());
+    copy.setEstimatedHours(project.getEstimatedHours());
+    copy.setActualHours(project.getActualHours());
+    copy.setDifficulty(project.getDifficulty());
+    copy.setNotes(project.getNotes());
+    copy.setVersion(project.getVersion());
+    copy.setUpdatedAt(project.getUpdatedAt());
+
+    if (withChildren) {
+      for (Material material : project.getMaterials()) {
+        Material materialCopy = new Material();
+        materialCopy.setMaterialId(material.getMaterialId());
+        materialCopy.setProjectId(project.getProjectId());
+        materialCopy.setMaterialName(material.getMaterialName());
+        materialCopy.setNumRequired(material.getNumRequired());
+        materialCopy.setCost(material.getCost());
+        copy.getMaterials().add(materialCopy);
+      }
+
+      for (Step step : project.getSteps()) {
+        Step stepCopy = new Step();
+        stepCopy.setStepId(step.getStepId());
+        stepCopy.setProjectId(project.getProjectId());
+        stepCopy.setStepText(step.getStepText());
+        stepCopy.setStepOrder(step.getStepOrder());
+        copy.getSteps().add(stepCopy);
+      }
+      copy.getSteps().sort(StepRanks.ORDER);
+
+      for (Category category : project.getCategories()) {
+        Category categoryCopy = new Category();
+        categoryCopy.setCategoryId(category.getCategoryId());
+        categoryCopy.setCategoryName(category.getCategoryName());
+        copy.getCategories().add(categoryCopy);
+      }
+    }
+
+    copy.clearModifiedFields();
+    return copy;
+  }
+
+  /**
+   * Set a new project's ID on it and on its children.
+   */
+  protected void assignId(Project project, int projectId) {
+    project.setProjectId(projectId);
+    project.getMaterials().forEach(material -> material.setProjectId(projectId));
+    project.getSteps().forEach(step -> step.setProjectId(projectId));
+  }
+
+  protected ProjectChange newChange(long changeId, Integer projectId, ChangeType changeType,
+      String changedFields) {
+    ProjectChange change = new ProjectChange();
+    change.setChangeId(changeId);
+    change.setProjectId(projectId);
+    change.setChangeType(changeType);
+    change.setChangedFields(changedFields);
+    return change;
+  }
+}
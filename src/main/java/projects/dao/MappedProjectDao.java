@@ -0,0 +1,936 @@
+package projects.dao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32C;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.ProjectChange;
+import projects.entity.ProjectChange.ChangeType;
+import projects.entity.Step;
+import projects.exception.DbException;
+
+/**
+ * A ProjectRepository that keeps the projects in a local file instead of MySQL, for sites that run
+ * without a reachable database. It has the same methods and results as the JDBC DAO (IDs,
+ * versions and conflicts, updated_at for incremental sync, the change feed).
+ *
+ * The file is an append-only log of variable-length binary records (fields in a fixed order),
+ * memory-mapped for reading and writing. Every insert, update and delete appends one record
+ * holding the whole project (with its materials, steps and categories); the newest record of a
+ * project wins. An index from project ID to record offset is kept off the Java heap (see
+ * OffHeapIdIndex) and rebuilt from the log when the file is opened.
+ *
+ * Crash safety: new records are written after the committed end of the log and flushed, and only
+ * then is the new end written to the file header (and flushed). That header write is the commit.
+ * After a crash, anything past the committed end is ignored and later overwritten, so a batch is
+ * saved completely or not at all.
+ *
+ * Compaction: once most of the file is old versions and deleted projects, the live records are
+ * copied to a new file that then atomically replaces the old one; the store keeps using the old
+ * file until the new one is in place. This happens after a write is committed and published. If
+ * it fails, the write still succeeds, automatic compaction stops, and close() reports the
+ * failure; compact() tries again and reports its own failure right away. Compaction keeps each
+ * project's newest record, so the change feed (fetchChangesSince) can only replay back to the
+ * last compaction, and does not replay deletes from before it.
+ *
+ * File layout (all numbers big-endian):
+ *   header (64 bytes): magic, format version, next project ID, next change ID, committed end
+ *   record:  length (int), CRC32C of the rest (int), change ID (long), change type (byte),
+ *            project ID (int), changed column names (string), then, unless it is a delete:
+ *            version, updated_at (epoch millis), name, estimated hours, actual hours,
+ *            difficulty, notes, the materials, the steps and the categories
+ *   string:  byte count (int, -1 for null) and UTF-8 bytes
+ * One file holds at most 2 GB (the limit of one mapped buffer).
+ *
+ * Thread safe: reads share a read lock, writes take the write lock.
+ */
+public final class MappedProjectDao extends LocalProjectStore implements AutoCloseable {
+  private static final long MAGIC = 0x50524F4A53544F52L; // "PROJSTOR"
+  private static final int FORMAT_VERSION = 1;
+
+  // Header fields (byte offsets)
+  private static final int HEADER_SIZE = 64;
+  private static final int FORMAT_VERSION_AT = 8;
+  private static final int NEXT_PROJECT_ID_AT = 12;
+  private static final int NEXT_CHANGE_ID_AT = 16;
+  private static final int END_AT = 24;
+
+  // Record fields (byte offsets from the start of a record)
+  private static final int CHECKSUM_AT = 4;
+  private static final int CHANGE_ID_AT = 8;
+  private static final int CHANGE_TYPE_AT = 16;
+  private static final int PROJECT_ID_AT = 17;
+  private static final int RECORD_HEADER_SIZE = 21;
+
+  private static final int NULL_INT = Integer.MIN_VALUE;
+  private static final int INITIAL_FILE_SIZE = 1 << 20;
+  private static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+
+  // Compact when the file is at least this big and less than half of it is live
+  private static final long COMPACT_MIN_SIZE = 1 << 20;
+
+  private final Path file;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final OffHeapIdIndex index = new OffHeapIdIndex(1024);
+
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private int end;          // committed end of the log
+  private int nextProjectId;
+  private long nextChangeId;
+  private long liveBytes;   // size of the newest record of every live project
+  private DbException compactionFailure; // of the last automatic compaction, if it failed
+
+  /**
+   * Open the store in this file, creating the file if it does not exist yet.
+   */
+  public MappedProjectDao(Path file) {
+    this.file = file;
+
+    try {
+      Files.deleteIfExists(compactionFile()); // left over from an interrupted compaction
+      open();
+    } catch (IOException e) {
+      throw new DbException("Unable to open project store " + file, e);
+    }
+  }
+
+  /**
+   * Add a new project (with its materials, steps and categories).
+   * Returns the same Project object, now with its new ID, version and updated_at set.
+   */
+  @Override
+  public Project insertProject(Project project) {
+    insertProjects(List.of(project));
+    return project;
+  }
+
+  /**
+   * Add several projects in one commit: either all are saved or none are.
+   */
+  @Override
+  public List<Project> insertProjects(List<Project> projects) {
+    projects.forEach(this::loadDeferredTexts); // texts left out by another store's fetch
+    List<ProjectChange> changes = new ArrayList<>(projects.size());
+
+    lock.writeLock().lock();
+    try {
+      int firstId = nextProjectId;
+      long firstChangeId = nextChangeId;
+      List<byte[]> records = new ArrayList<>(projects.size());
+      List<Project> saved = new ArrayList<>(projects.size());
+
+      try {
+        for (Project project : projects) {
+          Project copy = copyOf(project, true);
+          assignId(copy, nextProjectId++);
+          copy.setVersion(0);
+          copy.setUpdatedAt(now());
+
+          ProjectChange change = newChange(nextChangeId++, copy.getProjectId(),
+              ChangeType.INSERT, ProjectDao.INSERT_COLUMNS);
+          records.add(encode(change, copy));
+          changes.add(change);
+          saved.add(copy);
+        }
+
+        int[] offsets = append(records);
+
+        for (int i = 0; i < projects.size(); i++) {
+          Project copy = saved.get(i);
+          indexRecord(copy.getProjectId(), offsets[i]);
+
+          Project project = projects.get(i);
+          project.setProjectId(copy.getProjectId());
+          project.setVersion(copy.getVersion());
+          project.setUpdatedAt(copy.getUpdatedAt());
+          project.clearModifiedFields();
+        }
+      } catch (IOException | RuntimeException e) {
+        nextProjectId = firstId; // nothing was committed
+        nextChangeId = firstChangeId;
+        throw new DbException(e);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    publishChanges(changes);
+    compactIfWasteful();
+    return projects;
+  }
+
+  /**
+   * Get all projects (without their materials, steps and categories), sorted by ID.
+   */
+  @Override
+  public List<Project> fetchAllProjects() {
+    lock.readLock().lock();
+    try {
+      List<Project> projects = new LinkedList<>();
+
+      for (int projectId : index.sortedIds()) {
+        projects.add(readProject(index.get(projectId), false));
+      }
+
+      return projects;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get only the projection's fields of all projects, sorted by ID.
+   * Unless the projection asks for the notes, they are not decoded.
+   */
+  @Override
+  public <R> List<R> fetchAllProjects(ProjectProjection<R> projection) {
+    boolean withNotes = projection.columns().contains("notes");
+
+    lock.readLock().lock();
+    try {
+      List<R> projected = new ArrayList<>();
+
+      for (int projectId : index.sortedIds()) {
+        long offset = index.get(projectId);
+        projected.add(projection.fromProject().apply(
+            withNotes ? readProject(offset, false) : readProjectWithoutNotes(offset)));
+      }
+
+      return projected;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get one project by ID, with its materials, steps and categories.
+   */
+  @Override
+  public Optional<Project> fetchProjectById(Integer projectId) {
+    lock.readLock().lock();
+    try {
+      long offset = index.get(projectId);
+      return offset < 0 ? Optional.empty() : Optional.of(readProject(offset, true));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Incremental sync: up to "limit" projects changed after the watermark, oldest change first
+   * (see ProjectDao.fetchChangedSince).
+   */
+  @Override
+  public List<Project> fetchChangedSince(ProjectWatermark watermark, int limit) {
+    Comparator<Project> order =
+        Comparator.comparing(Project::getUpdatedAt).thenComparing(Project::getProjectId);
+    Project after = new Project();
+    after.setUpdatedAt(watermark.updatedAt());
+    after.setProjectId(watermark.projectId());
+
+    lock.readLock().lock();
+    try {
+      List<Project> changed = new ArrayList<>();
+
+      for (int projectId : index.sortedIds()) {
+        Project project = readProjectWithoutNotes(index.get(projectId));
+        if (order.compare(project, after) > 0) {
+          changed.add(project);
+        }
+      }
+
+      changed.sort(order);
+      List<Project> page = new LinkedList<>();
+
+      for (Project project : changed.subList(0, Math.min(limit, changed.size()))) {
+        page.add(readProject(index.get(project.getProjectId()), true));
+      }
+
+      return page;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Update one project's fields, with the same optimistic concurrency rules as the JDBC DAO.
+   */
+  @Override
+  public UpdateResult modifyProjectDetails(Project project) {
+    return modifyProjectDetails(List.of(project)).get(0);
+  }
+
+  /**
+   * Update several projects in one commit. Each project gets its own result, in list order.
+   * Only the fields changed through a setter are written; the others keep their saved values.
+   */
+  @Override
+  public List<UpdateResult> modifyProjectDetails(List<Project> projects) {
+    List<UpdateResult> results = new ArrayList<>(projects.size());
+    List<ProjectChange> changes = new ArrayList<>(projects.size());
+
+    lock.writeLock().lock();
+    try {
+      long firstChangeId = nextChangeId;
+      Map<Integer, Project> written = new LinkedHashMap<>(); // newest state, by ID
+      List<byte[]> records = new ArrayList<>(projects.size());
+
+      try {
+        for (Project project : projects) {
+          Project current = written.get(project.getProjectId());
+          long offset = index.get(project.getProjectId());
+
+          if (current == null && offset >= 0) {
+            current = readProject(offset, true);
+          }
+
+          if (current == null) {
+            results.add(UpdateResult.NOT_FOUND);
+          } else if (Objects.nonNull(project.getVersion())
+              && !project.getVersion().equals(current.getVersion())) {
+            results.add(UpdateResult.CONFLICT);
+          } else {
+            List<ProjectDao.ProjectColumn> columns = ProjectDao.modifiedColumns(project);
+
+            if (!columns.isEmpty()) {
+              applyModifiedFields(project, current);
+              current.setVersion(current.getVersion() + 1);
+              current.setUpdatedAt(now());
+
+              ProjectChange change = newChange(nextChangeId++, current.getProjectId(),
+                  ChangeType.UPDATE, ProjectDao.columnNames(columns));
+              records.add(encode(change, current));
+              changes.add(change);
+              written.put(current.getProjectId(), current);
+            }
+
+            results.add(UpdateResult.UPDATED);
+          }
+        }
+
+        int[] offsets = append(records);
+
+        for (int i = 0; i < offsets.length; i++) {
+          indexRecord(changes.get(i).getProjectId(), offsets[i]);
+        }
+      } catch (IOException | RuntimeException e) {
+        nextChangeId = firstChangeId;
+        throw new DbException(e);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    publishChanges(changes);
+
+    for (int i = 0; i < projects.size(); i++) {
+      ProjectDao.afterUpdate(projects.get(i), results.get(i));
+    }
+
+    compactIfWasteful();
+    return results;
+  }
+
+  /**
+   * Read the change feed: up to "limit" changes with an ID greater than afterChangeId, oldest
+   * first. Only changes since the last compaction can be replayed.
+   */
+  @Override
+  public List<ProjectChange> fetchChangesSince(ChangeCursor cursor, int limit) {
+    long afterChangeId = cursor.highest(); // one counter for the whole file
+    lock.readLock().lock();
+    try {
+      List<ProjectChange> changes = new LinkedList<>();
+
+      for (int offset = HEADER_SIZE; offset < end && changes.size() < limit;
+          offset += buffer.getInt(offset)) {
+        if (buffer.getLong(offset + CHANGE_ID_AT) > afterChangeId) {
+          RecordReader reader = new RecordReader(buffer, offset);
+          changes.add(newChange(buffer.getLong(offset + CHANGE_ID_AT),
+              buffer.getInt(offset + PROJECT_ID_AT), changeTypeAt(offset), reader.readString()));
+        }
+      }
+
+      return changes;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Delete one project by ID.
+   * Returns true if it was deleted, false if the ID was not found.
+   */
+  @Override
+  public boolean deleteProject(Integer projectId) {
+    ProjectChange change;
+
+    lock.writeLock().lock();
+    try {
+      if (index.get(projectId) < 0) {
+        return false;
+      }
+
+      change = newChange(nextChangeId++, projectId, ChangeType.DELETE, "");
+
+      try {
+        append(List.of(encode(change, null)));
+      } catch (IOException | RuntimeException e) {
+        nextChangeId--;
+        throw new DbException(e);
+      }
+
+      liveBytes -= buffer.getInt((int)index.remove(projectId));
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    publishChanges(List.of(change));
+    compactIfWasteful();
+    return true;
+  }
+
+  /*
+   * Read the project, edit it and append the new version, all under the write lock.
+   */
+  @Override
+  protected boolean editChildren(Integer projectId, String changedFields,
+      Predicate<Project> edit) {
+    ProjectChange change;
+
+    lock.writeLock().lock();
+    try {
+      long offset = index.get(projectId);
+
+      if (offset < 0) {
+        return false;
+      }
+
+      Project project = readProject(offset, true);
+      project.getSteps().sort(StepRanks.ORDER);
+
+      if (!edit.test(project)) {
+        return false;
+      }
+
+      project.setUpdatedAt(now());
+      change = newChange(nextChangeId++, projectId, ChangeType.UPDATE, changedFields);
+
+      try {
+        indexRecord(projectId, append(List.of(encode(change, project)))[0]);
+      } catch (IOException | RuntimeException e) {
+        nextChangeId--;
+        throw new DbException(e);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    publishChanges(List.of(change));
+    compactIfWasteful();
+    return true;
+  }
+
+  /*
+   * Decodes every live project, so it is only used for rare scans.
+   */
+  @Override
+  protected void forEachSavedProject(Consumer<Project> action) {
+    lock.readLock().lock();
+    try {
+      for (int projectId : index.sortedIds()) {
+        action.accept(readProject(index.get(projectId), true));
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Rewrite the file with only the newest record of each live project.
+   * This happens by itself when most of the file is unused; call it to shrink the file now.
+   */
+  public void compact() {
+    lock.writeLock().lock();
+    try {
+      compactNow();
+      compactionFailure = null;
+    } catch (IOException e) {
+      throw new DbException("Unable to compact project store " + file, e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Flush everything to disk and close the file.
+   * Throws a DbException if an automatic compaction failed (the data is saved all the same).
+   */
+  @Override
+  public void close() {
+    lock.writeLock().lock();
+    try {
+      buffer.force();
+      channel.close();
+    } catch (IOException e) {
+      throw new DbException(e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    if (Objects.nonNull(compactionFailure)) {
+      throw compactionFailure;
+    }
+  }
+
+  /*
+   * Map the file, write the header of a new file or check the header of an existing one, and
+   * rebuild the index from the committed records.
+   */
+  private void open() throws IOException {
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    long size = channel.size();
+
+    if (size > MAX_FILE_SIZE) {
+      throw new DbException(file + " is larger than 2 GB");
+    }
+
+    map(Math.max(INITIAL_FILE_SIZE, size));
+
+    if (size == 0) {
+      buffer.putLong(0, MAGIC);
+      buffer.putInt(FORMAT_VERSION_AT, FORMAT_VERSION);
+      buffer.putInt(NEXT_PROJECT_ID_AT, 1);
+      buffer.putLong(NEXT_CHANGE_ID_AT, 1);
+      buffer.putLong(END_AT, HEADER_SIZE);
+      buffer.force(0, HEADER_SIZE);
+    } else if (buffer.getLong(0) != MAGIC
+        || buffer.getInt(FORMAT_VERSION_AT) != FORMAT_VERSION) {
+      throw new DbException(file + " is not a project store (or has an unknown format)");
+    }
+
+    nextProjectId = buffer.getInt(NEXT_PROJECT_ID_AT);
+    nextChangeId = buffer.getLong(NEXT_CHANGE_ID_AT);
+    end = (int)buffer.getLong(END_AT);
+
+    index.clear();
+    liveBytes = 0;
+
+    for (int offset = HEADER_SIZE; offset < end; offset += buffer.getInt(offset)) {
+      checkRecord(offset);
+      int projectId = buffer.getInt(offset + PROJECT_ID_AT);
+
+      if (changeTypeAt(offset) == ChangeType.DELETE) {
+        long removed = index.remove(projectId);
+        if (removed >= 0) {
+          liveBytes -= buffer.getInt((int)removed);
+        }
+      } else {
+        indexRecord(projectId, offset);
+        seenUpdatedAt(readProjectWithoutNotes(offset).getUpdatedAt());
+      }
+    }
+  }
+
+  private void map(long size) throws IOException {
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size); // grows the file if needed
+  }
+
+  /*
+   * A committed record must be complete and unchanged; anything else means the file is damaged.
+   */
+  private void checkRecord(int offset) {
+    int length = buffer.getInt(offset);
+
+    if (length < RECORD_HEADER_SIZE || offset + length > end) {
+      throw new DbException(file + " is damaged: bad record length at offset " + offset);
+    }
+
+    CRC32C checksum = new CRC32C();
+    checksum.update(buffer.slice(offset + CHANGE_ID_AT, length - CHANGE_ID_AT));
+
+    if ((int)checksum.getValue() != buffer.getInt(offset + CHECKSUM_AT)) {
+      throw new DbException(file + " is damaged: bad checksum at offset " + offset);
+    }
+  }
+
+  /*
+   * Append complete records after the committed end, flush them, then commit them all at once
+   * by writing the new end (and the ID counters) to the header and flushing that.
+   * Returns the offset of each record.
+   */
+  private int[] append(List<byte[]> records) throws IOException {
+    int[] offsets = new int[records.size()];
+
+    if (records.isEmpty()) {
+      return offsets;
+    }
+
+    long newEnd = end;
+    for (byte[] record : records) {
+      newEnd += record.length;
+    }
+
+    if (newEnd > buffer.capacity()) {
+      if (newEnd > MAX_FILE_SIZE) {
+        throw new DbException("Project store " + file + " is full (2 GB)");
+      }
+      map(Math.min(MAX_FILE_SIZE, Math.max(newEnd, 2L * buffer.capacity())));
+    }
+
+    int position = end;
+
+    for (int i = 0; i < records.size(); i++) {
+      offsets[i] = position;
+      buffer.put(position, records.get(i));
+      position += records.get(i).length;
+    }
+
+    buffer.force(end, position - end);
+
+    buffer.putInt(NEXT_PROJECT_ID_AT, nextProjectId);
+    buffer.putLong(NEXT_CHANGE_ID_AT, nextChangeId);
+    buffer.putLong(END_AT, position);
+    buffer.force(0, HEADER_SIZE); // the commit
+
+    end = position;
+    return offsets;
+  }
+
+  private void indexRecord(int projectId, int offset) {
+    long previous = index.put(projectId, offset);
+
+    liveBytes += buffer.getInt(offset);
+    if (previous >= 0) {
+      liveBytes -= buffer.getInt((int)previous);
+    }
+  }
+
+  /*
+   * Compact the file if less than half of it is live. Called after a write is committed and
+   * published, so a failure does not fail the write: it is kept for close() to report, and
+   * automatic compaction stops until compact() succeeds (instead of copying the file on every
+   * later write).
+   */
+  private void compactIfWasteful() {
+    lock.writeLock().lock();
+    try {
+      if (Objects.isNull(compactionFailure) && end >= COMPACT_MIN_SIZE
+          && end - HEADER_SIZE > 2 * liveBytes) {
+        compactNow();
+      }
+    } catch (IOException | RuntimeException e) {
+      compactionFailure = new DbException("Unable to compact project store " + file, e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /*
+   * Copy the header and the live records (in log order, so change IDs stay in order) to a new
+   * file, flush and map it, and move it over the old file in one step: the commit. Until then
+   * the store keeps using the old file, so a failure leaves it as it was (the copy is deleted).
+   * A crash before the move leaves the old file as it was; the copy is deleted on the next open.
+   * The old mapping is freed once it is garbage collected (Java cannot unmap a buffer).
+   */
+  private void compactNow() throws IOException {
+    Path target = compactionFile();
+    List<Integer> projectIds = new ArrayList<>(index.size());
+    index.forEach(projectIds::add);
+    projectIds.sort(Comparator.comparingLong(index::get));
+
+    int newEnd = (int)(HEADER_SIZE + liveBytes);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putLong(0, MAGIC);
+    header.putInt(FORMAT_VERSION_AT, FORMAT_VERSION);
+    header.putInt(NEXT_PROJECT_ID_AT, nextProjectId);
+    header.putLong(NEXT_CHANGE_ID_AT, nextChangeId);
+    header.putLong(END_AT, newEnd);
+
+    FileChannel newChannel = FileChannel.open(target, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    int[] newOffsets = new int[projectIds.size()];
+    MappedByteBuffer newBuffer;
+
+    try {
+      writeFully(newChannel, header);
+      int position = HEADER_SIZE;
+
+      for (int i = 0; i < projectIds.size(); i++) {
+        int offset = (int)index.get(projectIds.get(i));
+        int length = buffer.getInt(offset);
+        writeFully(newChannel, buffer.slice(offset, length));
+        newOffsets[i] = position;
+        position += length;
+      }
+
+      newChannel.force(true);
+      newBuffer = newChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+          Math.max(INITIAL_FILE_SIZE, newEnd));
+      Files.move(target, file, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException | RuntimeException e) {
+      try {
+        newChannel.close();
+        Files.deleteIfExists(target);
+      } catch (IOException cleanupError) {
+        e.addSuppressed(cleanupError);
+      }
+      throw e;
+    }
+
+    FileChannel oldChannel = channel;
+    channel = newChannel;
+    buffer = newBuffer;
+    end = newEnd;
+
+    for (int i = 0; i < newOffsets.length; i++) {
+      index.put(projectIds.get(i), newOffsets[i]);
+    }
+
+    try {
+      oldChannel.close();
+    } catch (IOException e) {
+      // The old file is already replaced; nothing is lost
+    }
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer bytes) throws IOException {
+    while (bytes.hasRemaining()) {
+      out.write(bytes);
+    }
+  }
+
+  private Path compactionFile() {
+    return file.resolveSibling(file.getFileName() + ".compact");
+  }
+
+  private ChangeType changeTypeAt(int offset) {
+    return ChangeType.values()[buffer.get(offset + CHANGE_TYPE_AT)];
+  }
+
+  /*
+   * Build one complete record: header (with length and checksum), changed columns and, unless
+   * it is a delete, the project.
+   */
+  private byte[] encode(ProjectChange change, Project project) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    DataOutputStream out = new DataOutputStream(bytes);
+
+    out.writeInt(0); // length, set below
+    out.writeInt(0); // checksum, set below
+    out.writeLong(change.getChangeId());
+    out.writeByte(change.getChangeType().ordinal());
+    out.writeInt(change.getProjectId());
+    writeString(out, change.getChangedFields());
+
+    if (change.getChangeType() != ChangeType.DELETE) {
+      out.writeInt(project.getVersion());
+      out.writeLong(project.getUpdatedAt().toInstant(ZoneOffset.UTC).toEpochMilli());
+      writeString(out, project.getProjectName());
+      writeDecimal(out, project.getEstimatedHours());
+      writeDecimal(out, project.getActualHours());
+      writeInteger(out, project.getDifficulty());
+      writeString(out, project.getNotes());
+
+      out.writeInt(project.getMaterials().size());
+      for (Material material : project.getMaterials()) {
+        writeInteger(out, material.getMaterialId());
+        writeString(out, material.getMaterialName());
+        writeInteger(out, material.getNumRequired());
+        writeDecimal(out, material.getCost());
+      }
+
+      out.writeInt(project.getSteps().size());
+      for (Step step : project.getSteps().stream().sorted(StepRanks.ORDER).toList()) {
+        writeInteger(out, step.getStepId());
+        writeString(out, step.getStepText());
+        writeInteger(out, step.getStepOrder());
+      }
+
+      out.writeInt(project.getCategories().size());
+      for (Category category : project.getCategories()) {
+        writeInteger(out, category.getCategoryId());
+        writeString(out, category.getCategoryName());
+      }
+    }
+
+    byte[] record = bytes.toByteArray();
+    CRC32C checksum = new CRC32C();
+    checksum.update(record, CHANGE_ID_AT, record.length - CHANGE_ID_AT);
+
+    ByteBuffer.wrap(record).putInt(0, record.length).putInt(CHECKSUM_AT, (int)checksum.getValue());
+    return record;
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(utf8.length);
+      out.write(utf8);
+    }
+  }
+
+  private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+    out.writeInt(value == null ? NULL_INT : value);
+  }
+
+  // scale (NULL_INT for null), then the unscaled value as a byte string
+  private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+    if (value == null) {
+      out.writeInt(NULL_INT);
+    } else {
+      byte[] unscaled = value.unscaledValue().toByteArray();
+      out.writeInt(value.scale());
+      out.writeInt(unscaled.length);
+      out.write(unscaled);
+    }
+  }
+
+  /*
+   * Build a Project from the record at this offset; the children are only read if asked for.
+   */
+  private Project readProject(long offset, boolean withChildren) {
+    RecordReader reader = new RecordReader(buffer, (int)offset);
+    Project project = readFieldsBeforeNotes(offset, reader);
+    project.setNotes(reader.readString());
+
+    if (withChildren) {
+      for (int i = reader.readInt(); i > 0; i--) {
+        Material material = new Material();
+        material.setMaterialId(reader.readInteger());
+        material.setProjectId(project.getProjectId());
+        material.setMaterialName(reader.readString());
+        material.setNumRequired(reader.readInteger());
+        material.setCost(reader.readDecimal());
+        project.getMaterials().add(material);
+      }
+
+      for (int i = reader.readInt(); i > 0; i--) {
+        Step step = new Step();
+        step.setStepId(reader.readInteger());
+        step.setProjectId(project.getProjectId());
+        step.setStepText(reader.readString());
+        step.setStepOrder(reader.readInteger());
+        project.getSteps().add(step);
+      }
+
+      for (int i = reader.readInt(); i > 0; i--) {
+        Category category = new Category();
+        category.setCategoryId(reader.readInteger());
+        category.setCategoryName(reader.readString());
+        project.getCategories().add(category);
+      }
+    }
+
+    project.clearModifiedFields();
+    return project;
+  }
+
+  /*
+   * Decode only the project's own fields that come before the notes (ID, version, updated_at,
+   * name, hours and difficulty), for scans that do not need the notes, which can be long.
+   */
+  private Project readProjectWithoutNotes(long offset) {
+    Project project = readFieldsBeforeNotes(offset, new RecordReader(buffer, (int)offset));
+    project.clearModifiedFields();
+    return project;
+  }
+
+  private Project readFieldsBeforeNotes(long offset, RecordReader reader) {
+    reader.readString(); // changed columns
+
+    Project project = new Project();
+    project.setProjectId(buffer.getInt((int)offset + PROJECT_ID_AT));
+    project.setVersion(reader.readInt());
+    project.setUpdatedAt(
+        LocalDateTime.ofInstant(Instant.ofEpochMilli(reader.readLong()), ZoneOffset.UTC));
+    project.setProjectName(reader.readString());
+    project.setEstimatedHours(reader.readDecimal());
+    project.setActualHours(reader.readDecimal());
+    project.setDifficulty(reader.readInteger());
+    return project;
+  }
+
+  /**
+   * Reads the values of one record, in order, starting after the record header. Uses its own
+   * view of the mapped buffer, so several readers can work at the same time.
+   */
+  private static class RecordReader {
+    private final ByteBuffer record;
+
+    RecordReader(MappedByteBuffer buffer, int offset) {
+      record = buffer.slice(offset, buffer.getInt(offset)).position(RECORD_HEADER_SIZE);
+    }
+
+    int readInt() {
+      return record.getInt();
+    }
+
+    long readLong() {
+      return record.getLong();
+    }
+
+    Integer readInteger() {
+      int value = record.getInt();
+      return value == NULL_INT ? null : value;
+    }
+
+    String readString() {
+      int length = record.getInt();
+
+      if (length < 0) {
+        return null;
+      }
+
+      byte[] utf8 = new byte[length];
+      record.get(utf8);
+      return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    BigDecimal readDecimal() {
+      int scale = record.getInt();
+
+      if (scale == NULL_INT) {
+        return null;
+      }
+
+      byte[] unscaled = new byte[record.getInt()];
+      record.get(unscaled);
+      return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package projects.dao;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A hash table from project ID to file offset, kept outside the Java heap (in a direct
+ * ByteBuffer), so even millions of entries cost the garbage collector nothing.
+ *
+ * Each slot is 12 bytes: the ID (0 = empty slot) and the offset (-1 = removed). Slots are found
+ * by linear probing. Removed slots stay in place until the next resize so probing still works.
+ * Not thread safe: MappedProjectDao guards it with its lock.
+ */
+final class OffHeapIdIndex {
+  private static final int SLOT_SIZE = 12;
+  private static final int EMPTY = 0;
+  private static final long REMOVED = -1;
+
+  private ByteBuffer slots;
+  private int capacity; // number of slots, always a power of 2
+  private int size;     // live entries
+  private int used;     // live + removed slots
+
+  OffHeapIdIndex(int expectedSize) {
+    allocate(Math.max(16, Integer.highestOneBit(Math.max(1, expectedSize) * 2) * 2));
+  }
+
+  /**
+   * @return the offset stored for this ID, or -1 if there is none
+   */
+  long get(int projectId) {
+    int slot = find(projectId);
+    return slot < 0 ? -1 : slots.getLong(slot * SLOT_SIZE + 4);
+  }
+
+  /**
+   * Store (or replace) the offset for an ID.
+   * @return the previous offset, or -1 if there was none
+   */
+  long put(int projectId, long offset) {
+    if (projectId == EMPTY) {
+      throw new IllegalArgumentException("Project ID 0 cannot be indexed");
+    }
+
+    if ((used + 1) * 2 > capacity) {
+      resize(size * 4 > capacity ? capacity * 2 : capacity); // grow, or just drop removed slots
+    }
+
+    int slot = Math.floorMod(hash(projectId), capacity);
+
+    while (true) {
+      int key = slots.getInt(slot * SLOT_SIZE);
+
+      if (key == EMPTY) {
+        slots.putInt(slot * SLOT_SIZE, projectId);
+        slots.putLong(slot * SLOT_SIZE + 4, offset);
+        size++;
+        used++;
+        return -1;
+      }
+
+      if (key == projectId) {
+        long previous = slots.getLong(slot * SLOT_SIZE + 4);
+        slots.putLong(slot * SLOT_SIZE + 4, offset);
+        if (previous == REMOVED) {
+          size++;
+        }
+        return previous;
+      }
+
+      slot = (slot + 1) & (capacity - 1);
+    }
+  }
+
+  /**
+   * Forget an ID.
+   * @return the offset it had, or -1 if there was none
+   */
+  long remove(int projectId) {
+    int slot = find(projectId);
+
+    if (slot < 0) {
+      return -1;
+    }
+
+    long previous = slots.getLong(slot * SLOT_SIZE + 4);
+    slots.putLong(slot * SLOT_SIZE + 4, REMOVED);
+    size--;
+    return previous;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * @return all indexed IDs, sorted low to high
+   */
+  int[] sortedIds() {
+    int[] ids = new int[size];
+    int[] count = {0};
+    forEach(id -> ids[count[0]++] = id);
+    Arrays.sort(ids);
+    return ids;
+  }
+
+  /**
+   * Call the action with every indexed ID, in no particular order.
+   */
+  void forEach(IntConsumer action) {
+    for (int slot = 0; slot < capacity; slot++) {
+      int key = slots.getInt(slot * SLOT_SIZE);
+      if (key != EMPTY && slots.getLong(slot * SLOT_SIZE + 4) != REMOVED) {
+        action.accept(key);
+      }
+    }
+  }
+
+  /**
+   * Remove everything (the memory is kept for reuse).
+   */
+  void clear() {
+    allocate(capacity);
+  }
+
+  private int find(int projectId) {
+    int slot = Math.floorMod(hash(projectId), capacity);
+
+    while (true) {
+      int key = slots.getInt(slot * SLOT_SIZE);
+
+      if (key == EMPTY) {
+        return -1;
+      }
+
+      if (key == projectId) {
+        return slots.getLong(slot * SLOT_SIZE + 4) == REMOVED ? -1 : slot;
+      }
+
+      slot = (slot + 1) & (capacity - 1);
+    }
+  }
+
+  private void resize(int newCapacity) {
+    ByteBuffer old = slots;
+    int oldCapacity = capacity;
+    allocate(newCapacity);
+
+    for (int slot = 0; slot < oldCapacity; slot++) {
+      int key = old.getInt(slot * SLOT_SIZE);
+      long offset = old.getLong(slot * SLOT_SIZE + 4);
+      if (key != EMPTY && offset != REMOVED) {
+        put(key, offset);
+      }
+    }
+  }
+
+  private void allocate(int newCapacity) {
+    slots = ByteBuffer.allocateDirect(newCapacity * SLOT_SIZE); // zero filled = all empty
+    capacity = newCapacity;
+    size = 0;
+    used = 0;
+  }
+
+  /*
+   * IDs are mostly consecutive; mixing the bits spreads them over the table.
+   */
+  private static int hash(int projectId) {
+    int h = projectId * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
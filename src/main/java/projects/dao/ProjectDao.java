@@ -5,59 +5,194 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 import projects.entity.Category;
+import projects.entity.CategoryRowMapper;
 import projects.entity.Material;
+import projects.entity.MaterialRowMapper;
 import projects.entity.Project;
+import projects.entity.ProjectChange;
+import projects.entity.ProjectChange.ChangeType;
+import projects.entity.ProjectRowMapper;
 import projects.entity.Step;
+import projects.entity.StepRowMapper;
 import projects.exception.DbException;
 import provided.util.DaoBase;
+import provided.util.StatementBinder;
+import provided.util.mapper.RowMapper.RowReader;
 import projects.util.DbConnection;
+import projects.util.Deadline;
 
 /**
  * DAO = Data Access Object.
  * This class talks to the database.
  * Each method here runs SQL and returns data or a result.
  * We use transactions: start -> do work -> commit (or rollback on error).
+ * Reads that need several SELECTs use a read-only snapshot transaction; a single SELECT runs
+ * without a transaction.
+ * Projects may be sharded by ID over several databases (see DbConnection): a single project is
+ * read and written on its own shard, and "all projects" reads ask every shard and merge.
+ * Writes use DbConnection.getConnection(shard) (the shard's primary); plain reads use
+ * DbConnection.getReadConnection(shard), which may be a read replica.
+ * Reads are safe to repeat, so they go through DbConnection.retryingRead(...) and are tried
+ * again after a transient error (lost connection, deadlock); writes are not retried.
+ * This is the JDBC (MySQL) ProjectRepository.
  */
-public class ProjectDao extends DaoBase {
+public class ProjectDao extends DaoBase implements ProjectRepository {
   private static final String CATEGORY_TABLE = "category";
   private static final String MATERIAL_TABLE = "material";
   private static final String PROJECT_TABLE = "project";
   private static final String PROJECT_CATEGORY_TABLE = "project_category";
+  private static final String PROJECT_CHANGE_TABLE = "project_change";
   private static final String STEP_TABLE = "step";
 
+  /**
+   * A project column that can be changed by modifyProjectDetails:
+   * the Project field name, the column name, how to read the value and how to bind it.
+   */
+  record ProjectColumn(String field, String column, Function<Project, Object> getter,
+      StatementBinder.Setter setter) {
+
+    ProjectColumn(String field, String column, Class<?> type, Function<Project, Object> getter) {
+      this(field, column, getter, StatementBinder.setterFor(type));
+    }
+  }
+
+  // In table order. Only these columns are written by an update.
+  private static final List<ProjectColumn> UPDATABLE_COLUMNS = List.of(
+      new ProjectColumn("projectName", "project_name", String.class, Project::getProjectName),
+      new ProjectColumn("estimatedHours", "estimated_hours", BigDecimal.class,
+          Project::getEstimatedHours),
+      new ProjectColumn("actualHours", "actual_hours", BigDecimal.class, Project::getActualHours),
+      new ProjectColumn("difficulty", "difficulty", Integer.class, Project::getDifficulty),
+      new ProjectColumn("notes", "notes", String.class,
+          project -> LargeText.plainNotes(project.getNotes())),
+      new ProjectColumn("notes", "notes_gz", byte[].class,
+          project -> LargeText.compressedNotes(project.getNotes())));
+
+  // Binds the values of the project INSERT statement
+  private static final StatementBinder<Project> PROJECT_INSERT_BINDER =
+      StatementBinder.<Project>builder()
+          .add(Project::getProjectName, String.class)
+          .add(Project::getEstimatedHours, BigDecimal.class)
+          .add(Project::getActualHours, BigDecimal.class)
+          .add(Project::getDifficulty, Integer.class)
+          .add(project -> LargeText.plainNotes(project.getNotes()), String.class)
+          .add(project -> LargeText.compressedNotes(project.getNotes()), byte[].class)
+          .build();
+
+  // Binds the values of the project_change INSERT statement
+  private static final StatementBinder<ProjectChange> CHANGE_INSERT_BINDER =
+      StatementBinder.<ProjectChange>builder()
+          .add(ProjectChange::getProjectId, Integer.class)
+          .add(change -> change.getChangeType().name(), String.class)
+          .add(ProjectChange::getChangedFields, String.class)
+          .build();
+
+  // ID -> name of every category, shared by all ProjectDao objects
+  private static final CategoryCache CATEGORIES = new CategoryCache(ProjectDao::loadCategories);
+
+  // Projects whose steps are being renumbered in the background
+  private static final Set<Integer> RENUMBERING = ConcurrentHashMap.newKeySet();
+
+  // The project columns read when browsing: notes longer than LargeText.INLINE_CHARS (or
+  // compressed) are left out, and notes_deferred says so
+  private static final String BROWSE_PROJECT_COLUMNS = "project_id, project_name,"
+      + " estimated_hours, actual_hours, difficulty, version, updated_at, "
+      + LargeText.inlineOnly("notes") + ", notes_gz IS NOT NULL OR CHAR_LENGTH(notes) > "
+      + LargeText.INLINE_CHARS + " AS notes_deferred";
+
+  // The step columns read when browsing: a long step_text comes back as NULL
+  private static final String BROWSE_STEP_COLUMNS =
+      "step_id, project_id, step_order, " + LargeText.inlineOnly("step_text");
+
+  // fetchChangedSince only returns changes at least this old (projects.sync.lagSeconds), so a
+  // transaction that commits a little after its updated_at is not skipped
+  private static final int SYNC_LAG_SECONDS = Integer.getInteger("projects.sync.lagSeconds", 10);
+
+  // How long a missing change ID is waited for before it counts as rolled back
+  // (projects.changes.gapWaitSeconds); see fetchChangesSince
+  private static final int CHANGE_GAP_WAIT_SECONDS =
+      Integer.getInteger("projects.changes.gapWaitSeconds", 10);
+
+  // UPDATE statements already built, by column bit mask
+  private static final Map<Integer, String> UPDATE_SQL_CACHE = new ConcurrentHashMap<>();
+
+  // Column names written by an INSERT, as recorded in the change feed
+  static final String INSERT_COLUMNS =
+      "project_name,estimated_hours,actual_hours,difficulty,notes";
+
+  // Told about every committed change (see setChangeListener). May be null.
+  private volatile Consumer<ProjectChange> changeListener;
+
+  // Wraps each read of deferred texts (see setDeferredReadWrapper)
+  private volatile UnaryOperator<Supplier<Map<Integer, String>>> deferredReadWrapper =
+      UnaryOperator.identity();
+
+  /**
+   * Register a listener that is called, after each commit, with every change that was written
+   * to the project_change outbox in that transaction (in outbox order).
+   */
+  @Override
+  public void setChangeListener(Consumer<ProjectChange> changeListener) {
+    this.changeListener = changeListener;
+  }
+
+  /**
+   * Wrap each query for texts that a fetch deferred (see LargeText). Such a query runs later,
+   * from loadDeferredTexts, outside the call that fetched the rows: the wrapper can give it a
+   * time limit and admission control of its own.
+   */
+  @Override
+  public void setDeferredReadWrapper(UnaryOperator<Supplier<Map<Integer, String>>> wrapper) {
+    this.deferredReadWrapper = wrapper;
+  }
+
   /** 
    * Add a new project row.
    * Returns the same Project object, but now with its new ID set.
    */
+  @Override
   public Project insertProject(Project project) {
-    String sql = "INSERT INTO " + PROJECT_TABLE
-        + " (project_name, estimated_hours, actual_hours, difficulty, notes) "
-        + "VALUES (?, ?, ?, ?, ?)";
+    loadDeferredTexts(project); // a copy of a fetched project: save its long texts too
 
-    try (Connection conn = DbConnection.getConnection()) {
+    try (Connection conn = DbConnection.getConnection(DbConnection.nextInsertShard())) {
       startTransaction(conn); // start a transaction
 
-      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-        // Set values for the INSERT
-        setParameter(stmt, 1, project.getProjectName(), String.class);
-        setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
-        setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
-        setParameter(stmt, 4, project.getDifficulty(), Integer.class);
-        setParameter(stmt, 5, project.getNotes(), String.class);
-
-        stmt.executeUpdate();
-
-        // Get new ID and save it back on the object
-        Integer projectId = getLastInsertId(conn, PROJECT_TABLE);
+      try {
+        List<ProjectChange> changes = new ArrayList<>(1);
+        insertProjects(conn, List.of(project), changes);
         commitTransaction(conn); // success
-
-        project.setProjectId(projectId);
+        publishChanges(changes);
         return project;
       } catch (Exception e) {
         rollbackTransaction(conn); // any error -> rollback
@@ -69,23 +204,23 @@ public class ProjectDao extends DaoBase {
   }
 
   /**
-   * Get all projects. Sorted by ID, low to high.
+   * Add several project rows using one connection and one transaction (one commit for all).
+   * Either all rows are added or, on any error, none are. With sharding, the whole batch goes to
+   * one shard (the next one in turn), so it still needs only one commit.
+   * Returns the same Project objects, now with their new IDs set.
    */
-  public List<Project> fetchAllProjects() {
-    String sql = "SELECT * FROM " + PROJECT_TABLE + " ORDER BY project_id ASC";
+  @Override
+  public List<Project> insertProjects(List<Project> projects) {
+    projects.forEach(this::loadDeferredTexts);
 
-    try (Connection conn = DbConnection.getConnection()) {
+    try (Connection conn = DbConnection.getConnection(DbConnection.nextInsertShard())) {
       startTransaction(conn);
 
-      try (PreparedStatement stmt = conn.prepareStatement(sql);
-           ResultSet rs = stmt.executeQuery()) {
-
-        List<Project> projects = new LinkedList<>();
-        while (rs.next()) {
-          projects.add(extract(rs, Project.class)); // build Project from row
-        }
-
+      try {
+        List<ProjectChange> changes = new ArrayList<>(projects.size());
+        insertProjects(conn, projects, changes);
         commitTransaction(conn);
+        publishChanges(changes);
         return projects;
       } catch (Exception e) {
         rollbackTransaction(conn);
@@ -96,16 +231,150 @@ public class ProjectDao extends DaoBase {
     }
   }
 
+  /**
+   * Helper: insert project rows inside the caller's transaction, set their new IDs and record the
+   * changes in the outbox.
+   * The rows are sent as one JDBC batch on one prepared statement, and each new ID comes back
+   * with the INSERT itself (RETURN_GENERATED_KEYS), so there is no extra query per row and the
+   * cost does not depend on how many rows the table already has.
+   */
+  private void insertProjects(Connection conn, List<Project> projects,
+      List<ProjectChange> changes) throws SQLException {
+    String sql = "INSERT INTO " + PROJECT_TABLE
+        + " (project_name, estimated_hours, actual_hours, difficulty, notes, notes_gz) "
+        + "VALUES (?, ?, ?, ?, ?, ?)";
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+      for (Project project : projects) {
+        PROJECT_INSERT_BINDER.bind(stmt, project); // set values for the INSERT
+        stmt.addBatch();
+      }
+
+      stmt.executeBatch();
+
+      // Get the new IDs (one per row, in order) and save them back on the objects
+      try (ResultSet keys = stmt.getGeneratedKeys()) {
+        for (Project project : projects) {
+          if (!keys.next()) {
+            throw new SQLException("Unable to retrieve the primary key value. No generated key!");
+          }
+          project.setProjectId(keys.getInt(1));
+        }
+      }
+    }
+
+    List<ProjectChange> inserts = new ArrayList<>(projects.size());
+
+    for (Project project : projects) {
+      inserts.add(newChange(project.getProjectId(), ChangeType.INSERT, INSERT_COLUMNS));
+    }
+
+    recordChanges(conn, inserts, changes);
+  }
+
+  /**
+   * Get all projects. Sorted by ID, low to high.
+   * With sharding, every shard is read at the same time and the sorted results are merged.
+   */
+  @Override
+  public List<Project> fetchAllProjects() {
+    return scatterGather(shard -> DbConnection.retryingRead(() -> fetchAllProjects(shard)),
+        Comparator.comparing(Project::getProjectId), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Helper: get all projects on one shard, sorted by ID. Long notes are left out, to be read in
+   * batches by loadDeferredTexts (see LargeText).
+   */
+  private List<Project> fetchAllProjects(int shard) {
+    String sql = "SELECT " + BROWSE_PROJECT_COLUMNS + " FROM " + PROJECT_TABLE
+        + " ORDER BY project_id ASC";
+    LargeText.Batch deferredNotes = new LargeText.Batch(ids -> loadDeferredNotes(shard, ids));
+
+    // A single SELECT is consistent by itself: no transaction, auto-commit stays on
+    try (Connection conn = DbConnection.getReadConnection(shard);
+         PreparedStatement stmt = conn.prepareStatement(sql);
+         ResultSet rs = stmt.executeQuery()) {
+
+      List<Project> projects = new LinkedList<>();
+      RowReader<Project> reader = ProjectRowMapper.INSTANCE.reader(rs);
+      while (rs.next()) {
+        projects.add(readBrowsedProject(rs, reader, deferredNotes)); // build Project from row
+      }
+
+      return projects;
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Get only the projection's columns of all projects, sorted by ID.
+   * project_id is always selected as well, to sort and merge the shards by.
+   */
+  @Override
+  public <R> List<R> fetchAllProjects(ProjectProjection<R> projection) {
+    List<Keyed<R>> rows = scatterGather(
+        shard -> DbConnection.retryingRead(() -> fetchAllProjects(shard, projection)),
+        Comparator.comparing(Keyed::projectId), Integer.MAX_VALUE);
+
+    List<R> projected = new ArrayList<>(rows.size());
+    rows.forEach(row -> projected.add(row.row()));
+    return projected;
+  }
+
+  // A projected row and the ID of its project
+  private record Keyed<R>(Integer projectId, R row) {
+  }
+
+  /**
+   * Helper: the projection's columns of all projects on one shard, sorted by ID.
+   */
+  private <R> List<Keyed<R>> fetchAllProjects(int shard, ProjectProjection<R> projection) {
+    StringJoiner columns = new StringJoiner(", ");
+    columns.add("project_id");
+    projection.columns().stream().filter(column -> !column.equals("project_id"))
+        .forEach(columns::add);
+
+    String sql = "SELECT " + columns + " FROM " + PROJECT_TABLE + " ORDER BY project_id ASC";
+
+    try (Connection conn = DbConnection.getReadConnection(shard);
+         PreparedStatement stmt = conn.prepareStatement(sql);
+         ResultSet rs = stmt.executeQuery()) {
+
+      List<Keyed<R>> rows = new ArrayList<>();
+      RowReader<R> reader = projection.rowMapper().reader(rs);
+      while (rs.next()) {
+        rows.add(new Keyed<>(rs.getInt(1), reader.read(rs)));
+      }
+
+      return rows;
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
   /**
    * Get one project by ID.
    * Also loads its materials, steps, and categories.
    * Returns Optional.empty() if not found.
    */
+  @Override
   public Optional<Project> fetchProjectById(Integer projectId) {
-    String sql = "SELECT * FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+    return DbConnection.retryingRead(() -> loadProjectById(projectId));
+  }
 
-    try (Connection conn = DbConnection.getConnection()) {
-      startTransaction(conn);
+  /**
+   * Helper: one try at fetchProjectById. Long notes and step texts are left out, to be read by
+   * loadDeferredTexts.
+   */
+  private Optional<Project> loadProjectById(Integer projectId) {
+    String sql = "SELECT " + BROWSE_PROJECT_COLUMNS + " FROM " + PROJECT_TABLE
+        + " WHERE project_id = ?";
+    int shard = DbConnection.shardFor(projectId);
+
+    try (Connection conn = DbConnection.getReadConnection(shard)) {
+      startReadTransaction(conn); // one snapshot for the project and its children
 
       try {
         Project project = null;
@@ -115,7 +384,8 @@ public class ProjectDao extends DaoBase {
           setParameter(stmt, 1, projectId, Integer.class);
           try (ResultSet rs = stmt.executeQuery()) {
             if (rs.next()) {
-              project = extract(rs, Project.class);
+              project = readBrowsedProject(rs, ProjectRowMapper.INSTANCE.reader(rs),
+                  new LargeText.Batch(ids -> loadDeferredNotes(shard, ids)));
             }
           }
         }
@@ -123,14 +393,85 @@ public class ProjectDao extends DaoBase {
         // If found, load related lists
         if (Objects.nonNull(project)) {
           project.getMaterials().addAll(fetchMaterialsForProject(conn, projectId));
-          project.getSteps().addAll(fetchStepsForProject(conn, projectId));
+          project.getSteps().addAll(fetchStepsForProject(conn, shard, projectId));
           project.getCategories().addAll(fetchCategoriesForProject(conn, projectId));
         }
 
-        commitTransaction(conn);
+        commitReadTransaction(conn);
         return Optional.ofNullable(project);
       } catch (Exception e) {
-        rollbackTransaction(conn);
+        rollbackReadTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Incremental sync: get up to "limit" projects changed after the watermark, oldest change
+   * first, each with its materials, steps and categories. A change to a child row also counts as
+   * a change to its project (see the triggers in projects-schema.sql).
+   *
+   * To read everything, start with ProjectWatermark.START and keep calling with
+   * ProjectWatermark.after(lastProjectOfThePage) until fewer than "limit" projects come back.
+   * The cost depends on the number of changed projects, not the table size, because the query
+   * walks the (updated_at, project_id) index.
+   *
+   * Deleted projects are not returned; use the change feed (fetchChangesSince) for those.
+   *
+   * updated_at is set when the statement runs, not when its transaction commits, so a change can
+   * become visible with an updated_at that a reader has already moved past. To leave room for
+   * that, only changes at least SYNC_LAG_SECONDS old are returned: a sync sees a change that much
+   * later. A transaction that takes longer than that from its first write to its commit can
+   * still be missed.
+   */
+  @Override
+  public List<Project> fetchChangedSince(ProjectWatermark watermark, int limit) {
+    return scatterGather(
+        shard -> DbConnection.retryingRead(() -> fetchChangedSince(shard, watermark, limit)),
+        Comparator.comparing(Project::getUpdatedAt).thenComparing(Project::getProjectId), limit);
+  }
+
+  /**
+   * Helper: the changed projects on one shard.
+   */
+  private List<Project> fetchChangedSince(int shard, ProjectWatermark watermark, int limit) {
+    String sql = "SELECT * FROM " + PROJECT_TABLE
+        + " WHERE (updated_at > ? OR (updated_at = ? AND project_id > ?))"
+        + " AND updated_at < NOW(3) - INTERVAL " + SYNC_LAG_SECONDS + " SECOND"
+        + " ORDER BY updated_at ASC, project_id ASC LIMIT ?";
+
+    try (Connection conn = DbConnection.getReadConnection(shard)) {
+      startReadTransaction(conn); // one snapshot for the projects and their children
+
+      try {
+        Map<Integer, Project> projects = new LinkedHashMap<>();
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+          setParameter(stmt, 1, watermark.updatedAt(), LocalDateTime.class);
+          setParameter(stmt, 2, watermark.updatedAt(), LocalDateTime.class);
+          setParameter(stmt, 3, watermark.projectId(), Integer.class);
+          setParameter(stmt, 4, limit, Integer.class);
+
+          try (ResultSet rs = stmt.executeQuery()) {
+            RowReader<Project> reader = ProjectRowMapper.INSTANCE.reader(rs);
+            while (rs.next()) {
+              Project project = reader.read(rs);
+              LargeText.readCompressedNotes(rs, project);
+              projects.put(project.getProjectId(), project);
+            }
+          }
+        }
+
+        if (!projects.isEmpty()) {
+          loadChildren(conn, projects);
+        }
+
+        commitReadTransaction(conn);
+        return new LinkedList<>(projects.values());
+      } catch (Exception e) {
+        rollbackReadTransaction(conn);
         throw new DbException(e);
       }
     } catch (SQLException e) {
@@ -139,12 +480,121 @@ public class ProjectDao extends DaoBase {
   }
 
   /**
-   * Helper: get all categories linked to a project.
+   * Helper: load materials, steps and categories for a whole page of projects with one query
+   * per child table (instead of three queries per project).
+   */
+  private void loadChildren(Connection conn, Map<Integer, Project> projects)
+      throws SQLException {
+    String in = " IN (" + String.join(", ", Collections.nCopies(projects.size(), "?")) + ")";
+
+    String sql = "SELECT * FROM " + MATERIAL_TABLE + " WHERE project_id" + in;
+    try (PreparedStatement stmt = prepareWithIds(conn, sql, projects.keySet());
+        ResultSet rs = stmt.executeQuery()) {
+      RowReader<Material> reader = MaterialRowMapper.INSTANCE.reader(rs);
+      while (rs.next()) {
+        Material material = reader.read(rs);
+        projects.get(material.getProjectId()).getMaterials().add(material);
+      }
+    }
+
+    sql = "SELECT * FROM " + STEP_TABLE + " WHERE project_id" + in
+        + " ORDER BY project_id, step_order, step_id";
+    try (PreparedStatement stmt = prepareWithIds(conn, sql, projects.keySet());
+        ResultSet rs = stmt.executeQuery()) {
+      RowReader<Step> reader = StepRowMapper.INSTANCE.reader(rs);
+      while (rs.next()) {
+        Step step = reader.read(rs);
+        projects.get(step.getProjectId()).getSteps().add(step);
+      }
+    }
+
+    // Only the links: the names come from the category cache
+    sql = "SELECT project_id, category_id FROM " + PROJECT_CATEGORY_TABLE
+        + " WHERE project_id" + in;
+    try (PreparedStatement stmt = prepareWithIds(conn, sql, projects.keySet());
+        ResultSet rs = stmt.executeQuery()) {
+      while (rs.next()) {
+        projects.get(rs.getInt(1)).getCategories().add(CATEGORIES.categoryOf(rs.getInt(2)));
+      }
+    }
+  }
+
+  /**
+   * Helper: build a Project from a row of BROWSE_PROJECT_COLUMNS. Notes that were left out are
+   * added to the batch, to be read by loadDeferredTexts.
+   */
+  private static Project readBrowsedProject(ResultSet rs, RowReader<Project> reader,
+      LargeText.Batch deferredNotes) throws SQLException {
+    Project project = reader.read(rs);
+
+    if (rs.getBoolean("notes_deferred")) {
+      project.setNotesLoader(deferredNotes.defer(project.getProjectId()));
+    }
+
+    return project;
+  }
+
+  /**
+   * Helper: read the notes that were left out of browsed projects, by project ID.
+   */
+  private Map<Integer, String> loadDeferredNotes(int shard, List<Integer> projectIds) {
+    return loadDeferredTexts(shard, "SELECT project_id, notes, notes_gz FROM " + PROJECT_TABLE
+        + " WHERE project_id", projectIds, LargeText::notesOf);
+  }
+
+  /**
+   * Helper: read the step texts that were left out of browsed steps, by step ID.
+   */
+  private Map<Integer, String> loadDeferredStepTexts(int shard, List<Integer> stepIds) {
+    return loadDeferredTexts(shard, "SELECT step_id, step_text FROM " + STEP_TABLE
+        + " WHERE step_id", stepIds, rs -> rs.getString(2));
+  }
+
+  /**
+   * Helper: one query for a batch of deferred texts: "select ... where id" IN (the IDs).
+   * The first column must be the ID.
+   */
+  private Map<Integer, String> loadDeferredTexts(int shard, String selectWhereId,
+      List<Integer> ids, RowReader<String> text) {
+    String sql = selectWhereId + " IN ("
+        + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+
+    return deferredReadWrapper.apply(() -> DbConnection.retryingRead(() -> {
+      try (Connection conn = DbConnection.getReadConnection(shard);
+          PreparedStatement stmt = prepareWithIds(conn, sql, ids);
+          ResultSet rs = stmt.executeQuery()) {
+        Map<Integer, String> texts = new HashMap<>();
+        while (rs.next()) {
+          texts.put(rs.getInt(1), text.read(rs));
+        }
+        return texts;
+      } catch (SQLException e) {
+        throw new DbException(e);
+      }
+    })).get();
+  }
+
+  /**
+   * Helper: prepare a statement and bind each ID to the next parameter, in order.
+   */
+  private PreparedStatement prepareWithIds(Connection conn, String sql, Collection<Integer> ids)
+      throws SQLException {
+    PreparedStatement stmt = conn.prepareStatement(sql);
+    int index = 1;
+
+    for (Integer id : ids) {
+      setParameter(stmt, index++, id, Integer.class);
+    }
+
+    return stmt;
+  }
+
+  /**
+   * Helper: get all categories linked to a project. Only the link table is read; the names
+   * come from the category cache.
    */
   private List<Category> fetchCategoriesForProject(Connection conn, Integer projectId) {
-    String sql = "SELECT c.* FROM " + CATEGORY_TABLE + " c "
-               + "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
-               + "WHERE project_id = ?";
+    String sql = "SELECT category_id FROM " + PROJECT_CATEGORY_TABLE + " WHERE project_id = ?";
 
     try (PreparedStatement stmt = conn.prepareStatement(sql)) {
       setParameter(stmt, 1, projectId, Integer.class);
@@ -152,7 +602,7 @@ public class ProjectDao extends DaoBase {
       try (ResultSet rs = stmt.executeQuery()) {
         List<Category> categories = new LinkedList<>();
         while (rs.next()) {
-          categories.add(extract(rs, Category.class));
+          categories.add(CATEGORIES.categoryOf(rs.getInt(1)));
         }
         return categories;
       }
@@ -162,18 +612,51 @@ public class ProjectDao extends DaoBase {
   }
 
   /**
-   * Helper: get all steps for a project.
+   * Helper: read the whole category table (for the category cache). Categories are the same on
+   * every shard, so the first shard is enough.
+   */
+  private static Map<Integer, String> loadCategories() {
+    String sql = "SELECT * FROM " + CATEGORY_TABLE;
+
+    return DbConnection.retryingRead(() -> {
+      try (Connection conn = DbConnection.getReadConnection(0);
+           PreparedStatement stmt = conn.prepareStatement(sql);
+           ResultSet rs = stmt.executeQuery()) {
+        Map<Integer, String> names = new HashMap<>();
+        RowReader<Category> reader = CategoryRowMapper.INSTANCE.reader(rs);
+        while (rs.next()) {
+          Category category = reader.read(rs);
+          names.put(category.getCategoryId(), category.getCategoryName());
+        }
+        return names;
+      } catch (SQLException e) {
+        throw new DbException(e);
+      }
+    });
+  }
+
+  /**
+   * Helper: get all steps for a project, in rank order (read from the (project_id, step_order)
+   * index).
    */
-  private List<Step> fetchStepsForProject(Connection conn, Integer projectId) throws SQLException {
-    String sql = "SELECT * FROM " + STEP_TABLE + " WHERE project_id = ?";
+  private List<Step> fetchStepsForProject(Connection conn, int shard, Integer projectId)
+      throws SQLException {
+    String sql = "SELECT " + BROWSE_STEP_COLUMNS + " FROM " + STEP_TABLE
+        + " WHERE project_id = ? ORDER BY step_order, step_id";
+    LargeText.Batch deferredTexts = new LargeText.Batch(ids -> loadDeferredStepTexts(shard, ids));
 
     try (PreparedStatement stmt = conn.prepareStatement(sql)) {
       setParameter(stmt, 1, projectId, Integer.class);
 
       try (ResultSet rs = stmt.executeQuery()) {
         List<Step> steps = new LinkedList<>();
+        RowReader<Step> reader = StepRowMapper.INSTANCE.reader(rs);
         while (rs.next()) {
-          steps.add(extract(rs, Step.class));
+          Step step = reader.read(rs);
+          if (Objects.isNull(step.getStepText())) { // step_text is NOT NULL: it was too long
+            step.setStepTextLoader(deferredTexts.defer(step.getStepId()));
+          }
+          steps.add(step);
         }
         return steps;
       }
@@ -192,8 +675,9 @@ public class ProjectDao extends DaoBase {
 
       try (ResultSet rs = stmt.executeQuery()) {
         List<Material> materials = new LinkedList<>();
+        RowReader<Material> reader = MaterialRowMapper.INSTANCE.reader(rs);
         while (rs.next()) {
-          materials.add(extract(rs, Material.class));
+          materials.add(reader.read(rs));
         }
         return materials;
       }
@@ -201,33 +685,28 @@ public class ProjectDao extends DaoBase {
   }
 
   /**
-   * Update one project's fields.
-   * Returns true if exactly 1 row changed.
-   * Returns false if the ID was not found.
+   * Update one project's fields, using optimistic concurrency control.
+   * Only the columns whose fields were changed through a setter (see
+   * Project.getModifiedFields()) are written, so a difficulty change does not rewrite the notes.
+   * If the project has a version, the row is only changed when its version still matches
+   * (nobody else saved in between). Each successful update adds 1 to the version.
+   * If the project has no version (null), the row is updated no matter what.
+   * Returns UPDATED, NOT_FOUND (no such ID) or CONFLICT (version did not match).
    */
-  public boolean modifyProjectDetails(Project project) {
-    String sql = "UPDATE " + PROJECT_TABLE + " SET "
-        + "project_name = ?, "
-        + "estimated_hours = ?, "
-        + "actual_hours = ?, "
-        + "difficulty = ?, "
-        + "notes = ? "
-        + "WHERE project_id = ?";
+  @Override
+  public UpdateResult modifyProjectDetails(Project project) {
+    int shard = DbConnection.shardFor(project.getProjectId());
 
-    try (Connection conn = DbConnection.getConnection()) {
+    try (Connection conn = DbConnection.getConnection(shard)) {
       startTransaction(conn);
 
-      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-        setParameter(stmt, 1, project.getProjectName(), String.class);
-        setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
-        setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
-        setParameter(stmt, 4, project.getDifficulty(), Integer.class);
-        setParameter(stmt, 5, project.getNotes(), String.class);
-        setParameter(stmt, 6, project.getProjectId(), Integer.class);
-
-        int rows = stmt.executeUpdate();
+      try {
+        List<ProjectChange> changes = new ArrayList<>(1);
+        UpdateResult result = updateProject(conn, project, changes);
         commitTransaction(conn);
-        return rows == 1; // true if updated, false if not found
+        publishChanges(changes);
+        afterUpdate(project, result);
+        return result;
       } catch (Exception e) {
         rollbackTransaction(conn);
         throw new DbException(e);
@@ -238,25 +717,903 @@ public class ProjectDao extends DaoBase {
   }
 
   /**
-   * Delete one project by ID.
-   * Returns true if exactly 1 row was deleted.
-   * Returns false if the ID was not found.
-   * Note: If there are child rows (materials/steps/categories) and FKs block delete,
-   *       MySQL will throw an error. Then we rollback and rethrow as DbException.
+   * Update several projects using one connection and one transaction (one commit for all).
+   * Each project gets its own result, in the same order as the list. A NOT_FOUND or CONFLICT
+   * result does not stop the others; a database error rolls back all of them.
+   * With sharding, there is one transaction per shard involved.
    */
-  public boolean deleteProject(Integer projectId) {
-    String sql = "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+  @Override
+  public List<UpdateResult> modifyProjectDetails(List<Project> projects) {
+    Map<Integer, List<Project>> byShard = new LinkedHashMap<>();
+
+    for (Project project : projects) {
+      byShard.computeIfAbsent(DbConnection.shardFor(project.getProjectId()),
+          shard -> new ArrayList<>()).add(project);
+    }
 
-    try (Connection conn = DbConnection.getConnection()) {
+    Map<Project, UpdateResult> resultByProject = new IdentityHashMap<>();
+
+    for (Map.Entry<Integer, List<Project>> entry : byShard.entrySet()) {
+      List<Project> shardProjects = entry.getValue();
+      List<UpdateResult> shardResults = modifyProjectDetails(entry.getKey(), shardProjects);
+
+      for (int i = 0; i < shardProjects.size(); i++) {
+        resultByProject.put(shardProjects.get(i), shardResults.get(i));
+      }
+    }
+
+    List<UpdateResult> results = new ArrayList<>(projects.size());
+    projects.forEach(project -> results.add(resultByProject.get(project)));
+    return results;
+  }
+
+  /**
+   * Helper: update several projects that live on the same shard, in one transaction.
+   */
+  private List<UpdateResult> modifyProjectDetails(int shard, List<Project> projects) {
+    try (Connection conn = DbConnection.getConnection(shard)) {
       startTransaction(conn);
 
-      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-        setParameter(stmt, 1, projectId, Integer.class);
+      try {
+        List<UpdateResult> results = new ArrayList<>(projects.size());
+        List<ProjectChange> changes = new ArrayList<>(projects.size());
+
+        for (Project project : projects) {
+          results.add(updateProject(conn, project, changes));
+        }
 
-        int rows = stmt.executeUpdate();
         commitTransaction(conn);
+        publishChanges(changes);
 
-        return rows == 1; // true if 1 row deleted, false if not found
+        for (int i = 0; i < projects.size(); i++) {
+          afterUpdate(projects.get(i), results.get(i));
+        }
+
+        return results;
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Helper: run the conditional UPDATE for one project inside the caller's transaction.
+   * A successful UPDATE is recorded in the outbox with the names of the columns it set.
+   */
+  private UpdateResult updateProject(Connection conn, Project project,
+      List<ProjectChange> changes) throws SQLException {
+    List<ProjectColumn> columns = modifiedColumns(project);
+    boolean checkVersion = Objects.nonNull(project.getVersion());
+
+    if (columns.isEmpty()) {
+      // Nothing changed: no UPDATE, just report whether the row is there and current
+      return checkProjectVersion(conn, project);
+    }
+
+    String sql = updateSql(columns, checkVersion);
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      int index = 1;
+
+      for (ProjectColumn column : columns) {
+        column.setter().set(stmt, index++, column.getter().apply(project));
+      }
+
+      setParameter(stmt, index++, project.getProjectId(), Integer.class);
+
+      if (checkVersion) {
+        setParameter(stmt, index, project.getVersion(), Integer.class);
+      }
+
+      int rows = stmt.executeUpdate();
+
+      if (rows == 1) {
+        recordChange(conn, project.getProjectId(), ChangeType.UPDATE,
+            columnNames(columns), changes);
+        return UpdateResult.UPDATED;
+      } else if (checkVersion && projectExists(conn, project.getProjectId())) {
+        return UpdateResult.CONFLICT; // row is there, but the version moved on
+      } else {
+        return UpdateResult.NOT_FOUND;
+      }
+    }
+  }
+
+  /**
+   * Helper: once an update is committed, keep the caller's copy current
+   * (new version, nothing modified any more).
+   */
+  static void afterUpdate(Project project, UpdateResult result) {
+    if (result != UpdateResult.UPDATED) {
+      return;
+    }
+
+    if (Objects.nonNull(project.getVersion()) && !project.getModifiedFields().isEmpty()) {
+      project.setVersion(project.getVersion() + 1);
+    }
+
+    project.clearModifiedFields();
+  }
+
+  /**
+   * Helper: the updatable columns whose fields were changed, in table order.
+   */
+  static List<ProjectColumn> modifiedColumns(Project project) {
+    Set<String> modified = project.getModifiedFields();
+    List<ProjectColumn> columns = new ArrayList<>(modified.size());
+
+    for (ProjectColumn column : UPDATABLE_COLUMNS) {
+      if (modified.contains(column.field())) {
+        columns.add(column);
+      }
+    }
+
+    return columns;
+  }
+
+  /**
+   * Helper: build (or reuse) the UPDATE statement for this set of columns.
+   * There are only a few column combinations, so each SQL string is built once and cached,
+   * keyed by a bit mask of the columns it sets.
+   */
+  private String updateSql(List<ProjectColumn> columns, boolean checkVersion) {
+    int key = checkVersion ? 1 : 0;
+
+    for (ProjectColumn column : columns) {
+      key |= 2 << UPDATABLE_COLUMNS.indexOf(column);
+    }
+
+    return UPDATE_SQL_CACHE.computeIfAbsent(key, k -> {
+      StringBuilder sql = new StringBuilder("UPDATE " + PROJECT_TABLE + " SET ");
+
+      for (ProjectColumn column : columns) {
+        sql.append(column.column()).append(" = ?, ");
+      }
+
+      sql.append("version = version + 1, updated_at = CURRENT_TIMESTAMP(3) ");
+      sql.append("WHERE project_id = ?");
+
+      if (checkVersion) {
+        sql.append(" AND version = ?");
+      }
+
+      return sql.toString();
+    });
+  }
+
+  /**
+   * Helper: result of an update that changes nothing. UPDATED if the row exists (and, when the
+   * project has a version, still has that version).
+   */
+  private UpdateResult checkProjectVersion(Connection conn, Project project) throws SQLException {
+    String sql = "SELECT version FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      setParameter(stmt, 1, project.getProjectId(), Integer.class);
+
+      try (ResultSet rs = stmt.executeQuery()) {
+        if (!rs.next()) {
+          return UpdateResult.NOT_FOUND;
+        }
+
+        if (Objects.nonNull(project.getVersion()) && project.getVersion() != rs.getInt(1)) {
+          return UpdateResult.CONFLICT;
+        }
+
+        return UpdateResult.UPDATED;
+      }
+    }
+  }
+
+  /**
+   * Helper: the column names, comma separated, for the change feed.
+   */
+  static String columnNames(List<ProjectColumn> columns) {
+    StringJoiner names = new StringJoiner(",");
+    Set<String> fields = new HashSet<>();
+
+    // One name per field: notes_gz is just another way of storing the notes
+    for (ProjectColumn column : columns) {
+      if (fields.add(column.field())) {
+        names.add(column.column());
+      }
+    }
+
+    return names.toString();
+  }
+
+  /**
+   * Helper: write one row to the project_change outbox (see recordChanges).
+   */
+  private void recordChange(Connection conn, Integer projectId, ChangeType changeType,
+      String changedFields, List<ProjectChange> changes) throws SQLException {
+    recordChanges(conn, List.of(newChange(projectId, changeType, changedFields)), changes);
+  }
+
+  /**
+   * Helper: write rows to the project_change outbox, inside the caller's transaction, so each
+   * change is saved if and only if the project change itself is committed.
+   * The generated change IDs are set on the new rows, which are then added to "changes" so they
+   * can be published after commit.
+   */
+  private void recordChanges(Connection conn, List<ProjectChange> newChanges,
+      List<ProjectChange> changes) throws SQLException {
+    String sql = "INSERT INTO " + PROJECT_CHANGE_TABLE
+        + " (project_id, change_type, changed_fields) VALUES (?, ?, ?)";
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+      for (ProjectChange change : newChanges) {
+        CHANGE_INSERT_BINDER.bind(stmt, change);
+        stmt.addBatch();
+      }
+
+      stmt.executeBatch();
+
+      try (ResultSet keys = stmt.getGeneratedKeys()) {
+        for (ProjectChange change : newChanges) {
+          if (!keys.next()) {
+            throw new SQLException("Unable to retrieve the change ID. No generated key!");
+          }
+          change.setChangeId(keys.getLong(1));
+          changes.add(change);
+        }
+      }
+    }
+  }
+
+  /**
+   * Helper: a new (not yet saved) change feed row.
+   */
+  private ProjectChange newChange(Integer projectId, ChangeType changeType,
+      String changedFields) {
+    ProjectChange change = new ProjectChange();
+    change.setProjectId(projectId);
+    change.setChangeType(changeType);
+    change.setChangedFields(changedFields);
+    return change;
+  }
+
+  /**
+   * Helper: hand committed changes to the listener, if there is one.
+   */
+  private void publishChanges(List<ProjectChange> changes) {
+    Consumer<ProjectChange> listener = changeListener;
+
+    if (Objects.nonNull(listener)) {
+      changes.forEach(listener);
+    }
+  }
+
+  /**
+   * Read the change feed from the outbox: up to "limit" changes after the cursor, oldest first.
+   * Pass ChangeCursor.START to start at the beginning. A consumer moves its cursor past each
+   * change it processes and passes it in next time, so it only reads what is new.
+   * With sharding, each shard keeps its own outbox with its own change IDs; each is read from
+   * the cursor's position for that shard, and the results are merged.
+   *
+   * A change ID is handed out when the outbox row is inserted, not when its transaction
+   * commits, so change 10 can become visible after change 11. To keep a consumer from moving
+   * past 10 before it is there, each shard's list stops at the first missing ID. A missing ID
+   * only counts as gone for good (a rolled-back transaction) once the change after it is
+   * CHANGE_GAP_WAIT_SECONDS old. A transaction that stays open longer than that between writing
+   * its outbox row and committing can still be missed.
+   */
+  @Override
+  public List<ProjectChange> fetchChangesSince(ChangeCursor cursor, int limit) {
+    return scatterGather(shard -> DbConnection.retryingRead(
+            () -> fetchChangesSince(shard, cursor.lastChangeId(shard), limit)),
+        Comparator.comparing(ProjectChange::getChangeId), limit);
+  }
+
+  /**
+   * Helper: read the outbox of one shard, up to the first ID that may still be uncommitted.
+   */
+  private List<ProjectChange> fetchChangesSince(int shard, Long afterChangeId, int limit) {
+    String sql = "SELECT *, created_at < NOW(3) - INTERVAL " + CHANGE_GAP_WAIT_SECONDS
+        + " SECOND AS settled FROM " + PROJECT_CHANGE_TABLE
+        + " WHERE change_id > ? ORDER BY change_id ASC LIMIT ?";
+
+    long step = DbConnection.getShardCount();
+    long expected = firstChangeIdAfter(shard, afterChangeId, step);
+
+    // A single SELECT is consistent by itself: no transaction, auto-commit stays on
+    try (Connection conn = DbConnection.getReadConnection(shard);
+         PreparedStatement stmt = conn.prepareStatement(sql)) {
+      setParameter(stmt, 1, afterChangeId, Long.class);
+      setParameter(stmt, 2, limit, Integer.class);
+
+      List<ProjectChange> changes = new LinkedList<>();
+
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          long changeId = rs.getLong("change_id");
+
+          // An earlier ID may belong to a transaction that has not committed yet: stop here
+          if (changeId != expected && !rs.getBoolean("settled")) {
+            break;
+          }
+
+          changes.add(extract(rs, ProjectChange.class));
+          expected = changeId + step;
+        }
+      }
+
+      return changes;
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Helper: the first change ID a shard can hand out after afterChangeId. Each shard hands out
+   * every shardCount-th ID, starting at shard + 1 (see DbConnection), so from the start
+   * (afterChangeId 0) it is shard + 1.
+   */
+  static long firstChangeIdAfter(int shard, long afterChangeId, long shardCount) {
+    long expected = afterChangeId + Math.floorMod(shard + 1 - afterChangeId, shardCount);
+    return expected == afterChangeId ? expected + shardCount : expected;
+  }
+
+  /**
+   * Helper: run a query on every shard and merge the results.
+   * Each shard's list must already be sorted by "order"; the merged list is sorted the same way
+   * and holds at most "limit" rows. Shards are queried at the same time, one virtual thread each,
+   * each under the caller's deadline.
+   */
+  private <T> List<T> scatterGather(IntFunction<List<T>> query, Comparator<T> order, int limit) {
+    int shardCount = DbConnection.getShardCount();
+
+    if (shardCount == 1) {
+      return query.apply(0);
+    }
+
+    List<Future<List<T>>> futures = new ArrayList<>(shardCount);
+    Long deadline = Deadline.current();
+
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int shard = 0; shard < shardCount; shard++) {
+        int thisShard = shard;
+        futures.add(executor.submit(() -> Deadline.at(deadline, () -> query.apply(thisShard))));
+      }
+    }
+
+    // k-way merge: repeatedly take the smallest head row of the shard lists
+    PriorityQueue<PeekingIterator<T>> heads =
+        new PriorityQueue<>((a, b) -> order.compare(a.peek(), b.peek()));
+
+    for (Future<List<T>> future : futures) {
+      PeekingIterator<T> shardRows = new PeekingIterator<>(getShardResult(future).iterator());
+      if (shardRows.hasNext()) {
+        heads.add(shardRows);
+      }
+    }
+
+    List<T> merged = new LinkedList<>();
+
+    while (!heads.isEmpty() && merged.size() < limit) {
+      PeekingIterator<T> shardRows = heads.poll();
+      merged.add(shardRows.next());
+      if (shardRows.hasNext()) {
+        heads.add(shardRows);
+      }
+    }
+
+    return merged;
+  }
+
+  /**
+   * Helper: the result of one shard's query, with its error (if any) unwrapped.
+   */
+  private <T> List<T> getShardResult(Future<List<T>> future) {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof DbException dbException) {
+        throw dbException;
+      }
+      throw new DbException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * An iterator that can look at its next element without taking it.
+   */
+  private static class PeekingIterator<T> implements Iterator<T> {
+    private final Iterator<T> iterator;
+    private T next;
+
+    PeekingIterator(Iterator<T> iterator) {
+      this.iterator = iterator;
+      this.next = iterator.hasNext() ? iterator.next() : null;
+    }
+
+    T peek() {
+      return next;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return Objects.nonNull(next);
+    }
+
+    @Override
+    public T next() {
+      T current = next;
+      next = iterator.hasNext() ? iterator.next() : null;
+      return current;
+    }
+  }
+
+  /**
+   * Helper: true if a project row with this ID exists.
+   */
+  private boolean projectExists(Connection conn, Integer projectId) throws SQLException {
+    String sql = "SELECT 1 FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      setParameter(stmt, 1, projectId, Integer.class);
+
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next();
+      }
+    }
+  }
+
+  /**
+   * Delete one project by ID.
+   * Returns true if exactly 1 row was deleted.
+   * Returns false if the ID was not found.
+   * Note: If there are child rows (materials/steps/categories) and FKs block delete,
+   *       MySQL will throw an error. Then we rollback and rethrow as DbException.
+   */
+  @Override
+  public boolean deleteProject(Integer projectId) {
+    String sql = "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+
+    try (Connection conn = DbConnection.getConnection(DbConnection.shardFor(projectId))) {
+      startTransaction(conn);
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        setParameter(stmt, 1, projectId, Integer.class);
+
+        int rows = stmt.executeUpdate();
+        List<ProjectChange> changes = new ArrayList<>(1);
+
+        if (rows == 1) {
+          recordChange(conn, projectId, ChangeType.DELETE, "", changes);
+        }
+
+        commitTransaction(conn);
+        publishChanges(changes);
+
+        return rows == 1; // true if 1 row deleted, false if not found
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Add a step just before another step of the project, or at the end.
+   * The new step gets the rank halfway between its neighbours, so only its own row is written.
+   * The project row is locked first, so two step changes to one project never pick the same
+   * rank. If the neighbours are getting close, the project's steps are renumbered afterwards in
+   * the background; if there is no room at all, right away.
+   */
+  @Override
+  public Optional<Step> insertStep(Step step, Integer beforeStepId) {
+    Integer projectId = step.getProjectId();
+    String sql = "INSERT INTO " + STEP_TABLE
+        + " (project_id, step_text, step_order) VALUES (?, ?, ?)";
+
+    try (Connection conn = DbConnection.getConnection(DbConnection.shardFor(projectId))) {
+      startTransaction(conn);
+
+      try {
+        StepSlot slot = lockProject(conn, projectId) ? findSlot(conn, projectId, beforeStepId, 0)
+            : null;
+
+        if (Objects.isNull(slot)) {
+          rollbackTransaction(conn);
+          return Optional.empty();
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+          setParameter(stmt, 1, projectId, Integer.class);
+          setParameter(stmt, 2, step.getStepText(), String.class);
+          setParameter(stmt, 3, slot.rank(), Integer.class);
+          stmt.executeUpdate();
+
+          try (ResultSet keys = stmt.getGeneratedKeys()) {
+            if (!keys.next()) {
+              throw new SQLException("Unable to retrieve the primary key value. No generated key!");
+            }
+            step.setStepId(keys.getInt(1));
+          }
+        }
+
+        List<ProjectChange> changes = new ArrayList<>(1);
+        recordChange(conn, projectId, ChangeType.UPDATE, "steps", changes);
+        commitTransaction(conn);
+        publishChanges(changes);
+
+        step.setStepOrder(slot.rank());
+        renumberLaterIfCrowded(slot, projectId);
+        return Optional.of(step);
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Move a step to just before another step of the same project, or to the end.
+   * Only the moved step's rank is written (see insertStep).
+   */
+  @Override
+  public boolean moveStep(Integer projectId, Integer stepId, Integer beforeStepId) {
+    String sql = "UPDATE " + STEP_TABLE
+        + " SET step_order = ? WHERE step_id = ? AND project_id = ?";
+
+    try (Connection conn = DbConnection.getConnection(DbConnection.shardFor(projectId))) {
+      startTransaction(conn);
+
+      try {
+        boolean found = lockProject(conn, projectId)
+            && Objects.nonNull(rankOf(conn, projectId, stepId));
+
+        if (!found || stepId.equals(beforeStepId)) {
+          rollbackTransaction(conn); // nothing to change
+          return found;
+        }
+
+        StepSlot slot = findSlot(conn, projectId, beforeStepId, stepId);
+
+        if (Objects.isNull(slot)) {
+          rollbackTransaction(conn);
+          return false;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+          setParameter(stmt, 1, slot.rank(), Integer.class);
+          setParameter(stmt, 2, stepId, Integer.class);
+          setParameter(stmt, 3, projectId, Integer.class);
+          stmt.executeUpdate();
+        }
+
+        List<ProjectChange> changes = new ArrayList<>(1);
+        recordChange(conn, projectId, ChangeType.UPDATE, "steps", changes);
+        commitTransaction(conn);
+        publishChanges(changes);
+
+        renumberLaterIfCrowded(slot, projectId);
+        return true;
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Delete one step. The other steps keep their ranks (the gap does no harm).
+   */
+  @Override
+  public boolean deleteStep(Integer projectId, Integer stepId) {
+    String sql = "DELETE FROM " + STEP_TABLE + " WHERE step_id = ? AND project_id = ?";
+
+    try (Connection conn = DbConnection.getConnection(DbConnection.shardFor(projectId))) {
+      startTransaction(conn);
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        setParameter(stmt, 1, stepId, Integer.class);
+        setParameter(stmt, 2, projectId, Integer.class);
+
+        int rows = stmt.executeUpdate();
+        List<ProjectChange> changes = new ArrayList<>(1);
+
+        if (rows == 1) {
+          recordChange(conn, projectId, ChangeType.UPDATE, "steps", changes);
+        }
+
+        commitTransaction(conn);
+        publishChanges(changes);
+        return rows == 1;
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Where a step goes: its new rank, and whether it is so close to a neighbour that the project's
+   * steps should be renumbered soon.
+   */
+  private record StepSlot(int rank, boolean crowded) {}
+
+  /**
+   * Helper: the rank for a step placed just before beforeStepId (or at the end if null), ignoring
+   * the step being moved (0 when inserting). Two index lookups: the rank of the "before" step and
+   * the highest rank below it. If there is no room between them, the steps are renumbered now.
+   * Returns null if the "before" step does not exist.
+   */
+  private StepSlot findSlot(Connection conn, Integer projectId, Integer beforeStepId,
+      Integer movingStepId) throws SQLException {
+    for (int tries = 0; ; tries++) {
+      Integer next = null;
+
+      if (Objects.nonNull(beforeStepId)) {
+        next = rankOf(conn, projectId, beforeStepId);
+        if (Objects.isNull(next)) {
+          return null;
+        }
+      }
+
+      Integer previous = highestRankBelow(conn, projectId, next, movingStepId);
+      Integer rank = StepRanks.between(previous, next);
+
+      if (Objects.nonNull(rank)) {
+        return new StepSlot(rank, StepRanks.crowded(previous, rank, next));
+      }
+
+      if (tries > 0) {
+        throw new DbException("Unable to find a rank for a new step in project " + projectId);
+      }
+
+      renumberSteps(conn, projectId); // no room left: make room in this transaction
+    }
+  }
+
+  /**
+   * Helper: lock the project row until the end of the transaction.
+   * Returns false if the project does not exist.
+   */
+  private boolean lockProject(Connection conn, Integer projectId) throws SQLException {
+    String sql = "SELECT project_id FROM " + PROJECT_TABLE + " WHERE project_id = ? FOR UPDATE";
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      setParameter(stmt, 1, projectId, Integer.class);
+
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next();
+      }
+    }
+  }
+
+  /**
+   * Helper: the rank of one step of the project, or null if it does not exist.
+   */
+  private Integer rankOf(Connection conn, Integer projectId, Integer stepId) throws SQLException {
+    String sql = "SELECT step_order FROM " + STEP_TABLE + " WHERE step_id = ? AND project_id = ?";
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      setParameter(stmt, 1, stepId, Integer.class);
+      setParameter(stmt, 2, projectId, Integer.class);
+
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next() ? rs.getInt(1) : null;
+      }
+    }
+  }
+
+  /**
+   * Helper: the highest rank below "rank" (or the highest rank at all if null), not counting
+   * one step. Null if there is none.
+   */
+  private Integer highestRankBelow(Connection conn, Integer projectId, Integer rank,
+      Integer exceptStepId) throws SQLException {
+    String sql = "SELECT MAX(step_order) FROM " + STEP_TABLE
+        + " WHERE project_id = ? AND step_id <> ?"
+        + (Objects.isNull(rank) ? "" : " AND step_order < ?");
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      setParameter(stmt, 1, projectId, Integer.class);
+      setParameter(stmt, 2, exceptStepId, Integer.class);
+      if (Objects.nonNull(rank)) {
+        setParameter(stmt, 3, rank, Integer.class);
+      }
+
+      try (ResultSet rs = stmt.executeQuery()) {
+        rs.next();
+        int max = rs.getInt(1);
+        return rs.wasNull() ? null : max;
+      }
+    }
+  }
+
+  /**
+   * Helper: give the project's steps evenly spaced ranks again (GAP, 2 * GAP, ...), keeping
+   * their order. Writes every step, so it runs rarely (see renumberLaterIfCrowded).
+   */
+  private void renumberSteps(Connection conn, Integer projectId) throws SQLException {
+    String select = "SELECT step_id FROM " + STEP_TABLE
+        + " WHERE project_id = ? ORDER BY step_order, step_id";
+    String update = "UPDATE " + STEP_TABLE + " SET step_order = ? WHERE step_id = ?";
+    List<Integer> stepIds = new ArrayList<>();
+
+    try (PreparedStatement stmt = conn.prepareStatement(select)) {
+      setParameter(stmt, 1, projectId, Integer.class);
+
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          stepIds.add(rs.getInt(1));
+        }
+      }
+    }
+
+    try (PreparedStatement stmt = conn.prepareStatement(update)) {
+      for (int i = 0; i < stepIds.size(); i++) {
+        setParameter(stmt, 1, StepRanks.renumbered(i), Integer.class);
+        setParameter(stmt, 2, stepIds.get(i), Integer.class);
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+  }
+
+  /**
+   * Helper: if a step was placed close to a neighbour, renumber the project's steps on a
+   * background (virtual) thread, in its own transaction, so the caller does not wait for it.
+   * A project is only renumbered by one thread at a time. Failures are ignored: the next
+   * crowded insert tries again, and an insert with no room renumbers by itself.
+   * The new ranks are a change of the project's steps, so they go to the change feed too.
+   */
+  private void renumberLaterIfCrowded(StepSlot slot, Integer projectId) {
+    if (!slot.crowded() || !RENUMBERING.add(projectId)) {
+      return;
+    }
+
+    Thread.ofVirtual().name("step-renumber-" + projectId).start(() -> {
+      try (Connection conn = DbConnection.getConnection(DbConnection.shardFor(projectId))) {
+        startTransaction(conn);
+        List<ProjectChange> changes = new ArrayList<>(1);
+
+        try {
+          if (lockProject(conn, projectId)) {
+            renumberSteps(conn, projectId);
+            recordChange(conn, projectId, ChangeType.UPDATE, "steps", changes);
+          }
+          commitTransaction(conn);
+          publishChanges(changes);
+        } catch (SQLException e) {
+          rollbackTransaction(conn);
+        }
+      } catch (SQLException | DbException e) {
+        // Tried again by a later insert or move
+      } finally {
+        RENUMBERING.remove(projectId);
+      }
+    });
+  }
+
+  /**
+   * Get every category, from the category cache.
+   */
+  @Override
+  public List<Category> fetchAllCategories() {
+    return CATEGORIES.all();
+  }
+
+  /**
+   * Link every one of the projects to every one of the categories: one transaction and one
+   * batched INSERT IGNORE per shard, however many links. Existing links, and projects that do
+   * not exist, are skipped by the IGNORE.
+   */
+  @Override
+  public int assignCategories(Collection<Integer> projectIds, Collection<Integer> categoryIds) {
+    for (Integer categoryId : categoryIds) {
+      if (Objects.isNull(CATEGORIES.nameOf(categoryId))) {
+        throw new DbException("Category with ID=" + categoryId + " does not exist.");
+      }
+    }
+
+    String sql = "INSERT IGNORE INTO " + PROJECT_CATEGORY_TABLE
+        + " (project_id, category_id) VALUES (?, ?)";
+    return changeCategoryLinks(sql, projectIds, categoryIds);
+  }
+
+  /**
+   * Remove every link between the projects and the categories: one transaction and one batched
+   * DELETE per shard.
+   */
+  @Override
+  public int unassignCategories(Collection<Integer> projectIds, Collection<Integer> categoryIds) {
+    String sql = "DELETE FROM " + PROJECT_CATEGORY_TABLE
+        + " WHERE project_id = ? AND category_id = ?";
+    return changeCategoryLinks(sql, projectIds, categoryIds);
+  }
+
+  /**
+   * Helper: run the statement for every (project, category) pair, as one JDBC batch per shard,
+   * and record a "categories" change for every project that got a different set of links.
+   * Returns the number of rows changed.
+   */
+  private int changeCategoryLinks(String sql, Collection<Integer> projectIds,
+      Collection<Integer> categoryIds) {
+    Map<Integer, List<Integer>> byShard = new LinkedHashMap<>();
+
+    for (Integer projectId : projectIds) {
+      byShard.computeIfAbsent(DbConnection.shardFor(projectId), shard -> new ArrayList<>())
+          .add(projectId);
+    }
+
+    int changed = 0;
+
+    for (Map.Entry<Integer, List<Integer>> entry : byShard.entrySet()) {
+      changed += changeCategoryLinks(entry.getKey(), sql, entry.getValue(), categoryIds);
+    }
+
+    return changed;
+  }
+
+  /**
+   * Helper: the links of the projects on one shard, in one transaction.
+   */
+  private int changeCategoryLinks(int shard, String sql, List<Integer> projectIds,
+      Collection<Integer> categoryIds) {
+    if (categoryIds.isEmpty()) {
+      return 0;
+    }
+
+    try (Connection conn = DbConnection.getConnection(shard)) {
+      startTransaction(conn);
+
+      try {
+        int[] counts;
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+          for (Integer projectId : projectIds) {
+            for (Integer categoryId : categoryIds) {
+              setParameter(stmt, 1, projectId, Integer.class);
+              setParameter(stmt, 2, categoryId, Integer.class);
+              stmt.addBatch();
+            }
+          }
+          counts = stmt.executeBatch();
+        }
+
+        // The counts come in (project, category) order, categoryIds.size() per project
+        int changed = 0;
+        List<ProjectChange> newChanges = new ArrayList<>();
+
+        for (int p = 0; p < projectIds.size(); p++) {
+          int projectChanged = 0;
+
+          for (int c = 0; c < categoryIds.size(); c++) {
+            int count = counts[p * categoryIds.size() + c];
+            projectChanged += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+          }
+
+          if (projectChanged > 0) {
+            newChanges.add(newChange(projectIds.get(p), ChangeType.UPDATE, "categories"));
+            changed += projectChanged;
+          }
+        }
+
+        List<ProjectChange> changes = new ArrayList<>(newChanges.size());
+        if (!newChanges.isEmpty()) {
+          recordChanges(conn, newChanges, changes);
+        }
+        commitTransaction(conn);
+        publishChanges(changes);
+        return changed;
       } catch (Exception e) {
         rollbackTransaction(conn);
         throw new DbException(e);
@@ -265,4 +1622,4 @@ public class ProjectDao extends DaoBase {
       throw new DbException(e);
     }
   }
-} 
+}
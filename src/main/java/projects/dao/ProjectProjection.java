@@ -0,0 +1,52 @@
+package projects.dao;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+import projects.entity.Project;
+import projects.entity.ProjectRowMapper;
+import projects.entity.ProjectSummary;
+import projects.entity.ProjectSummaryRowMapper;
+import provided.util.mapper.RowMapper;
+
+/**
+ * Which columns of the project table to load, and how to turn them into a (small, immutable)
+ * object. fetchAllProjects(projection) selects only these columns, so a list screen does not
+ * pull every project's notes over the wire and keep them on the heap.
+ *
+ * Use SUMMARY for ID and name, or build one for other columns, e.g. with a record marked
+ * @GenerateRowMapper:
+ *   new ProjectProjection<>(List.of("project_id", "project_name", "difficulty"),
+ *       ProjectDifficultyRowMapper.INSTANCE,
+ *       p -> new ProjectDifficulty(p.getProjectId(), p.getProjectName(), p.getDifficulty()));
+ *
+ * @param columns - project table columns to select (see ProjectRowMapper.COLUMNS)
+ * @param rowMapper - builds the object from a row with those columns (JDBC store)
+ * @param fromProject - builds the same object from a whole Project (local stores)
+ */
+public record ProjectProjection<R>(List<String> columns, RowMapper<R> rowMapper,
+    Function<Project, R> fromProject) {
+
+  // Declared before SUMMARY, which is checked against it
+  private static final List<String> PROJECT_COLUMNS = Arrays.asList(ProjectRowMapper.COLUMNS);
+
+  /** Project ID and name. */
+  public static final ProjectProjection<ProjectSummary> SUMMARY = new ProjectProjection<>(
+      List.of("project_id", "project_name"), ProjectSummaryRowMapper.INSTANCE,
+      project -> new ProjectSummary(project.getProjectId(), project.getProjectName()));
+
+  public ProjectProjection {
+    columns = List.copyOf(columns);
+    Objects.requireNonNull(rowMapper);
+    Objects.requireNonNull(fromProject);
+
+    // The names go into the SQL text, so only real columns are accepted
+    for (String column : columns) {
+      if (!PROJECT_COLUMNS.contains(column)) {
+        throw new IllegalArgumentException("Not a project column: " + column);
+      }
+    }
+  }
+}
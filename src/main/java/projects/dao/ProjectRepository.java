@@ -0,0 +1,182 @@
+package projects.dao;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import projects.entity.Category;
+import projects.entity.Project;
+import projects.entity.ProjectChange;
+import projects.entity.Step;
+import projects.exception.DbException;
+
+/**
+ * Where projects are stored. The service only talks to this interface, so the storage engine
+ * can be picked per deployment:
+ *   ProjectDao          MySQL through JDBC (the default)
+ *   InMemoryProjectDao  everything in memory; fastest, but lost when the program stops
+ *   MappedProjectDao    a local memory-mapped file, for sites without a database
+ *
+ * All of them behave the same way: the same IDs, versions and conflicts, the same incremental
+ * sync watermarks and the same change feed.
+ */
+public interface ProjectRepository {
+
+  /**
+   * Register a listener that is called, after each commit, with every change committed in it
+   * (in change ID order).
+   */
+  void setChangeListener(Consumer<ProjectChange> changeListener);
+
+  /**
+   * Run every read of a text that a fetch left out for loadDeferredTexts (see LargeText) through
+   * this wrapper, so it can get the same time limit and admission control as any other read.
+   * Stores that read every text right away ignore it.
+   */
+  void setDeferredReadWrapper(UnaryOperator<Supplier<Map<Integer, String>>> wrapper);
+
+  /**
+   * Read the texts that a fetch left out (see LargeText): the project's notes and the texts of
+   * its steps. Texts that are already loaded are not read again; getters never read them.
+   * Returns the same Project object. Throws a DbException if a read fails (try again later).
+   */
+  default Project loadDeferredTexts(Project project) {
+    if (!project.isNotesLoaded()) {
+      project.setLoadedNotes(project.getNotesLoader().get());
+    }
+
+    for (Step step : project.getSteps()) {
+      if (!step.isStepTextLoaded()) {
+        step.setLoadedStepText(step.getStepTextLoader().get());
+      }
+    }
+
+    return project;
+  }
+
+  /**
+   * Add a new project.
+   * Returns the same Project object, now with its new ID set.
+   */
+  Project insertProject(Project project);
+
+  /**
+   * Add several projects in one commit: either all are saved or none are.
+   * Returns the same Project objects, now with their new IDs set.
+   */
+  List<Project> insertProjects(List<Project> projects);
+
+  /**
+   * Get all projects (without materials, steps and categories), sorted by ID.
+   */
+  List<Project> fetchAllProjects();
+
+  /**
+   * Get only some columns of all projects, each row turned into a small object by the
+   * projection (e.g. ProjectProjection.SUMMARY for ID and name), sorted by project ID.
+   * Use this for lists: it does not load notes or anything else the list does not show.
+   */
+  <R> List<R> fetchAllProjects(ProjectProjection<R> projection);
+
+  /**
+   * Get one project by ID, with its materials, steps (in rank order) and categories.
+   * Returns Optional.empty() if not found.
+   */
+  Optional<Project> fetchProjectById(Integer projectId);
+
+  /**
+   * Incremental sync: up to "limit" projects changed after the watermark, oldest change first,
+   * each with its materials, steps and categories. The JDBC store returns a change only once it
+   * is a few seconds old (see ProjectDao.fetchChangedSince), so none is skipped.
+   */
+  List<Project> fetchChangedSince(ProjectWatermark watermark, int limit);
+
+  /**
+   * Update the changed fields of one project (see Project.getModifiedFields()), checking its
+   * version if it has one.
+   * Returns UPDATED, NOT_FOUND or CONFLICT.
+   */
+  UpdateResult modifyProjectDetails(Project project);
+
+  /**
+   * Update several projects in one commit. Each project gets its own result, in list order.
+   */
+  List<UpdateResult> modifyProjectDetails(List<Project> projects);
+
+  /**
+   * Add a step to a project, just before one of its other steps, or at the end if beforeStepId
+   * is null. Steps are kept in order by gap-based ranks (see StepRanks), so this writes only the
+   * new step, however many steps the project has.
+   * Returns the same Step object with its ID and rank (stepOrder) set, or Optional.empty() if
+   * the project or the "before" step does not exist.
+   */
+  Optional<Step> insertStep(Step step, Integer beforeStepId);
+
+  /**
+   * Move a step to just before another step of the same project, or to the end if beforeStepId
+   * is null. Only the moved step is written.
+   * Returns false if the project, the step or the "before" step does not exist.
+   */
+  boolean moveStep(Integer projectId, Integer stepId, Integer beforeStepId);
+
+  /**
+   * Delete one step of a project. The other steps keep their ranks.
+   * Returns false if the step was not found.
+   */
+  boolean deleteStep(Integer projectId, Integer stepId);
+
+  /**
+   * Get every category, sorted by ID.
+   */
+  List<Category> fetchAllCategories();
+
+  /**
+   * Link every one of the projects to every one of the categories. Links that already exist are
+   * left alone, and projects that do not exist are skipped.
+   * Returns how many links were added. Throws a DbException if a category does not exist.
+   */
+  int assignCategories(Collection<Integer> projectIds, Collection<Integer> categoryIds);
+
+  /**
+   * Remove every link between the projects and the categories.
+   * Returns how many links were removed.
+   */
+  int unassignCategories(Collection<Integer> projectIds, Collection<Integer> categoryIds);
+
+  /**
+   * Read the change feed: up to "limit" changes after the cursor, oldest first (per shard).
+   * A change whose transaction has not committed yet holds back the changes after it, so a
+   * consumer never moves past a change it has not seen. A store that drops old changes throws
+   * a ChangeCursorExpiredException when the cursor is older than what it still keeps.
+   */
+  List<ProjectChange> fetchChangesSince(ChangeCursor cursor, int limit);
+
+  /**
+   * Delete one project by ID.
+   * Returns true if it was deleted, false if the ID was not found.
+   */
+  boolean deleteProject(Integer projectId);
+
+  /**
+   * Create the repository chosen by the system properties:
+   *   projects.store       jdbc (default), memory or file
+   *   projects.store.file  the file used by the "file" store (default: projects.store)
+   */
+  static ProjectRepository fromSystemProperties() {
+    String store = System.getProperty("projects.store", "jdbc");
+
+    return switch (store) {
+      case "jdbc" -> new ProjectDao();
+      case "memory" -> new InMemoryProjectDao();
+      case "file" -> new MappedProjectDao(
+          Path.of(System.getProperty("projects.store.file", "projects.store")));
+      default -> throw new DbException("Unknown projects.store: " + store
+          + " (use jdbc, memory or file)");
+    };
+  }
+}
@@ -0,0 +1,24 @@
+package projects.dao;
+
+import java.time.LocalDateTime;
+
+import projects.entity.Project;
+
+/**
+ * A position in the "changed projects" stream: everything up to and including this
+ * (updated_at, project_id) pair has been read. The project ID breaks ties between projects
+ * changed in the same millisecond.
+ */
+public record ProjectWatermark(LocalDateTime updatedAt, Integer projectId) {
+
+  /** Before every project: use this for the first sync. */
+  public static final ProjectWatermark START =
+      new ProjectWatermark(LocalDateTime.of(1970, 1, 1, 0, 0, 1), 0);
+
+  /**
+   * The watermark just after a project, i.e. after the last project of a page.
+   */
+  public static ProjectWatermark after(Project project) {
+    return new ProjectWatermark(project.getUpdatedAt(), project.getProjectId());
+  }
+}
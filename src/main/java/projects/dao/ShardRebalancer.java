@@ -0,0 +1,267 @@
+package projects.dao;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.LinkedList;
+import java.util.List;
+
+import projects.entity.Material;
+import projects.entity.MaterialRowMapper;
+import projects.entity.Project;
+import projects.entity.ProjectRowMapper;
+import projects.entity.Step;
+import projects.entity.StepRowMapper;
+import projects.exception.DbException;
+import projects.util.DbConnection;
+import provided.util.DaoBase;
+import provided.util.mapper.RowMapper.RowReader;
+
+/**
+ * Tool that moves projects to the right shard after the number of shards changed.
+ *
+ * How to add shards:
+ * 1. Create the schema (and the same category rows) on the new databases.
+ * 2. Set projects.db.shards to the full new list: the old shards first, in the same order,
+ *    then the new ones.
+ * 3. Stop the application and run:
+ *      java -Dprojects.db.shards=... projects.dao.ShardRebalancer oldShardCount
+ *
+ * Every project on shards 0 .. oldShardCount-1 whose ID now belongs to another shard is copied
+ * (with its materials, steps and category links, keeping all IDs) and then deleted from the old
+ * shard. Copying first replaces anything a crashed earlier run left behind, so the tool can
+ * simply be run again after a failure.
+ *
+ * Note: shards are picked by ID modulo the shard count, so changing the count moves most projects.
+ */
+public class ShardRebalancer extends DaoBase {
+
+  public static void main(String[] args) {
+    if (args.length != 1) {
+      System.out.println("Usage: ShardRebalancer oldShardCount");
+      return;
+    }
+
+    int oldShardCount = Integer.parseInt(args[0]);
+    int shardCount = DbConnection.getShardCount();
+
+    if (oldShardCount < 1 || oldShardCount > shardCount) {
+      throw new DbException("oldShardCount must be between 1 and " + shardCount);
+    }
+
+    ShardRebalancer rebalancer = new ShardRebalancer();
+    int moved = 0;
+
+    for (int shard = 0; shard < oldShardCount; shard++) {
+      moved += rebalancer.rebalanceShard(shard);
+    }
+
+    System.out.println("Moved " + moved + " projects.");
+  }
+
+  /**
+   * Move every project on this shard that belongs somewhere else.
+   * @return the number of projects moved
+   */
+  int rebalanceShard(int shard) {
+    int moved = 0;
+
+    for (Integer projectId : fetchProjectIds(shard)) {
+      int target = DbConnection.shardFor(projectId);
+
+      if (target != shard) {
+        moveProject(projectId, shard, target);
+        moved++;
+      }
+    }
+
+    return moved;
+  }
+
+  private List<Integer> fetchProjectIds(int shard) {
+    String sql = "SELECT project_id FROM project ORDER BY project_id";
+
+    try (Connection conn = DbConnection.getConnection(shard);
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        ResultSet rs = stmt.executeQuery()) {
+      List<Integer> ids = new LinkedList<>();
+
+      while (rs.next()) {
+        ids.add(rs.getInt(1));
+      }
+
+      return ids;
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Copy one project (and its children) from the source to the target shard, then delete it from
+   * the source. Each side is its own transaction.
+   */
+  private void moveProject(Integer projectId, int source, int target) {
+    Project project;
+    List<Integer> categoryIds = new LinkedList<>();
+
+    try (Connection conn = DbConnection.getConnection(source)) {
+      project = readProject(conn, projectId, categoryIds);
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+
+    if (project == null) {
+      return; // deleted in the meantime
+    }
+
+    inTransaction(target, conn -> {
+      delete(conn, projectId); // leftovers from an earlier, interrupted run
+      writeProject(conn, project, categoryIds);
+    });
+
+    inTransaction(source, conn -> delete(conn, projectId));
+  }
+
+  private Project readProject(Connection conn, Integer projectId, List<Integer> categoryIds)
+      throws SQLException {
+    Project project = null;
+
+    try (PreparedStatement stmt = prepare(conn, "SELECT * FROM project WHERE project_id = ?",
+        projectId); ResultSet rs = stmt.executeQuery()) {
+      if (rs.next()) {
+        project = ProjectRowMapper.INSTANCE.reader(rs).read(rs);
+        LargeText.readCompressedNotes(rs, project);
+      }
+    }
+
+    if (project == null) {
+      return null;
+    }
+
+    try (PreparedStatement stmt = prepare(conn, "SELECT * FROM material WHERE project_id = ?",
+        projectId); ResultSet rs = stmt.executeQuery()) {
+      RowReader<Material> reader = MaterialRowMapper.INSTANCE.reader(rs);
+      while (rs.next()) {
+        project.getMaterials().add(reader.read(rs));
+      }
+    }
+
+    try (PreparedStatement stmt = prepare(conn, "SELECT * FROM step WHERE project_id = ?",
+        projectId); ResultSet rs = stmt.executeQuery()) {
+      RowReader<Step> reader = StepRowMapper.INSTANCE.reader(rs);
+      while (rs.next()) {
+        project.getSteps().add(reader.read(rs));
+      }
+    }
+
+    try (PreparedStatement stmt = prepare(conn,
+        "SELECT category_id FROM project_category WHERE project_id = ?", projectId);
+        ResultSet rs = stmt.executeQuery()) {
+      while (rs.next()) {
+        categoryIds.add(rs.getInt(1));
+      }
+    }
+
+    return project;
+  }
+
+  private void writeProject(Connection conn, Project project, List<Integer> categoryIds)
+      throws SQLException {
+    String sql = "INSERT INTO project (project_id, project_name, estimated_hours, actual_hours, "
+        + "difficulty, notes, notes_gz, version, updated_at) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      setParameter(stmt, 1, project.getProjectId(), Integer.class);
+      setParameter(stmt, 2, project.getProjectName(), String.class);
+      setParameter(stmt, 3, project.getEstimatedHours(), BigDecimal.class);
+      setParameter(stmt, 4, project.getActualHours(), BigDecimal.class);
+      setParameter(stmt, 5, project.getDifficulty(), Integer.class);
+      setParameter(stmt, 6, LargeText.plainNotes(project.getNotes()), String.class);
+      setParameter(stmt, 7, LargeText.compressedNotes(project.getNotes()), byte[].class);
+      setParameter(stmt, 8, project.getVersion(), Integer.class);
+      setParameter(stmt, 9, project.getUpdatedAt(), LocalDateTime.class);
+      stmt.executeUpdate();
+    }
+
+    sql = "INSERT INTO material (material_id, project_id, material_name, num_required, cost) "
+        + "VALUES (?, ?, ?, ?, ?)";
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (Material material : project.getMaterials()) {
+        setParameter(stmt, 1, material.getMaterialId(), Integer.class);
+        setParameter(stmt, 2, material.getProjectId(), Integer.class);
+        setParameter(stmt, 3, material.getMaterialName(), String.class);
+        setParameter(stmt, 4, material.getNumRequired(), Integer.class);
+        setParameter(stmt, 5, material.getCost(), BigDecimal.class);
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+
+    sql = "INSERT INTO step (step_id, project_id, step_text, step_order) VALUES (?, ?, ?, ?)";
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (Step step : project.getSteps()) {
+        setParameter(stmt, 1, step.getStepId(), Integer.class);
+        setParameter(stmt, 2, step.getProjectId(), Integer.class);
+        setParameter(stmt, 3, step.getStepText(), String.class);
+        setParameter(stmt, 4, step.getStepOrder(), Integer.class);
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+
+    sql = "INSERT INTO project_category (project_id, category_id) VALUES (?, ?)";
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (Integer categoryId : categoryIds) {
+        setParameter(stmt, 1, project.getProjectId(), Integer.class);
+        setParameter(stmt, 2, categoryId, Integer.class);
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+  }
+
+  /*
+   * Children are removed by ON DELETE CASCADE.
+   */
+  private void delete(Connection conn, Integer projectId) throws SQLException {
+    try (PreparedStatement stmt = prepare(conn, "DELETE FROM project WHERE project_id = ?",
+        projectId)) {
+      stmt.executeUpdate();
+    }
+  }
+
+  private PreparedStatement prepare(Connection conn, String sql, Integer projectId)
+      throws SQLException {
+    PreparedStatement stmt = conn.prepareStatement(sql);
+    setParameter(stmt, 1, projectId, Integer.class);
+    return stmt;
+  }
+
+  private void inTransaction(int shard, SqlWork work) {
+    try (Connection conn = DbConnection.getConnection(shard)) {
+      startTransaction(conn);
+
+      try {
+        work.run(conn);
+        commitTransaction(conn);
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  @FunctionalInterface
+  private interface SqlWork {
+    void run(Connection conn) throws SQLException;
+  }
+}
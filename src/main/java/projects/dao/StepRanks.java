@@ -0,0 +1,79 @@
+package projects.dao;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+import projects.entity.Step;
+
+/**
+ * Gap-based ranks for ordering steps (Step.stepOrder).
+ *
+ * Steps are not numbered 1, 2, 3, ... but GAP, 2 * GAP, 3 * GAP, ..., so a step can be put
+ * between two others by giving it the rank halfway between theirs. Adding, moving or deleting
+ * a step then writes only that one step, however long the list is. Deleting leaves a gap, which
+ * is fine: only the order of the ranks matters.
+ *
+ * Each insert between the same two steps halves the gap, so after about 10 of them there is no
+ * room left. Before that happens (when a new rank is closer than MIN_GAP to a neighbour), the
+ * project's steps are renumbered to GAP, 2 * GAP, ... again; the JDBC DAO does this in the
+ * background, the local stores right away.
+ */
+final class StepRanks {
+  static final int GAP = 1024;
+  static final int MIN_GAP = 16;
+
+  // Steps in display order; equal ranks (should not happen) fall back to the step ID
+  static final Comparator<Step> ORDER = Comparator
+      .comparing(Step::getStepOrder, Comparator.nullsLast(Comparator.naturalOrder()))
+      .thenComparing(Step::getStepId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+  private StepRanks() {
+  }
+
+  /**
+   * The rank for a step between two neighbours.
+   * @param previous - the rank of the step before it, or null if it goes first
+   * @param next - the rank of the step after it, or null if it goes last
+   * @return the new rank, or null if the neighbours are too close (renumber first)
+   */
+  static Integer between(Integer previous, Integer next) {
+    if (Objects.isNull(previous) && Objects.isNull(next)) {
+      return GAP;
+    }
+
+    // Going first or last: one GAP past the end, as far as an int reaches
+    long low = Objects.isNull(previous) ? Math.max(Integer.MIN_VALUE, (long)next - 2 * GAP)
+        : previous;
+    long high = Objects.isNull(next) ? Math.min(Integer.MAX_VALUE, (long)previous + 2 * GAP)
+        : next;
+
+    long middle = (low + high) / 2;
+    return middle > low && middle < high ? (int)middle : null;
+  }
+
+  /**
+   * @return true if a step with this rank is so close to a neighbour that the list should be
+   *         renumbered soon (null neighbours do not count)
+   */
+  static boolean crowded(Integer previous, int rank, Integer next) {
+    return (Objects.nonNull(previous) && (long)rank - previous < MIN_GAP)
+        || (Objects.nonNull(next) && (long)next - rank < MIN_GAP);
+  }
+
+  /**
+   * @return the rank of the step at this position (counting from 0) after renumbering
+   */
+  static int renumbered(int position) {
+    return (position + 1) * GAP;
+  }
+
+  /**
+   * Renumber steps that are already in order.
+   */
+  static void renumber(List<Step> steps) {
+    for (int i = 0; i < steps.size(); i++) {
+      steps.get(i).setStepOrder(renumbered(i));
+    }
+  }
+}
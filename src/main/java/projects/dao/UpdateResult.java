@@ -0,0 +1,13 @@
+package projects.dao;
+
+/**
+ * The outcome of a conditional (optimistic) update.
+ * UPDATED   = the row was changed.
+ * NOT_FOUND = no row has that ID.
+ * CONFLICT  = the row exists, but someone else changed it first (version did not match).
+ */
+public enum UpdateResult {
+  UPDATED,
+  NOT_FOUND,
+  CONFLICT
+}
@@ -3,10 +3,13 @@
  */
 package projects.entity;
 
+import provided.util.mapper.GenerateRowMapper;
+
 /**
  * @author Promineo
  *
  */
+@GenerateRowMapper
 public class Category {
   private Integer categoryId;
   private String categoryName;
@@ -5,10 +5,13 @@ package projects.entity;
 
 import java.math.BigDecimal;
 
+import provided.util.mapper.GenerateRowMapper;
+
 /**
  * @author Promineo
  *
  */
+@GenerateRowMapper
 public class Material {
   private Integer materialId;
   private Integer projectId;
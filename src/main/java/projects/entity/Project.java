@@ -4,13 +4,23 @@
 package projects.entity;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import provided.util.mapper.GenerateRowMapper;
+import provided.util.mapper.PostLoad;
 
 /**
  * @author Promineo
  *
  */
+@GenerateRowMapper
 public class Project {
   private Integer projectId;
   private String projectName;
@@ -18,11 +28,26 @@ public class Project {
   private BigDecimal actualHours;
   private Integer difficulty;
   private String notes;
+  private Integer version;
+  private LocalDateTime updatedAt;
 
   private List<Material> materials = new LinkedList<>();
   private List<Step> steps = new LinkedList<>();
   private List<Category> categories = new LinkedList<>();
 
+  /*
+   * When the DAO did not load long notes with the project, this reads them when asked to (see
+   * ProjectRepository.loadDeferredTexts). Null once the notes are here.
+   */
+  private Supplier<String> notesLoader;
+
+  /*
+   * Names of the fields changed through a setter since the project was loaded (or last saved). The
+   * DAO uses this to update only the columns that really changed. The row mapper clears it after
+   * loading (see @PostLoad), so a freshly loaded project starts with nothing modified.
+   */
+  private Set<String> modifiedFields = new HashSet<>();
+
   public Integer getProjectId() {
     return projectId;
   }
@@ -36,6 +61,7 @@ public class Project {
   }
 
   public void setProjectName(String projectName) {
+    markModified("projectName", this.projectName, projectName);
     this.projectName = projectName;
   }
 
@@ -44,6 +70,7 @@ public class Project {
   }
 
   public void setEstimatedHours(BigDecimal estimatedHours) {
+    markModified("estimatedHours", this.estimatedHours, estimatedHours);
     this.estimatedHours = estimatedHours;
   }
 
@@ -52,6 +79,7 @@ public class Project {
   }
 
   public void setActualHours(BigDecimal actualHours) {
+    markModified("actualHours", this.actualHours, actualHours);
     this.actualHours = actualHours;
   }
 
@@ -60,17 +88,138 @@ public class Project {
   }
 
   public void setDifficulty(Integer difficulty) {
+    markModified("difficulty", this.difficulty, difficulty);
     this.difficulty = difficulty;
   }
 
+  /**
+   * @return the notes, or null if the DAO left them out and they are not loaded yet (see
+   *         isNotesLoaded). This never reads from the database.
+   */
   public String getNotes() {
     return notes;
   }
 
+  /**
+   * @return false if the DAO left out long notes, until they are loaded with
+   *         ProjectRepository.loadDeferredTexts (or replaced with setNotes)
+   */
+  public boolean isNotesLoaded() {
+    return Objects.isNull(notesLoader);
+  }
+
   public void setNotes(String notes) {
+    if (Objects.nonNull(notesLoader)) {
+      modifiedFields.add("notes"); // the old notes are not loaded: no need to compare
+      notesLoader = null;
+    } else {
+      markModified("notes", this.notes, notes);
+    }
     this.notes = notes;
   }
 
+  /**
+   * Load the notes later instead of now, when ProjectRepository.loadDeferredTexts is called.
+   * Used by the DAO for long notes, which most screens never show.
+   */
+  public void setNotesLoader(Supplier<String> notesLoader) {
+    this.notesLoader = notesLoader;
+  }
+
+  /**
+   * @return what reads the notes that are not loaded yet, or null. For the DAO.
+   */
+  public Supplier<String> getNotesLoader() {
+    return notesLoader;
+  }
+
+  /**
+   * Set the notes read by the notes loader. The project stays unmodified. For the DAO.
+   */
+  public void setLoadedNotes(String notes) {
+    this.notes = notes;
+    notesLoader = null;
+  }
+
+  public Integer getVersion() {
+    return version;
+  }
+
+  public void setVersion(Integer version) {
+    this.version = version;
+  }
+
+  public LocalDateTime getUpdatedAt() {
+    return updatedAt;
+  }
+
+  public void setUpdatedAt(LocalDateTime updatedAt) {
+    this.updatedAt = updatedAt;
+  }
+
+  /**
+   * @return the names of the fields that were changed since the project was loaded or saved
+   */
+  public Set<String> getModifiedFields() {
+    return Collections.unmodifiableSet(modifiedFields);
+  }
+
+  /**
+   * Forget all changes, e.g. after the project has been saved or loaded.
+   */
+  @PostLoad
+  public void clearModifiedFields() {
+    modifiedFields.clear();
+  }
+
+  private void markModified(String fieldName, Object oldValue, Object newValue) {
+    if (!Objects.equals(oldValue, newValue)) {
+      modifiedFields.add(fieldName);
+    }
+  }
+
+  /**
+   * A copy that shares no objects with this one: materials, steps and categories are copied too,
+   * and texts that are not loaded yet stay that way (each copy loads its own). Modified fields
+   * are copied as well.
+   */
+  public Project copy() {
+    Project copy = new Project();
+    copy.projectId = projectId;
+    copy.projectName = projectName;
+    copy.estimatedHours = estimatedHours;
+    copy.actualHours = actualHours;
+    copy.difficulty = difficulty;
+    copy.notes = notes;
+    copy.notesLoader = notesLoader;
+    copy.version = version;
+    copy.updatedAt = updatedAt;
+    copy.modifiedFields.addAll(modifiedFields);
+
+    for (Material material : materials) {
+      Material materialCopy = new Material();
+      materialCopy.setMaterialId(material.getMaterialId());
+      materialCopy.setProjectId(material.getProjectId());
+      materialCopy.setMaterialName(material.getMaterialName());
+      materialCopy.setNumRequired(material.getNumRequired());
+      materialCopy.setCost(material.getCost());
+      copy.materials.add(materialCopy);
+    }
+
+    for (Step step : steps) {
+      copy.steps.add(step.copy());
+    }
+
+    for (Category category : categories) {
+      Category categoryCopy = new Category();
+      categoryCopy.setCategoryId(category.getCategoryId());
+      categoryCopy.setCategoryName(category.getCategoryName());
+      copy.categories.add(categoryCopy);
+    }
+
+    return copy;
+  }
+
   public List<Material> getMaterials() {
     return materials;
   }
@@ -92,7 +241,7 @@ public class Project {
     result += "\n   estimatedHours=" + estimatedHours;
     result += "\n   actualHours=" + actualHours;
     result += "\n   difficulty=" + difficulty;
-    result += "\n   notes=" + notes;
+    result += "\n   notes=" + (isNotesLoaded() ? notes : "(not loaded)");
     
     result += "\n   Materials:";
     
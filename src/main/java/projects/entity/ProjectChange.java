@@ -0,0 +1,60 @@
+/**
+ * 
+ */
+package projects.entity;
+
+/**
+ * One row of the project_change outbox table: a project was inserted, updated or deleted.
+ * The change ID is the offset consumers use to read the feed from a given point.
+ */
+public class ProjectChange {
+  public enum ChangeType {
+    INSERT, UPDATE, DELETE
+  }
+
+  private Long changeId;
+  private Integer projectId;
+  private String changeType;
+  private String changedFields;
+
+  public Long getChangeId() {
+    return changeId;
+  }
+
+  public void setChangeId(Long changeId) {
+    this.changeId = changeId;
+  }
+
+  public Integer getProjectId() {
+    return projectId;
+  }
+
+  public void setProjectId(Integer projectId) {
+    this.projectId = projectId;
+  }
+
+  public ChangeType getChangeType() {
+    return ChangeType.valueOf(changeType);
+  }
+
+  public void setChangeType(ChangeType changeType) {
+    this.changeType = changeType.name();
+  }
+
+  /**
+   * @return the changed column names, comma separated (empty for a delete)
+   */
+  public String getChangedFields() {
+    return changedFields;
+  }
+
+  public void setChangedFields(String changedFields) {
+    this.changedFields = changedFields;
+  }
+
+  @Override
+  public String toString() {
+    return "ID=" + changeId + ", projectId=" + projectId + ", changeType=" + changeType
+        + ", changedFields=" + changedFields;
+  }
+}
@@ -0,0 +1,11 @@
+package projects.entity;
+
+import provided.util.mapper.GenerateRowMapper;
+
+/**
+ * The little a project list shows: the ID (to pick a project) and the name. Loaded with only
+ * those two columns, so listing many projects does not read their notes.
+ */
+@GenerateRowMapper
+public record ProjectSummary(Integer projectId, String projectName) {
+}
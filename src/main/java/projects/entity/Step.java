@@ -3,16 +3,25 @@
  */
 package projects.entity;
 
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import provided.util.mapper.GenerateRowMapper;
+
 /**
  * @author Promineo
  *
  */
+@GenerateRowMapper
 public class Step {
   private Integer stepId;
   private Integer projectId;
   private String stepText;
   private Integer stepOrder;
 
+  // Reads a long step text that the DAO did not load, when asked to (or null)
+  private Supplier<String> stepTextLoader;
+
   public Integer getStepId() {
     return stepId;
   }
@@ -29,12 +38,47 @@ public class Step {
     this.projectId = projectId;
   }
 
+  /**
+   * @return the step text, or null if the DAO left it out and it is not loaded yet (see
+   *         isStepTextLoaded). This never reads from the database.
+   */
   public String getStepText() {
     return stepText;
   }
 
+  /**
+   * @return false if the DAO left out a long step text, until it is loaded with
+   *         ProjectRepository.loadDeferredTexts (or replaced with setStepText)
+   */
+  public boolean isStepTextLoaded() {
+    return Objects.isNull(stepTextLoader);
+  }
+
   public void setStepText(String stepText) {
     this.stepText = stepText;
+    stepTextLoader = null;
+  }
+
+  /**
+   * Load the step text later instead of now, when ProjectRepository.loadDeferredTexts is called.
+   */
+  public void setStepTextLoader(Supplier<String> stepTextLoader) {
+    this.stepTextLoader = stepTextLoader;
+  }
+
+  /**
+   * @return what reads the step text that is not loaded yet, or null. For the DAO.
+   */
+  public Supplier<String> getStepTextLoader() {
+    return stepTextLoader;
+  }
+
+  /**
+   * Set the step text read by the step text loader. For the DAO.
+   */
+  public void setLoadedStepText(String stepText) {
+    this.stepText = stepText;
+    stepTextLoader = null;
   }
 
   public Integer getStepOrder() {
@@ -45,8 +89,21 @@ public class Step {
     this.stepOrder = stepOrder;
   }
 
+  /**
+   * A copy of this step; a step text that is not loaded yet stays that way.
+   */
+  public Step copy() {
+    Step copy = new Step();
+    copy.stepId = stepId;
+    copy.projectId = projectId;
+    copy.stepText = stepText;
+    copy.stepTextLoader = stepTextLoader;
+    copy.stepOrder = stepOrder;
+    return copy;
+  }
+
   @Override
   public String toString() {
-    return "ID=" + stepId + ", stepText=" + stepText;
+    return "ID=" + stepId + ", stepText=" + (isStepTextLoaded() ? stepText : "(not loaded)");
   }
 }
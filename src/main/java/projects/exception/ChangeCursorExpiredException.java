@@ -0,0 +1,33 @@
+package projects.exception;
+
+import projects.dao.ChangeCursor;
+
+/**
+ * Thrown when the change feed is read from a cursor that is older than the oldest change the
+ * store still keeps: the changes in between are gone, so the consumer has missed some.
+ *
+ * To recover, the consumer reloads the full state (for example with fetchAllProjects) and then
+ * reads the feed from resyncFrom(). Changes it already has may be delivered again.
+ */
+@SuppressWarnings("serial")
+public class ChangeCursorExpiredException extends DbException {
+  private final ChangeCursor resyncFrom;
+
+  /**
+   * Create an exception with a message and the cursor to continue from after a resync.
+   *
+   * @param message The message.
+   * @param resyncFrom The cursor just before the oldest change that is still kept.
+   */
+  public ChangeCursorExpiredException(String message, ChangeCursor resyncFrom) {
+    super(message);
+    this.resyncFrom = resyncFrom;
+  }
+
+  /**
+   * @return the cursor to read the feed from after reloading the full state
+   */
+  public ChangeCursor resyncFrom() {
+    return resyncFrom;
+  }
+}
@@ -0,0 +1,19 @@
+package projects.exception;
+
+/**
+ * Thrown when the service turns a request away because too many requests of the same kind are
+ * already running or waiting (load shedding). Nothing was done, so the caller may try again
+ * later.
+ */
+@SuppressWarnings("serial")
+public class ServiceOverloadedException extends DbException {
+
+  /**
+   * Create an exception with a message.
+   *
+   * @param message The message.
+   */
+  public ServiceOverloadedException(String message) {
+    super(message);
+  }
+}
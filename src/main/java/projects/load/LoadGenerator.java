@@ -0,0 +1,304 @@
+package projects.load;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import projects.entity.Project;
+import projects.exception.ServiceOverloadedException;
+import projects.service.AdmissionStats;
+import projects.service.CoalescingStats;
+import projects.service.ProjectService;
+
+/**
+ * Load and soak test tool: sends a mix of operations to ProjectService at a fixed rate and
+ * reports throughput and latency percentiles.
+ *
+ * Usage (all settings optional, shown with their defaults):
+ *   java -Dprojects.store=memory projects.load.LoadGenerator rate=1000 duration=60 warmup=10
+ *       report=5 projects=1000 mix=add:10,list:2,select:60,update:20,delete:8
+ *
+ *   rate      operations per second
+ *   duration  seconds to measure (after the warm-up)
+ *   warmup    seconds to run before measuring (results are thrown away)
+ *   report    seconds between progress reports
+ *   projects  projects to add before starting
+ *   mix       relative weight of each operation
+ *   admission optional "maxConcurrent:maxQueued:maxWaitMs", e.g. 16:64:100, to run with the
+ *             service's admission control on (off by default)
+ * The store is picked as usual (see ProjectRepository.fromSystemProperties()): "memory" or
+ * "file" run without MySQL; the default runs against the configured database.
+ *
+ * Open loop: operations start on a fixed schedule, each on its own virtual thread, whether or
+ * not earlier ones have finished, just like independent users would. Latency is measured from
+ * the time an operation was supposed to start, not from when it actually started. So if the
+ * system stalls, the operations that queue up behind the stall count their full wait (a closed
+ * loop that waits for each reply would hide it: "coordinated omission").
+ *
+ * Outcomes: "ok", "miss" (the picked project does not exist, e.g. it was deleted; expected
+ * with deletes in the mix), "shed" (turned away by admission control) and "error" (any other
+ * exception).
+ */
+public class LoadGenerator {
+
+  enum Operation {
+    ADD, LIST, SELECT, UPDATE, DELETE
+  }
+
+  private final ProjectService projectService = new ProjectService();
+
+  private final int rate;
+  private final int durationSeconds;
+  private final int warmupSeconds;
+  private final int reportSeconds;
+  private final int initialProjects;
+  private final Operation[] schedule; // one entry per unit of weight, picked at random
+
+  // Highest project ID seen; selects, updates and deletes pick IDs from 1 to this
+  private final AtomicInteger maxProjectId = new AtomicInteger();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  private final Map<Operation, OperationStats> totals = new EnumMap<>(Operation.class);
+  private final AtomicReference<Map<Operation, OperationStats>> interval =
+      new AtomicReference<>(newStats());
+
+  public static void main(String[] args) {
+    Map<String, String> settings = new HashMap<>();
+
+    for (String arg : args) {
+      String[] pair = arg.split("=", 2);
+      if (pair.length != 2) {
+        System.out.println("Ignoring " + arg + " (expected name=value)");
+        continue;
+      }
+      settings.put(pair[0], pair[1]);
+    }
+
+    new LoadGenerator(settings).run();
+    System.exit(0); // do not wait for the write-behind or change feed threads
+  }
+
+  LoadGenerator(Map<String, String> settings) {
+    rate = Integer.parseInt(settings.getOrDefault("rate", "1000"));
+    durationSeconds = Integer.parseInt(settings.getOrDefault("duration", "60"));
+    warmupSeconds = Integer.parseInt(settings.getOrDefault("warmup", "10"));
+    reportSeconds = Integer.parseInt(settings.getOrDefault("report", "5"));
+    initialProjects = Integer.parseInt(settings.getOrDefault("projects", "1000"));
+    schedule = parseMix(settings.getOrDefault("mix", "add:10,list:2,select:60,update:20,delete:8"));
+    totals.putAll(newStats());
+
+    if (settings.containsKey("admission")) {
+      String[] limits = settings.get("admission").split(":");
+      projectService.enableAdmissionControl(Integer.parseInt(limits[0]),
+          Integer.parseInt(limits[1]), Duration.ofMillis(Long.parseLong(limits[2])));
+    }
+  }
+
+  void run() {
+    System.out.printf("Adding %d projects...%n", initialProjects);
+    for (int i = 0; i < initialProjects; i++) {
+      add();
+    }
+
+    System.out.printf("Running %d ops/s: %d s warm-up, then %d s measured.%n", rate,
+        warmupSeconds, durationSeconds);
+
+    long periodNanos = 1_000_000_000L / rate;
+    long start = System.nanoTime();
+    long measureStart = start + warmupSeconds * 1_000_000_000L;
+    long end = measureStart + durationSeconds * 1_000_000_000L;
+    long nextReport = measureStart + reportSeconds * 1_000_000_000L;
+    boolean measuring = false;
+
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (long i = 0; ; i++) {
+        long intendedStart = start + i * periodNanos;
+
+        if (intendedStart >= end) {
+          break;
+        }
+
+        if (!measuring && intendedStart >= measureStart) {
+          measuring = true;
+          interval.set(newStats());
+        }
+
+        if (intendedStart >= nextReport) {
+          report("last " + reportSeconds + " s", interval.getAndSet(newStats()), reportSeconds);
+          nextReport += reportSeconds * 1_000_000_000L;
+        }
+
+        long wait = intendedStart - System.nanoTime();
+        if (wait > 0) {
+          LockSupport.parkNanos(wait);
+        }
+
+        Operation operation = schedule[ThreadLocalRandom.current().nextInt(schedule.length)];
+        // Only operations meant to start after warm-up count, even if a warm-up one ends later
+        boolean measured = intendedStart >= measureStart;
+        executor.execute(() -> execute(operation, intendedStart, measured));
+      }
+    } // waits for the operations still running
+
+    report("total", totals, durationSeconds);
+    System.out.printf("Most operations in flight at once: %d%n", maxInFlight.get());
+
+    CoalescingStats coalescing = projectService.getCoalescingStats();
+    System.out.printf("Project loads %d, coalesced %d (%.1f%% of project fetches)%n", coalescing.loads(),
+        coalescing.coalesced(), coalescing.coalescedShare() * 100);
+
+    for (AdmissionStats stats : projectService.getAdmissionStats()) {
+      System.out.printf("Admission %-7s limit %4d, admitted %9d, rejected %7d, timed out %7d%n",
+          stats.operation(), stats.limit(), stats.admitted(), stats.rejected(), stats.timedOut());
+    }
+  }
+
+  private void execute(Operation operation, long intendedStart, boolean measured) {
+    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    String outcome;
+
+    try {
+      switch (operation) {
+        case ADD -> add();
+        case LIST -> projectService.fetchAllProjects();
+        case SELECT -> projectService.fetchProjectById(randomProjectId());
+        case UPDATE -> update();
+        case DELETE -> projectService.deleteProject(randomProjectId());
+      }
+      outcome = "ok";
+    } catch (NoSuchElementException e) {
+      outcome = "miss";
+    } catch (ServiceOverloadedException e) {
+      outcome = "shed";
+    } catch (RuntimeException e) {
+      outcome = e.getMessage() != null && e.getMessage().contains("does not exist")
+          ? "miss" : "error";
+    } finally {
+      inFlight.decrementAndGet();
+    }
+
+    if (measured) {
+      long latency = System.nanoTime() - intendedStart;
+      totals.get(operation).record(latency, outcome);
+      interval.get().get(operation).record(latency, outcome);
+    }
+  }
+
+  private void add() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    Project project = new Project();
+    project.setProjectName("Load test project " + random.nextInt(1_000_000));
+    project.setEstimatedHours(BigDecimal.valueOf(random.nextInt(1, 10_000), 2));
+    project.setDifficulty(random.nextInt(1, 6));
+    project.setNotes("Added by LoadGenerator");
+
+    Project added = projectService.addProject(project);
+    maxProjectId.accumulateAndGet(added.getProjectId(), Math::max);
+  }
+
+  private void update() {
+    Project project = projectService.fetchProjectById(randomProjectId());
+    project.setActualHours(BigDecimal.valueOf(ThreadLocalRandom.current().nextInt(1, 10_000), 2));
+    projectService.modifyProjectDetails(project);
+  }
+
+  private int randomProjectId() {
+    return ThreadLocalRandom.current().nextInt(1, Math.max(1, maxProjectId.get()) + 1);
+  }
+
+  private void report(String title, Map<Operation, OperationStats> stats, int seconds) {
+    System.out.printf("%n--- %s ---%n", title);
+    System.out.printf("%-7s %9s %9s %6s %6s %6s %9s %9s %9s %9s %9s%n", "op", "count", "ops/s",
+        "miss", "shed", "error", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+
+    long all = 0;
+
+    for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+      OperationStats opStats = entry.getValue();
+      LatencyHistogram histogram = opStats.latency;
+      all += histogram.count();
+
+      System.out.printf("%-7s %9d %9.1f %6d %6d %6d %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+          entry.getKey().name().toLowerCase(), histogram.count(),
+          (double)histogram.count() / seconds, opStats.misses.get(), opStats.shed.get(),
+          opStats.errors.get(),
+          millis(histogram.valueAt(50)), millis(histogram.valueAt(90)),
+          millis(histogram.valueAt(99)), millis(histogram.valueAt(99.9)),
+          millis(histogram.max()));
+    }
+
+    System.out.printf("all     %9d %9.1f%n", all, (double)all / seconds);
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+
+  private static Map<Operation, OperationStats> newStats() {
+    Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+
+    for (Operation operation : Operation.values()) {
+      stats.put(operation, new OperationStats());
+    }
+
+    return stats;
+  }
+
+  /*
+   * "add:10,select:60" -> an array with 10 ADDs and 60 SELECTs.
+   */
+  private static Operation[] parseMix(String mix) {
+    List<Operation> schedule = new ArrayList<>();
+
+    for (String part : mix.split(",")) {
+      String[] pair = part.trim().split(":");
+      Operation operation = Operation.valueOf(pair[0].trim().toUpperCase());
+      int weight = Integer.parseInt(pair[1].trim());
+
+      for (int i = 0; i < weight; i++) {
+        schedule.add(operation);
+      }
+    }
+
+    if (schedule.isEmpty()) {
+      throw new IllegalArgumentException("The mix has no operations: " + mix);
+    }
+
+    return schedule.toArray(new Operation[0]);
+  }
+
+  /**
+   * Latency and outcome counts of one operation type.
+   */
+  private static class OperationStats {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong shed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    void record(long nanos, String outcome) {
+      latency.record(nanos);
+
+      if (outcome.equals("miss")) {
+        misses.incrementAndGet();
+      } else if (outcome.equals("shed")) {
+        shed.incrementAndGet();
+      } else if (outcome.equals("error")) {
+        errors.incrementAndGet();
+      }
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package projects.service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import projects.exception.ServiceOverloadedException;
+
+/**
+ * Limits how many requests of each kind run at once, so a traffic spike turns into a short wait
+ * (or a quick "try again later") instead of hundreds of database connections.
+ *
+ * Every operation has its own limiter:
+ * - Up to "limit" requests run at once. The rest wait in line, up to maxQueued of them, for at
+ *   most maxWait, and are let in first come, first served: a new request does not pass the
+ *   ones already waiting, even if a slot is free at that moment. A request that finds the line
+ *   full is rejected right away; one that waits too long is rejected when its time is up. Both
+ *   throw ServiceOverloadedException.
+ * - The limit adapts (additive increase, multiplicative decrease), but only while all its slots
+ *   are in use; at lower load a slow request is not caused by us. When a request takes more than
+ *   LATENCY_TOLERANCE times the usual latency, the database is probably overloaded and the limit
+ *   drops by 10% (at most once per usual latency and per 10 ms, so one slow burst does not drop
+ *   it to 1). Otherwise each finished request raises it by 1/limit, i.e. by about 1 per full
+ *   round of requests. It stays between 1 and maxConcurrent.
+ *
+ * The limits of all operations together bound the number of connections the service opens.
+ */
+class AdmissionController {
+
+  enum Operation {
+    ADD, LIST, SELECT, UPDATE, DELETE, SYNC
+  }
+
+  // A request slower than this many times the usual latency counts as a sign of overload
+  private static final double LATENCY_TOLERANCE = 2.0;
+
+  // How much the limit is cut on overload
+  private static final double DECREASE_FACTOR = 0.9;
+
+  // The limit is cut at most once per usual latency, and at most once in this time
+  private static final long MIN_DECREASE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  // How quickly the "usual latency" follows new samples (small = slowly)
+  private static final double LATENCY_SMOOTHING = 0.02;
+
+  private final Map<Operation, Limiter> limiters = new EnumMap<>(Operation.class);
+
+  /**
+   * @param maxConcurrent - the most requests of one kind that may run at once (and the starting
+   *        limit)
+   * @param maxQueued - the most requests of one kind that may wait for a turn (0 = never wait)
+   * @param maxWait - how long a request may wait before it is rejected
+   */
+  AdmissionController(int maxConcurrent, int maxQueued, Duration maxWait) {
+    if (maxConcurrent < 1) {
+      throw new IllegalArgumentException("maxConcurrent must be at least 1");
+    }
+    if (maxQueued < 0) {
+      throw new IllegalArgumentException("maxQueued must not be negative");
+    }
+
+    for (Operation operation : Operation.values()) {
+      limiters.put(operation, new Limiter(operation, maxConcurrent, maxQueued, maxWait.toNanos()));
+    }
+  }
+
+  /**
+   * Run the call once there is room for it, and feed its latency back into the limit.
+   * @throws ServiceOverloadedException if it was not let through
+   */
+  <T> T call(Operation operation, Supplier<T> call) {
+    Limiter limiter = limiters.get(operation);
+    limiter.acquire();
+
+    long start = System.nanoTime();
+    try {
+      return call.get();
+    } finally {
+      limiter.release(System.nanoTime() - start);
+    }
+  }
+
+  List<AdmissionStats> stats() {
+    List<AdmissionStats> stats = new ArrayList<>();
+
+    for (Limiter limiter : limiters.values()) {
+      stats.add(limiter.stats());
+    }
+
+    return stats;
+  }
+
+  /**
+   * The limit, the line and the counters of one operation.
+   */
+  private static class Limiter {
+    private final Operation operation;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock. "waiting" holds one condition per waiting request, in arrival order
+    private final Deque<Condition> waiting = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long admitted;
+    private long rejected;
+    private long timedOut;
+    private double usualLatencyNanos;
+    private long lastDecrease;
+
+    Limiter(Operation operation, int maxConcurrent, int maxQueued, long maxWaitNanos) {
+      this.operation = operation;
+      this.maxConcurrent = maxConcurrent;
+      this.maxQueued = maxQueued;
+      this.maxWaitNanos = maxWaitNanos;
+      this.limit = maxConcurrent;
+    }
+
+    void acquire() {
+      lock.lock();
+      try {
+        if (inFlight >= (int)limit || !waiting.isEmpty()) {
+          waitForRoom();
+        }
+
+        inFlight++;
+        admitted++;
+        wakeNextIfRoom(); // room for more (e.g. the limit just went up)
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /*
+     * Called with the lock held.
+     */
+    private void waitForRoom() {
+      if (waiting.size() >= maxQueued) {
+        rejected++;
+        throw overloaded("too many requests are waiting");
+      }
+
+      Condition myTurn = lock.newCondition();
+      waiting.addLast(myTurn);
+      try {
+        long remaining = maxWaitNanos;
+
+        while (inFlight >= (int)limit || waiting.peekFirst() != myTurn) {
+          if (remaining <= 0) {
+            timedOut++;
+            throw overloaded("waited " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms");
+          }
+          remaining = myTurn.awaitNanos(remaining);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        timedOut++;
+        throw overloaded("interrupted while waiting");
+      } finally {
+        waiting.remove(myTurn);
+        wakeNextIfRoom(); // if this one gives up, the next one may go
+      }
+    }
+
+    /*
+     * Wake the first request in line if there is a free slot for it. Called with the lock held.
+     */
+    private void wakeNextIfRoom() {
+      if (!waiting.isEmpty() && inFlight < (int)limit) {
+        waiting.peekFirst().signal();
+      }
+    }
+
+    void release(long latencyNanos) {
+      lock.lock();
+      try {
+        boolean wasFull = inFlight >= (int)limit;
+        inFlight--;
+        adjustLimit(latencyNanos, wasFull);
+        wakeNextIfRoom();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /*
+     * Called with the lock held.
+     */
+    private void adjustLimit(long latencyNanos, boolean wasFull) {
+      if (usualLatencyNanos == 0) {
+        usualLatencyNanos = latencyNanos;
+        return;
+      }
+
+      long now = System.nanoTime();
+
+      if (!wasFull) {
+        // Not under pressure: leave the limit alone
+      } else if (latencyNanos > usualLatencyNanos * LATENCY_TOLERANCE) {
+        if (now - lastDecrease > Math.max(usualLatencyNanos, MIN_DECREASE_INTERVAL_NANOS)) {
+          limit = Math.max(1, limit * DECREASE_FACTOR);
+          lastDecrease = now;
+        }
+      } else {
+        limit = Math.min(maxConcurrent, limit + 1 / limit);
+      }
+
+      usualLatencyNanos += (latencyNanos - usualLatencyNanos) * LATENCY_SMOOTHING;
+    }
+
+    AdmissionStats stats() {
+      lock.lock();
+      try {
+        return new AdmissionStats(operation.name().toLowerCase(), (int)limit, inFlight,
+            waiting.size(), admitted, rejected, timedOut);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private ServiceOverloadedException overloaded(String reason) {
+      return new ServiceOverloadedException("The service is busy (" + operation.name().toLowerCase()
+          + ": " + reason + "). Try again later.");
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package projects.service;
+
+/**
+ * A snapshot of the admission control counters for one kind of operation.
+ *
+ * @param operation - e.g. "select"
+ * @param limit - how many may run at once right now (adapts to the observed latency)
+ * @param inFlight - how many are running
+ * @param queued - how many are waiting for a turn
+ * @param admitted - how many were let through so far
+ * @param rejected - how many were turned away right away because the wait queue was full
+ * @param timedOut - how many were turned away after waiting too long
+ */
+public record AdmissionStats(String operation, int limit, int inFlight, int queued,
+    long admitted, long rejected, long timedOut) {
+
+  /** All requests turned away so far. */
+  public long shed() {
+    return rejected + timedOut;
+  }
+}
@@ -0,0 +1,17 @@
+package projects.service;
+
+/**
+ * A snapshot of the request coalescing counters of fetchProjectById.
+ *
+ * @param loads - how many calls loaded the project from the database themselves
+ * @param coalesced - how many calls shared a load that another call had already started
+ * @param inFlight - how many loads are running right now
+ */
+public record CoalescingStats(long loads, long coalesced, int inFlight) {
+
+  /** The share of calls that did not need their own load (0 to 1). */
+  public double coalescedShare() {
+    long calls = loads + coalesced;
+    return calls == 0 ? 0 : (double)coalesced / calls;
+  }
+}
@@ -0,0 +1,29 @@
+package projects.service;
+
+import projects.entity.Project;
+
+/**
+ * Decides what to do when an update loses an optimistic-concurrency race
+ * (someone else saved the same project first).
+ */
+@FunctionalInterface
+public interface ConflictResolver {
+
+  /**
+   * Merge our changes with the latest saved copy.
+   * @param current - the project as it is now in the database (with its current version)
+   * @param attempted - the changes we tried to save
+   * @return the project to save next (it should carry the version of "current"),
+   *         or null to give up
+   */
+  Project merge(Project current, Project attempted);
+
+  /** Never merge: the first conflict is reported as an error. */
+  ConflictResolver FAIL = (current, attempted) -> null;
+
+  /** Last writer wins: re-apply our values on top of the latest version. */
+  ConflictResolver OVERWRITE = (current, attempted) -> {
+    attempted.setVersion(current.getVersion());
+    return attempted;
+  };
+}
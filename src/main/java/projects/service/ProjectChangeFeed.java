@@ -0,0 +1,90 @@
+package projects.service;
+
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import projects.dao.ChangeCursor;
+import projects.dao.ProjectRepository;
+import projects.entity.ProjectChange;
+
+/**
+ * An in-process stream of project changes (insert, update, delete), so consumers can react to
+ * deltas instead of polling fetchAllProjects.
+ *
+ * Live changes are pushed to subscribers using java.util.concurrent.Flow. Each subscriber
+ * requests as many changes as it can handle; up to bufferCapacity changes are buffered for a slow
+ * subscriber. Writers never wait for a subscriber: once its buffer is full, further changes are
+ * dropped for that subscriber (and counted in droppedChanges()). A subscriber that falls behind
+ * fills the gap with replay(...) from its cursor.
+ *
+ * Every change is also saved in the project_change outbox table in the same transaction as the
+ * change itself, so nothing is lost across restarts. A consumer keeps a ChangeCursor, moved past
+ * each change it processes, and calls replay(...) to read what it missed.
+ *
+ * Live changes are published once each, after their commit, but transactions that commit at
+ * about the same time may be published in either order, so change IDs are not always
+ * increasing. Writers in other processes are only visible through replay(...).
+ *
+ * replay(...) is the exact record: it returns changes in change ID order and does not skip a
+ * change whose transaction commits late (see ProjectDao.fetchChangesSince). Delivery is at least
+ * once: a consumer that mixes the live feed and replay can see a change twice, and should
+ * ignore changes it has already processed.
+ */
+class ProjectChangeFeed implements AutoCloseable {
+  private final ProjectRepository projectDao;
+  private final SubmissionPublisher<ProjectChange> publisher;
+  private final Lock publishLock = new ReentrantLock();
+  private final AtomicLong droppedChanges = new AtomicLong();
+
+  ProjectChangeFeed(ProjectRepository projectDao, int bufferCapacity) {
+    this.projectDao = projectDao;
+    this.publisher = new SubmissionPublisher<>(ForkJoinPool.commonPool(), bufferCapacity);
+  }
+
+  /**
+   * Called by the DAO after each commit. The lock hands changes from concurrent writers to
+   * subscribers one at a time; it is only held for the offer, which never waits.
+   */
+  void publish(ProjectChange change) {
+    publishLock.lock();
+
+    try {
+      if (publisher.hasSubscribers()) {
+        publisher.offer(change, (subscriber, dropped) -> {
+          droppedChanges.incrementAndGet();
+          return false; // do not retry: the subscriber catches up with replay(...)
+        });
+      }
+    } finally {
+      publishLock.unlock();
+    }
+  }
+
+  /**
+   * @return how many changes were dropped for subscribers whose buffer was full
+   */
+  long droppedChanges() {
+    return droppedChanges.get();
+  }
+
+  void subscribe(Flow.Subscriber<? super ProjectChange> subscriber) {
+    publisher.subscribe(subscriber);
+  }
+
+  /**
+   * Read saved changes after the cursor, oldest first.
+   */
+  List<ProjectChange> replay(ChangeCursor cursor, int limit) {
+    return projectDao.fetchChangesSince(cursor, limit);
+  }
+
+  @Override
+  public void close() {
+    publisher.close();
+  }
+}
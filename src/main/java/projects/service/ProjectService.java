@@ -1,21 +1,82 @@
 package projects.service;
 
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
 
-import projects.dao.ProjectDao;
+import projects.dao.ChangeCursor;
+import projects.dao.ProjectProjection;
+import projects.dao.ProjectRepository;
+import projects.dao.ProjectWatermark;
+import projects.dao.UpdateResult;
+import projects.entity.Category;
 import projects.entity.Project;
+import projects.entity.ProjectChange;
+import projects.entity.ProjectSummary;
+import projects.entity.Step;
 import projects.exception.DbException;
+import projects.service.AdmissionController.Operation;
+import projects.util.Deadline;
 
 /**
- * This class is between the menu (ProjectsApp) and the database (ProjectDao).
+ * This class is between the menu (ProjectsApp) and the database (a ProjectRepository).
  * It asks the DAO to do things with the database, and checks the results.
  * If something is wrong, it throws an error for the menu to show.
  */
 public class ProjectService {
   
+  // How many times to merge and retry an update that lost a version race
+  private static final int MAX_CONFLICT_RETRIES = 3;
+
+  // How many changes to buffer for a slow change-feed subscriber before writers wait
+  private static final int CHANGE_BUFFER_SIZE = 256;
+
   // This object talks to the database
-  private ProjectDao projectDao = new ProjectDao();
+  private final ProjectRepository projectDao;
+
+  // Pushes every committed change to in-process subscribers
+  private final ProjectChangeFeed changeFeed;
+
+  // Concurrent fetchProjectById calls for the same project share one load
+  private final SingleFlight<Integer, Project> projectLoads = new SingleFlight<>(Project::copy);
+
+  // Optional write-behind buffer for the *Async methods (null = write right away)
+  private volatile WriteBehindQueue writeBehind;
+
+  // Optional limits on how many requests run at once (null = no limits)
+  private volatile AdmissionController admission;
+
+  // Time limit for the database work of each call (null = none); see setCallTimeout
+  private volatile Duration callTimeout = timeoutFromSystemProperties();
+
+  /**
+   * Use the storage backend chosen by the projects.store system property (MySQL by default,
+   * see ProjectRepository.fromSystemProperties()).
+   */
+  public ProjectService() {
+    this(ProjectRepository.fromSystemProperties());
+  }
+
+  /**
+   * Use this storage backend, e.g. an InMemoryProjectDao in tests.
+   * @param projectDao - where the projects are kept
+   */
+  public ProjectService(ProjectRepository projectDao) {
+    this.projectDao = projectDao;
+    this.changeFeed = new ProjectChangeFeed(projectDao, CHANGE_BUFFER_SIZE);
+    projectDao.setChangeListener(change -> {
+      // A load that started before this commit must not be shared with later calls
+      projectLoads.forget(change.getProjectId());
+      changeFeed.publish(change);
+    });
+    // A deferred text read (see loadDeferredTexts) is a read of its own, outside the fetch
+    projectDao.setDeferredReadWrapper(read -> () -> admit(Operation.SELECT, read));
+  }
 
   /**
    * Add a new project to the database.
@@ -23,7 +84,7 @@ public class ProjectService {
    * @return the new project with its ID from the database
    */
   public Project addProject(Project project) {
-    return projectDao.insertProject(project);
+    return admit(Operation.ADD, () -> projectDao.insertProject(project));
   }
 
   /**
@@ -31,16 +92,64 @@ public class ProjectService {
    * @return a list of projects
    */
   public List<Project> fetchAllProjects() {
-    return projectDao.fetchAllProjects();
+    return admit(Operation.LIST, projectDao::fetchAllProjects);
+  }
+
+  /**
+   * Get the ID and name of every project, sorted by ID. Loads only those two columns, so use
+   * this (not fetchAllProjects) for project lists.
+   * @return a list of project summaries
+   */
+  public List<ProjectSummary> fetchProjectSummaries() {
+    return fetchAllProjects(ProjectProjection.SUMMARY);
+  }
+
+  /**
+   * Get only some columns of every project, as chosen by the projection, sorted by ID.
+   * @param projection - the columns and the object each row becomes
+   * @return one object per project
+   */
+  public <R> List<R> fetchAllProjects(ProjectProjection<R> projection) {
+    return admit(Operation.LIST, () -> projectDao.fetchAllProjects(projection));
+  }
+
+  /**
+   * Get the projects changed after a watermark (with all details), for incremental sync.
+   * Start with ProjectWatermark.START, then pass ProjectWatermark.after(last project) to get
+   * the next page.
+   * @param watermark - where the previous page ended
+   * @param limit - the most projects to return
+   * @return the changed projects, oldest change first
+   */
+  public List<Project> fetchChangedSince(ProjectWatermark watermark, int limit) {
+    return admit(Operation.SYNC, () -> projectDao.fetchChangedSince(watermark, limit));
   }
 
   /**
    * Get one project by ID, with all details.
    * If the project is not found, throw an error.
+   * When several callers ask for the same project at the same time, only the first one loads it
+   * (four queries); the others wait for that load and each get their own copy of the result.
+   * Waiting callers do not take an admission slot, but the call timeout applies to them too.
    * @param projectId - ID of the project
    * @return the full project details
    */
   public Project fetchProjectById(Integer projectId) {
+    return withCallTimeout(() -> projectLoads.load(projectId,
+        () -> admit(Operation.SELECT, () -> loadProject(projectId))));
+  }
+
+  /**
+   * Read the long texts that fetchProjectById or fetchAllProjects left out: the notes and the
+   * step texts. Until then getNotes() and getStepText() return null for them.
+   * @param project - a project returned by this service
+   * @return the same project, with every text loaded
+   */
+  public Project loadDeferredTexts(Project project) {
+    return withCallTimeout(() -> projectDao.loadDeferredTexts(project));
+  }
+
+  private Project loadProject(Integer projectId) {
     return projectDao.fetchProjectById(projectId)
         .orElseThrow(() -> new NoSuchElementException(
             "Project with ID=" + projectId + " does not exist."));
@@ -49,13 +158,51 @@ public class ProjectService {
   /**
    * Change (update) an existing project's details.
    * If no project is updated (wrong ID), throw an error.
+   * If someone else saved the project first (version conflict), throw an error.
    * @param project - project details to update
    */
   public void modifyProjectDetails(Project project) {
-    boolean updated = projectDao.modifyProjectDetails(project); // true if 1 project updated
-    if (!updated) {
-      throw new DbException("Project with ID=" + project.getProjectId() + " does not exist.");
+    modifyProjectDetails(project, ConflictResolver.FAIL);
+  }
+
+  /**
+   * Change (update) an existing project's details. On a version conflict, the latest copy is
+   * loaded and handed to the resolver, which can merge the changes and try again
+   * (up to MAX_CONFLICT_RETRIES times).
+   * @param project - project details to update
+   * @param resolver - merges our changes with the latest copy, or returns null to give up
+   */
+  public void modifyProjectDetails(Project project, ConflictResolver resolver) {
+    admit(Operation.UPDATE, () -> {
+      updateWithRetries(project, resolver);
+      return null;
+    });
+  }
+
+  private void updateWithRetries(Project project, ConflictResolver resolver) {
+    Project attempt = project;
+
+    for (int tries = 0; tries <= MAX_CONFLICT_RETRIES; tries++) {
+      UpdateResult result = projectDao.modifyProjectDetails(attempt);
+
+      switch (result) {
+        case UPDATED:
+          return;
+        case NOT_FOUND:
+          throw new DbException("Project with ID=" + project.getProjectId() + " does not exist.");
+        case CONFLICT:
+          Project current = loadProject(project.getProjectId());
+          attempt = resolver.merge(current, attempt);
+          if (attempt == null) {
+            throw new DbException("Project with ID=" + project.getProjectId()
+                + " was changed by someone else. Reload it and try again.");
+          }
+          break;
+      }
     }
+
+    throw new DbException("Project with ID=" + project.getProjectId()
+        + " is being changed by too many users. Try again later.");
   }
 
   /**
@@ -64,9 +211,265 @@ public class ProjectService {
    * @param projectId - ID of the project to delete
    */
   public void deleteProject(Integer projectId) {
-    boolean deleted = projectDao.deleteProject(projectId); // true if 1 project deleted
+    // true if 1 project deleted
+    boolean deleted = admit(Operation.DELETE, () -> projectDao.deleteProject(projectId));
     if (!deleted) {
       throw new DbException("Project with ID=" + projectId + " does not exist.");
     }
   }
-} 
+
+  /**
+   * Add a step to a project, just before another step, or at the end.
+   * If the project or the "before" step does not exist, throw an error.
+   * @param projectId - ID of the project
+   * @param stepText - what to do in this step
+   * @param beforeStepId - the step that should come after the new one, or null for the end
+   * @return the new step, with its ID and rank (stepOrder)
+   */
+  public Step addStep(Integer projectId, String stepText, Integer beforeStepId) {
+    Step step = new Step();
+    step.setProjectId(projectId);
+    step.setStepText(stepText);
+
+    return admit(Operation.UPDATE, () -> projectDao.insertStep(step, beforeStepId))
+        .orElseThrow(() -> new DbException(Objects.isNull(beforeStepId)
+            ? "Project with ID=" + projectId + " does not exist."
+            : "Project with ID=" + projectId + " has no step with ID=" + beforeStepId + "."));
+  }
+
+  /**
+   * Move a step to just before another step of the same project, or to the end.
+   * If the project or one of the steps does not exist, throw an error.
+   * @param projectId - ID of the project
+   * @param stepId - the step to move
+   * @param beforeStepId - the step it should come before, or null for the end
+   */
+  public void moveStep(Integer projectId, Integer stepId, Integer beforeStepId) {
+    if (!admit(Operation.UPDATE, () -> projectDao.moveStep(projectId, stepId, beforeStepId))) {
+      throw new DbException("Project with ID=" + projectId + " has no step with ID=" + stepId
+          + (Objects.isNull(beforeStepId) ? "" : " or ID=" + beforeStepId) + ".");
+    }
+  }
+
+  /**
+   * Delete one step of a project.
+   * If the step does not exist, throw an error.
+   * @param projectId - ID of the project
+   * @param stepId - the step to delete
+   */
+  public void deleteStep(Integer projectId, Integer stepId) {
+    if (!admit(Operation.UPDATE, () -> projectDao.deleteStep(projectId, stepId))) {
+      throw new DbException("Project with ID=" + projectId + " has no step with ID=" + stepId
+          + ".");
+    }
+  }
+
+  /**
+   * Get every category (from a cache; categories rarely change).
+   * @return the categories, sorted by ID
+   */
+  public List<Category> fetchAllCategories() {
+    return admit(Operation.LIST, projectDao::fetchAllCategories);
+  }
+
+  /**
+   * Put many projects into many categories at once (one batched statement per shard).
+   * Links that already exist and projects that do not exist are skipped.
+   * If a category does not exist, throw an error.
+   * @param projectIds - the projects
+   * @param categoryIds - the categories each of them should be in
+   * @return how many links were added
+   */
+  public int assignCategories(Collection<Integer> projectIds, Collection<Integer> categoryIds) {
+    return admit(Operation.UPDATE, () -> projectDao.assignCategories(projectIds, categoryIds));
+  }
+
+  /**
+   * Take many projects out of many categories at once.
+   * @param projectIds - the projects
+   * @param categoryIds - the categories they should no longer be in
+   * @return how many links were removed
+   */
+  public int unassignCategories(Collection<Integer> projectIds, Collection<Integer> categoryIds) {
+    return admit(Operation.UPDATE, () -> projectDao.unassignCategories(projectIds, categoryIds));
+  }
+
+  /**
+   * Turn on admission control: each kind of operation (add, list, select, update, delete, sync)
+   * may have at most maxConcurrent requests running at once; up to maxQueued more wait in line
+   * for at most maxWait. Requests beyond that fail fast with a ServiceOverloadedException instead
+   * of opening yet another connection. The limit of each operation adapts to its latency: it goes
+   * down when requests get much slower than usual, and back up while they are fast again.
+   * Writes buffered by write-behind are not limited (they share one connection anyway).
+   * @param maxConcurrent - the most requests of one kind running at once
+   * @param maxQueued - the most requests of one kind waiting (0 = reject when all slots are busy)
+   * @param maxWait - how long a request may wait for a slot
+   */
+  public synchronized void enableAdmissionControl(int maxConcurrent, int maxQueued,
+      Duration maxWait) {
+    admission = new AdmissionController(maxConcurrent, maxQueued, maxWait);
+  }
+
+  /**
+   * Turn admission control off again (requests that are waiting still get their turn).
+   */
+  public synchronized void disableAdmissionControl() {
+    admission = null;
+  }
+
+  /**
+   * @return the admission control counters per operation, or an empty list when it is off
+   */
+  public List<AdmissionStats> getAdmissionStats() {
+    AdmissionController controller = admission;
+    return controller == null ? List.of() : controller.stats();
+  }
+
+  /**
+   * @return how many fetchProjectById calls loaded the project and how many shared another load
+   */
+  public CoalescingStats getCoalescingStats() {
+    return projectLoads.stats();
+  }
+
+  /**
+   * Give each call at most this much time for its database work (connecting, queries, retries).
+   * A call that runs out of time fails with a DbException instead of waiting for a slow database.
+   * The default comes from the projects.callTimeoutMillis system property (none if not set).
+   * @param timeout - the limit per call, or null for none
+   */
+  public void setCallTimeout(Duration timeout) {
+    callTimeout = timeout;
+  }
+
+  /*
+   * Run a DAO call under the call timeout, through admission control if it is on.
+   */
+  private <T> T admit(Operation operation, Supplier<T> call) {
+    Supplier<T> timed = () -> withCallTimeout(call);
+
+    AdmissionController controller = admission;
+    return controller == null ? timed.get() : controller.call(operation, timed);
+  }
+
+  /*
+   * Run the call under the call timeout, if one is set.
+   */
+  private <T> T withCallTimeout(Supplier<T> call) {
+    Duration timeout = callTimeout;
+    return timeout == null ? call.get() : Deadline.within(timeout, call);
+  }
+
+  private static Duration timeoutFromSystemProperties() {
+    Long millis = Long.getLong("projects.callTimeoutMillis");
+    return millis == null ? null : Duration.ofMillis(millis);
+  }
+
+  /**
+   * Turn on write-behind buffering for addProjectAsync and modifyProjectDetailsAsync.
+   * Writes are collected and committed in batches of up to maxBatchSize, at most maxDelay after
+   * the first one arrived. Updates to the same project in one batch that do not check the
+   * version are merged.
+   * Reads do not see buffered writes until they are committed; call flushWrites() first if needed.
+   * @param maxBatchSize - write a batch as soon as it holds this many writes
+   * @param maxDelay - write a batch at the latest this long after its first write
+   */
+  public synchronized void enableWriteBehind(int maxBatchSize, Duration maxDelay) {
+    if (writeBehind != null) {
+      writeBehind.close();
+    }
+    writeBehind = new WriteBehindQueue(projectDao, maxBatchSize, maxDelay);
+  }
+
+  /**
+   * Add a new project. With write-behind on, the insert is buffered; the future completes
+   * (with the new ID set) once it is committed. Otherwise it is written right away.
+   * @param project - the project details
+   * @return a future for the saved project
+   */
+  public CompletableFuture<Project> addProjectAsync(Project project) {
+    WriteBehindQueue queue = writeBehind;
+    if (queue == null) {
+      return CompletableFuture.completedFuture(addProject(project));
+    }
+    return queue.insert(project);
+  }
+
+  /**
+   * Change an existing project's details. With write-behind on, the update is buffered (and
+   * merged with waiting updates to the same project that do not check the version); the future
+   * completes once it is committed. It fails with a DbException if the project does not exist or
+   * was changed by someone else. Once it completes, the project has its new version, as after
+   * modifyProjectDetails, so it can be changed and saved again.
+   * @param project - project details to update
+   * @return a future for the saved project
+   */
+  public CompletableFuture<Project> modifyProjectDetailsAsync(Project project) {
+    WriteBehindQueue queue = writeBehind;
+    if (queue == null) {
+      modifyProjectDetails(project);
+      return CompletableFuture.completedFuture(project);
+    }
+    return queue.update(project).thenApply(result -> {
+      if (result == UpdateResult.NOT_FOUND) {
+        throw new DbException("Project with ID=" + project.getProjectId() + " does not exist.");
+      }
+      if (result == UpdateResult.CONFLICT) {
+        throw new DbException("Project with ID=" + project.getProjectId()
+            + " was changed by someone else. Reload it and try again.");
+      }
+      return project;
+    });
+  }
+
+  /**
+   * Write all buffered writes now and wait until they are committed.
+   * Does nothing when write-behind is off.
+   */
+  public void flushWrites() {
+    WriteBehindQueue queue = writeBehind;
+    if (queue != null) {
+      queue.flush();
+    }
+  }
+
+  /**
+   * Flush buffered writes and turn write-behind off again.
+   */
+  public synchronized void disableWriteBehind() {
+    if (writeBehind != null) {
+      writeBehind.close();
+      writeBehind = null;
+    }
+  }
+
+  /**
+   * Receive every project change (insert, update, delete) committed from now on.
+   * The subscriber controls the pace with Flow.Subscription.request(n). Writers do not wait
+   * for a slow subscriber: changes that do not fit in its buffer are dropped (see
+   * droppedChangeCount), and it catches up with replayChanges from its cursor.
+   * @param subscriber - the consumer of the change stream
+   */
+  public void subscribeToChanges(Flow.Subscriber<? super ProjectChange> subscriber) {
+    changeFeed.subscribe(subscriber);
+  }
+
+  /**
+   * @return how many live changes were dropped because a subscriber's buffer was full
+   */
+  public long droppedChangeCount() {
+    return changeFeed.droppedChanges();
+  }
+
+  /**
+   * Read saved changes after a cursor, oldest first.
+   * Use ChangeCursor.START to start from the beginning. To catch up, pass a cursor moved past
+   * every change you processed (cursor = cursor.after(change)).
+   * @param cursor - where the previous read ended (one position per shard)
+   * @param limit - the most changes to return
+   * @return the changes, in change ID order
+   */
+  public List<ProjectChange> replayChanges(ChangeCursor cursor, int limit) {
+    return admit(Operation.SYNC, () -> changeFeed.replay(cursor, limit));
+  }
+}
@@ -0,0 +1,97 @@
+package projects.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import projects.exception.DbException;
+import projects.util.Deadline;
+
+/**
+ * Lets concurrent calls for the same key share one load ("single flight"). The first call for
+ * a key runs the load; calls for that key that arrive while it runs wait for it and get the same
+ * result (or the same exception) instead of querying the database again. Once the load is done
+ * the key is free, so the next call loads again: nothing is cached.
+ *
+ * The loaded value itself is handed to nobody. Every caller, the first one included, gets its
+ * own copy, so one caller changing its object does not change anyone else's.
+ */
+class SingleFlight<K, V> {
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  private final UnaryOperator<V> copier;
+
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+
+  /**
+   * @param copier - makes each caller's copy of a loaded value
+   */
+  SingleFlight(UnaryOperator<V> copier) {
+    this.copier = copier;
+  }
+
+  /**
+   * Return (a copy of) the value for the key: loaded by this call, or by a call for the same key
+   * that is already running.
+   */
+  V load(K key, Supplier<V> loader) {
+    CompletableFuture<V> mine = new CompletableFuture<>();
+    CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+
+    if (running != null) {
+      coalesced.increment();
+      return copier.apply(await(running));
+    }
+
+    loads.increment();
+    try {
+      V value = loader.get();
+      mine.complete(value);
+      return copier.apply(value);
+    } catch (RuntimeException | Error e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, mine);
+    }
+  }
+
+  /**
+   * Let the next call for the key start a new load, even if one is running. Call this after a
+   * write, so a load that started before the write is not shared with calls made after it.
+   */
+  void forget(K key) {
+    inFlight.remove(key);
+  }
+
+  CoalescingStats stats() {
+    return new CoalescingStats(loads.sum(), coalesced.sum(), inFlight.size());
+  }
+
+  /*
+   * Wait for another call's load, but not past this caller's own deadline (if it has one).
+   */
+  private static <V> V await(CompletableFuture<V> running) {
+    try {
+      return running.get(Deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      if (e.getCause() instanceof Error cause) {
+        throw cause;
+      }
+      throw new DbException(e.getCause());
+    } catch (TimeoutException e) {
+      throw new DbException("The database call took too long (deadline exceeded).");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DbException(e);
+    }
+  }
+}
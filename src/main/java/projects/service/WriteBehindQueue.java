@@ -0,0 +1,320 @@
+package projects.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import projects.dao.ProjectRepository;
+import projects.dao.UpdateResult;
+import projects.entity.Project;
+import projects.exception.DbException;
+
+/**
+ * Buffers project inserts and updates and writes them in batches ("group commit"):
+ * one connection and one commit per batch instead of one per call.
+ *
+ * A batch is written when it reaches maxBatchSize, or maxDelay after its first write arrived,
+ * whichever comes first. An update that does not check the version is merged into the update
+ * to the same project that is already waiting (later values win). An update that checks the
+ * version is always written on its own, in order, so the row's version is checked for it: of two
+ * editors who loaded the same version, the second one gets CONFLICT even in the same batch.
+ * Each caller gets a future that completes once its write is committed; after a successful
+ * update, the caller's project has the new version (as after a direct update). If a batch
+ * fails, its writes are tried again one by one, so only the callers whose own write fails get
+ * an error.
+ *
+ * Pending writes are flushed by flush(), close(), and at JVM shutdown. All writing happens on
+ * the writer thread, so batches are committed in order even then.
+ */
+class WriteBehindQueue implements AutoCloseable {
+  private final ProjectRepository projectDao;
+  private final int maxBatchSize;
+  private final Duration maxDelay;
+
+  // How long the shutdown hook waits for the last batch
+  private static final long SHUTDOWN_WAIT_SECONDS = 30;
+
+  // One thread does all the writing, so batches are committed in order
+  private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "project-write-behind");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final Thread shutdownHook =
+      new Thread(this::flushAtShutdown, "project-write-behind-flush");
+
+  // Guarded by "this"
+  private List<PendingInsert> inserts = new ArrayList<>();
+  private List<PendingUpdate> updates = new ArrayList<>();
+  private Map<Integer, PendingUpdate> lastUpdateById = new HashMap<>();
+  private ScheduledFuture<?> scheduledFlush;
+  private boolean closed;
+
+  WriteBehindQueue(ProjectRepository projectDao, int maxBatchSize, Duration maxDelay) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be at least 1");
+    }
+
+    this.projectDao = projectDao;
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelay = maxDelay;
+
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+  }
+
+  /**
+   * Queue a new project. The future completes with the project (ID set) once it is committed.
+   */
+  synchronized CompletableFuture<Project> insert(Project project) {
+    checkOpen();
+
+    PendingInsert pending = new PendingInsert(project, new CompletableFuture<>());
+    inserts.add(pending);
+    scheduleFlush();
+
+    return pending.future();
+  }
+
+  /**
+   * Queue an update. If it does not check the version and an update for the same project is
+   * already waiting, the two are merged. The future completes with the result of the (merged)
+   * UPDATE once it is committed; if that is UPDATED, the project's version has been updated and
+   * its modified fields cleared by then.
+   */
+  synchronized CompletableFuture<UpdateResult> update(Project project) {
+    checkOpen();
+
+    CompletableFuture<UpdateResult> future = new CompletableFuture<>();
+    PendingUpdate pending = lastUpdateById.get(project.getProjectId());
+
+    if (pending != null && project.getVersion() == null) {
+      applyChanges(project, pending.merged);
+      pending.callers.add(new Caller(project, future));
+    } else {
+      // A version must be checked against the row as it is after the earlier updates
+      pending = new PendingUpdate(copyOf(project), new Caller(project, future));
+      updates.add(pending);
+      lastUpdateById.put(project.getProjectId(), pending);
+    }
+
+    scheduleFlush();
+    return future;
+  }
+
+  /**
+   * Write everything that is waiting and wait until it is committed.
+   */
+  void flush() {
+    try {
+      writer.submit(this::writeBatch).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DbException("Interrupted while flushing project writes", e);
+    } catch (ExecutionException e) {
+      throw new DbException("Unable to flush project writes", e.getCause());
+    }
+  }
+
+  /**
+   * Flush pending writes and stop accepting new ones.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+
+    try {
+      flush();
+    } finally {
+      writer.shutdown();
+      try {
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+      } catch (IllegalStateException e) {
+        // Already shutting down: the hook is running or has run
+      }
+    }
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new DbException("Write-behind queue is closed.");
+    }
+  }
+
+  /*
+   * Called with the lock held. Start the delay timer for a new batch, or write right away if the
+   * batch is full.
+   */
+  private void scheduleFlush() {
+    if (inserts.size() + updates.size() >= maxBatchSize) {
+      if (scheduledFlush != null) {
+        scheduledFlush.cancel(false);
+      }
+      scheduledFlush = null;
+      writer.execute(this::writeBatch);
+    } else if (scheduledFlush == null) {
+      scheduledFlush = writer.schedule(this::writeBatch, maxDelay.toNanos(), TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /*
+   * Runs on the writer thread. Takes everything that is waiting and writes it: all inserts in one
+   * transaction, then all updates in one transaction. A batch that fails is written again one
+   * row at a time, so one bad row does not fail the others.
+   */
+  private void writeBatch() {
+    List<PendingInsert> batchInserts;
+    List<PendingUpdate> batchUpdates;
+
+    synchronized (this) {
+      batchInserts = inserts;
+      batchUpdates = updates;
+      inserts = new ArrayList<>();
+      updates = new ArrayList<>();
+      lastUpdateById = new HashMap<>();
+      if (scheduledFlush != null) {
+        scheduledFlush.cancel(false);
+        scheduledFlush = null;
+      }
+    }
+
+    if (!batchInserts.isEmpty()) {
+      List<Project> projects = new ArrayList<>(batchInserts.size());
+      batchInserts.forEach(pending -> projects.add(pending.project()));
+
+      try {
+        projectDao.insertProjects(projects);
+        batchInserts.forEach(pending -> pending.future().complete(pending.project()));
+      } catch (RuntimeException e) {
+        batchInserts.forEach(this::insertOne); // the batch was rolled back: no row was written
+      }
+    }
+
+    if (!batchUpdates.isEmpty()) {
+      List<Project> projects = new ArrayList<>(batchUpdates.size());
+      batchUpdates.forEach(pending -> projects.add(pending.merged));
+
+      try {
+        List<UpdateResult> results = projectDao.modifyProjectDetails(projects);
+
+        for (int i = 0; i < batchUpdates.size(); i++) {
+          batchUpdates.get(i).complete(results.get(i));
+        }
+      } catch (RuntimeException e) {
+        batchUpdates.forEach(this::updateOne);
+      }
+    }
+  }
+
+  private void insertOne(PendingInsert pending) {
+    try {
+      projectDao.insertProject(pending.project());
+      pending.future().complete(pending.project());
+    } catch (RuntimeException e) {
+      pending.future().completeExceptionally(e);
+    }
+  }
+
+  private void updateOne(PendingUpdate pending) {
+    try {
+      pending.complete(projectDao.modifyProjectDetails(pending.merged));
+    } catch (RuntimeException e) {
+      pending.callers.forEach(caller -> caller.future().completeExceptionally(e));
+    }
+  }
+
+  /*
+   * The JVM shutdown hook: stop taking writes, let the writer thread write what is waiting and
+   * wait for it. Writing here instead could commit a batch while the writer commits another.
+   */
+  private void flushAtShutdown() {
+    synchronized (this) {
+      closed = true;
+    }
+
+    try {
+      writer.execute(this::writeBatch);
+      writer.shutdown();
+      if (!writer.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+        System.err.println("Project writes still running at shutdown were not waited for");
+      }
+    } catch (RejectedExecutionException e) {
+      // Closed already: close() flushed everything
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /*
+   * A copy holding only the modified fields, so merging never changes the caller's object.
+   */
+  private static Project copyOf(Project project) {
+    Project copy = new Project();
+    copy.setProjectId(project.getProjectId());
+    copy.setVersion(project.getVersion());
+    applyChanges(project, copy);
+    return copy;
+  }
+
+  /*
+   * Copy the modified fields of "from" into "into". The version of "into" is kept: it is the
+   * version the first queued update expected.
+   */
+  private static void applyChanges(Project from, Project into) {
+    for (String field : from.getModifiedFields()) {
+      switch (field) {
+        case "projectName" -> into.setProjectName(from.getProjectName());
+        case "estimatedHours" -> into.setEstimatedHours(from.getEstimatedHours());
+        case "actualHours" -> into.setActualHours(from.getActualHours());
+        case "difficulty" -> into.setDifficulty(from.getDifficulty());
+        case "notes" -> into.setNotes(from.getNotes());
+        default -> throw new DbException("Unknown project field: " + field);
+      }
+    }
+  }
+
+  private record PendingInsert(Project project, CompletableFuture<Project> future) {}
+
+  private record Caller(Project project, CompletableFuture<UpdateResult> future) {}
+
+  private static class PendingUpdate {
+    private final Project merged;
+    private final List<Caller> callers = new ArrayList<>();
+
+    PendingUpdate(Project merged, Caller first) {
+      this.merged = merged;
+      callers.add(first);
+    }
+
+    /*
+     * Hand the result to every caller. After an update, give each caller's project the new
+     * version (the DAO set it on the merged copy), so its next update expects the right one.
+     */
+    void complete(UpdateResult result) {
+      for (Caller caller : callers) {
+        if (result == UpdateResult.UPDATED) {
+          if (Objects.nonNull(merged.getVersion())) {
+            caller.project().setVersion(merged.getVersion());
+          }
+          caller.project().clearModifiedFields();
+        }
+        caller.future().complete(result);
+      }
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package projects.util;
+
+import java.util.concurrent.TimeUnit;
+import projects.exception.DbException;
+
+/**
+ * Stops calls to a database that keeps failing, so callers fail at once instead of each waiting
+ * for its own connect timeout (and piling up threads meanwhile).
+ *
+ * Closed (normal): calls go through. After failureThreshold failures in a row it opens.
+ * Open: every call fails right away with a DbException, for openNanos.
+ * Half open: after that, one call is let through as a trial. If it works, the breaker closes;
+ * if it fails, it opens again. Other calls keep failing fast while the trial runs.
+ */
+class CircuitBreaker {
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    // Guarded by "this"
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    CircuitBreaker(String name, int failureThreshold, long openSeconds) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.SECONDS.toNanos(openSeconds);
+    }
+
+    /**
+     * Call before each attempt.
+     * @throws DbException if the breaker is open (or half open with a trial already running)
+     */
+    synchronized void beforeCall() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN; // this caller is the trial
+            return;
+        }
+
+        if (state != State.CLOSED) {
+            throw new DbException("The database at " + name + " is unavailable (it failed "
+                    + failureThreshold + " times in a row). Try again later.");
+        }
+    }
+
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    synchronized void onFailure() {
+        failures++;
+
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+}
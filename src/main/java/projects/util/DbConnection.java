@@ -1,10 +1,55 @@
 package projects.util;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import projects.exception.DbException;
 
+/**
+ * Opens database connections.
+ *
+ * Writes (and anything that must see the latest data) use getConnection(), which always goes to
+ * the primary database. Plain reads use getReadConnection(), which goes to a read replica when
+ * replicas are configured, and to the primary otherwise.
+ *
+ * Projects can be spread (sharded) over several databases by project ID. Each shard hands out
+ * its own, interleaved IDs: with N shards, shard k (counting from 0) only creates IDs where
+ * (id - 1) % N == k, so shardFor(id) finds a project's shard without a lookup, and IDs are unique
+ * across all shards. The shards must all have the same schema and the same category rows.
+ *
+ * Settings come from system properties, with the defaults below:
+ *   projects.db.url       JDBC URL of the primary
+ *   projects.db.shards    comma separated JDBC URLs of all shards, in a fixed order
+ *                         (default: one shard, the primary)
+ *   projects.db.user      user name (all databases)
+ *   projects.db.password  password (all databases)
+ *   projects.db.replicas  comma separated JDBC URLs of the read replicas (default: none)
+ *   projects.db.replica.maxLagSeconds  skip replicas further behind than this (default: 5)
+ *   projects.db.readRetries            extra tries for a read that hit a transient error (default: 2)
+ *   projects.db.breaker.failures       failed connects in a row that open a shard's circuit
+ *                                      breaker (default: 5)
+ *   projects.db.breaker.openSeconds    how long an open breaker fails calls fast (default: 10)
+ * Any JDBC URL works, so several local or embedded databases can stand in for replicas.
+ *
+ * Failures: when the caller set a Deadline, each connection gets a connect and socket timeout and
+ * each statement a query timeout from the time that is left. Opening a primary or shard goes
+ * through a circuit breaker per database, so calls fail fast while a database keeps failing.
+ * Reads wrapped in retryingRead(...) are tried again, after a random (jittered) pause, when they
+ * fail with a transient error such as a lost connection or a deadlock.
+ */
 public class DbConnection {
 
     private static final String SCHEMA = "projects";
@@ -13,23 +58,296 @@ public class DbConnection {
     private static final String HOST = "localhost";
     private static final int PORT = 3306;
 
+    private static final String DEFAULT_URL = String.format(
+            "jdbc:mysql://%s:%d/%s?useSSL=false&serverTimezone=UTC", HOST, PORT, SCHEMA);
+
+    private static final String URL = System.getProperty("projects.db.url", DEFAULT_URL);
+    private static final String DB_USER = System.getProperty("projects.db.user", USER);
+    private static final String DB_PASSWORD = System.getProperty("projects.db.password", PASSWORD);
+
+    private static final List<String> SHARD_URLS = shardUrls();
+    private static final AtomicInteger NEXT_INSERT_SHARD = new AtomicInteger();
+
+    private static final ReplicaRouter REPLICAS = new ReplicaRouter(
+            replicaUrls(), DB_USER, DB_PASSWORD,
+            Long.getLong("projects.db.replica.maxLagSeconds", 5));
+
+    /*
+     * Read-your-writes: after a thread writes, its reads go to the primary until the replicas had
+     * time to catch up (the max lag). Otherwise a user could save a change and not see it.
+     * Code that hands reads to other threads passes lastWriteNanos() along (see afterWriteAt).
+     */
+    private static final ThreadLocal<Long> LAST_WRITE_NANOS = new ThreadLocal<>();
+
+    private static final int READ_RETRIES = Integer.getInteger("projects.db.readRetries", 2);
+    private static final long FIRST_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int BREAKER_FAILURES =
+            Integer.getInteger("projects.db.breaker.failures", 5);
+    private static final long BREAKER_OPEN_SECONDS =
+            Long.getLong("projects.db.breaker.openSeconds", 10);
+    private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    /**
+     * Get a connection to the primary database (the first shard). Use this for writes.
+     */
     public static Connection getConnection() {
-        String uri = String.format("jdbc:mysql://%s:%d/%s?useSSL=false&serverTimezone=UTC",
-                                   HOST, PORT, SCHEMA);
+        return getConnection(0);
+    }
+
+    /**
+     * Get a connection to one shard's primary database. Use this for writes.
+     * New rows inserted on this connection get IDs that belong to this shard.
+     */
+    public static Connection getConnection(int shard) {
+        LAST_WRITE_NANOS.set(System.nanoTime());
+        return openShard(shard);
+    }
+
+    /**
+     * @return when the current thread last asked for a write connection (a System.nanoTime()
+     *         value), or null if it never did
+     */
+    public static Long lastWriteNanos() {
+        return LAST_WRITE_NANOS.get();
+    }
+
+    /**
+     * Run the call as if the current thread had written at this time (a lastWriteNanos() value
+     * from the thread that wrote, or null for none), so that its reads see that write. A later
+     * write of the current thread's own is kept.
+     */
+    public static <T> T afterWriteAt(Long writeNanos, Supplier<T> call) {
+        Long own = LAST_WRITE_NANOS.get();
+
+        if (writeNanos == null || (own != null && own - writeNanos >= 0)) {
+            return call.get();
+        }
+
+        LAST_WRITE_NANOS.set(writeNanos);
+        try {
+            return call.get();
+        } finally {
+            if (own == null) {
+                LAST_WRITE_NANOS.remove();
+            } else {
+                LAST_WRITE_NANOS.set(own);
+            }
+        }
+    }
+
+    /**
+     * Get a connection for read-only work on the first shard (see getReadConnection(int)).
+     */
+    public static Connection getReadConnection() {
+        return getReadConnection(0);
+    }
+
+    /**
+     * Get a connection for read-only work on one shard. Without sharding, it goes to the
+     * least-loaded healthy replica that is not lagging too far behind, or to the primary if there
+     * is none (or if this thread wrote recently). With sharding, it goes to the shard itself.
+     */
+    public static Connection getReadConnection(int shard) {
+        if (SHARD_URLS.size() > 1) {
+            return openShard(shard);
+        }
+
+        Long lastWrite = LAST_WRITE_NANOS.get();
+
+        if (REPLICAS.isEmpty()
+                || (lastWrite != null && System.nanoTime() - lastWrite < REPLICAS.maxLagNanos())) {
+            return openPrimary();
+        }
+
+        Connection conn = REPLICAS.open();
+        return conn != null ? withQueryTimeouts(conn) : openPrimary();
+    }
+
+    /**
+     * Run a read, and run it again (up to projects.db.readRetries more times) if it fails with a
+     * transient error: a lost or refused connection, a deadlock or a lock wait timeout. Between
+     * tries it waits a random time of up to 50 ms, 100 ms, 200 ms, ... (at most 1 s), so callers
+     * that failed together do not all come back at the same moment. It gives up early rather than
+     * wait past the caller's Deadline.
+     *
+     * Only use it for work that is safe to repeat (reads).
+     */
+    public static <T> T retryingRead(Supplier<T> read) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return read.get();
+
+            } catch (DbException e) {
+                if (attempt >= READ_RETRIES || !isTransient(e)) {
+                    throw e;
+                }
+
+                long ceiling = Math.min(MAX_BACKOFF_NANOS, FIRST_BACKOFF_NANOS << attempt);
+                long pause = ThreadLocalRandom.current().nextLong(ceiling);
+
+                if (pause >= Deadline.remainingNanos()) {
+                    throw e;
+                }
+
+                try {
+                    TimeUnit.NANOSECONDS.sleep(pause);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return how many shards the projects are spread over (1 without sharding)
+     */
+    public static int getShardCount() {
+        return SHARD_URLS.size();
+    }
+
+    /**
+     * @return the shard that holds (or will hold) the project with this ID
+     */
+    public static int shardFor(Integer projectId) {
+        return Math.floorMod(projectId - 1, SHARD_URLS.size());
+    }
+
+    /**
+     * @return the shard for the next new project; shards take turns so they fill up evenly
+     */
+    public static int nextInsertShard() {
+        return Math.floorMod(NEXT_INSERT_SHARD.getAndIncrement(), SHARD_URLS.size());
+    }
+
+    private static Connection openPrimary() {
+        return openShard(0);
+    }
+
+    private static Connection openShard(int shard) {
+        String url = SHARD_URLS.get(shard);
+        CircuitBreaker breaker = BREAKERS.computeIfAbsent(url,
+                key -> new CircuitBreaker(key, BREAKER_FAILURES, BREAKER_OPEN_SECONDS));
+
+        Deadline.check();
+        breaker.beforeCall();
+
         try {
             // Load MySQL Driver explicitly
             Class.forName("com.mysql.cj.jdbc.Driver");
 
-            Connection conn = DriverManager.getConnection(uri, USER, PASSWORD);
-            System.out.println("Successfully obtained connection!");
-            return conn;
-            
+            Connection conn = DriverManager.getConnection(url,
+                    connectProperties(DB_USER, DB_PASSWORD));
+
+            if (SHARD_URLS.size() > 1) {
+                // Make AUTO_INCREMENT hand out only this shard's IDs on this session
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("SET SESSION auto_increment_increment = " + SHARD_URLS.size()
+                            + ", auto_increment_offset = " + (shard + 1));
+                } catch (SQLException e) {
+                    conn.close();
+                    throw e;
+                }
+            }
+
+            breaker.onSuccess();
+            return withQueryTimeouts(conn);
+
         } catch (SQLException e) {
-            throw new DbException("Unable to get connection at " + uri, e);
-            
+            breaker.onFailure();
+            throw new DbException("Unable to get connection at " + url, e);
+
         } catch (ClassNotFoundException e) {
+            breaker.onFailure();
             throw new DbException("MySQL JDBC Driver not found.", e);
         }
     }
-}
 
+    /*
+     * User, password and, when the caller set a Deadline, the MySQL Connector/J connect and
+     * socket timeouts (milliseconds; other drivers ignore properties they do not know). The
+     * socket timeout bounds every wait for the server for as long as the connection is used.
+     */
+    static Properties connectProperties(String user, String password) {
+        Properties properties = new Properties();
+        properties.setProperty("user", user);
+        properties.setProperty("password", password);
+
+        int timeoutMillis = Deadline.remainingMillisForJdbc();
+        if (timeoutMillis > 0) {
+            properties.setProperty("connectTimeout", Integer.toString(timeoutMillis));
+            properties.setProperty("socketTimeout", Integer.toString(timeoutMillis));
+        }
+
+        return properties;
+    }
+
+    /*
+     * With a Deadline, give every statement created on the connection a query timeout of the
+     * time that is left, so the server cancels a query that runs too long. Without one, the
+     * connection is returned as it is.
+     */
+    static Connection withQueryTimeouts(Connection conn) {
+        if (Deadline.current() == null) {
+            return conn;
+        }
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                    String name = method.getName();
+                    boolean newStatement = name.equals("createStatement")
+                            || name.equals("prepareStatement") || name.equals("prepareCall");
+
+                    if (newStatement) {
+                        Deadline.check();
+                    }
+
+                    try {
+                        Object result = method.invoke(conn, args);
+                        if (newStatement) {
+                            ((Statement) result).setQueryTimeout(Deadline.remainingSecondsForJdbc());
+                        }
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /*
+     * True if the error (or one of its causes) is an SQLException that may go away by itself.
+     */
+    private static boolean isTransient(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientException || cause instanceof SQLRecoverableException) {
+                return true;
+            }
+
+            if (cause instanceof SQLException sqlException) {
+                String state = sqlException.getSQLState();
+                int code = sqlException.getErrorCode();
+
+                // 08xxx: connection problems, 40001: deadlock/serialization failure,
+                // MySQL 1205: lock wait timeout, 1213: deadlock
+                if ((state != null && (state.startsWith("08") || state.equals("40001")))
+                        || code == 1205 || code == 1213) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static List<String> shardUrls() {
+        String shards = System.getProperty("projects.db.shards", "");
+        return shards.isBlank() ? List.of(URL) : List.of(shards.trim().split("\\s*,\\s*"));
+    }
+
+    private static List<String> replicaUrls() {
+        String replicas = System.getProperty("projects.db.replicas", "");
+        return replicas.isBlank() ? List.of() : List.of(replicas.trim().split("\\s*,\\s*"));
+    }
+}
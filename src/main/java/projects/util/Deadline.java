@@ -0,0 +1,102 @@
+package projects.util;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import projects.exception.DbException;
+
+/**
+ * A time limit for everything the current thread does with the database.
+ *
+ * A caller wraps its work in Deadline.within(timeout, ...). While that runs, DbConnection gives
+ * each new connection a connect and socket timeout, and each statement a query timeout, of at
+ * most the time that is left, and retries stop once the time is up. So a slow or hanging
+ * database costs a caller at most its own timeout instead of stalling the thread.
+ *
+ * Deadlines nest: an inner call can only make the limit shorter. The deadline belongs to the
+ * thread; code that hands work to other threads passes current() along and uses at(...) there.
+ */
+public class Deadline {
+
+    // System.nanoTime() value when the time is up, or null for no limit
+    private static final ThreadLocal<Long> DEADLINE_NANOS = new ThreadLocal<>();
+
+    /**
+     * Run the call with at most this much time for its database work.
+     */
+    public static <T> T within(Duration timeout, Supplier<T> call) {
+        return at(System.nanoTime() + timeout.toNanos(), call);
+    }
+
+    /**
+     * Run the call with this deadline (a System.nanoTime() value, or null for none), or with the
+     * current one if that is earlier.
+     */
+    public static <T> T at(Long deadlineNanos, Supplier<T> call) {
+        Long outer = DEADLINE_NANOS.get();
+
+        if (deadlineNanos == null || (outer != null && outer - deadlineNanos <= 0)) {
+            return call.get();
+        }
+
+        DEADLINE_NANOS.set(deadlineNanos);
+        try {
+            return call.get();
+        } finally {
+            if (outer == null) {
+                DEADLINE_NANOS.remove();
+            } else {
+                DEADLINE_NANOS.set(outer);
+            }
+        }
+    }
+
+    /**
+     * @return the current thread's deadline (a System.nanoTime() value), or null if there is none
+     */
+    public static Long current() {
+        return DEADLINE_NANOS.get();
+    }
+
+    /**
+     * @return the time left, or Long.MAX_VALUE if there is no deadline (never negative)
+     */
+    public static long remainingNanos() {
+        Long deadline = DEADLINE_NANOS.get();
+        return deadline == null ? Long.MAX_VALUE : Math.max(0, deadline - System.nanoTime());
+    }
+
+    /**
+     * @return the time left in whole milliseconds, at least 1, or 0 if there is no deadline
+     *         (0 means "no timeout" to JDBC)
+     */
+    static int remainingMillisForJdbc() {
+        return toJdbcTimeout(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the time left in whole seconds, at least 1, or 0 if there is no deadline
+     */
+    static int remainingSecondsForJdbc() {
+        return toJdbcTimeout(TimeUnit.SECONDS);
+    }
+
+    /**
+     * Throw if the time is already up, so no new database work is started.
+     */
+    static void check() {
+        if (DEADLINE_NANOS.get() != null && remainingNanos() == 0) {
+            throw new DbException("The database call took too long (deadline exceeded).");
+        }
+    }
+
+    private static int toJdbcTimeout(TimeUnit unit) {
+        if (DEADLINE_NANOS.get() == null) {
+            return 0;
+        }
+
+        long nanos = remainingNanos();
+        long rounded = (nanos + unit.toNanos(1) - 1) / unit.toNanos(1); // round up
+        return (int)Math.max(1, Math.min(Integer.MAX_VALUE, rounded));
+    }
+}
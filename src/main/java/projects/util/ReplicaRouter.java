@@ -0,0 +1,207 @@
+package projects.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLSyntaxErrorException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks a read replica for each read connection.
+ *
+ * The least-loaded replica (fewest open connections) wins; ties are broken round-robin so the load
+ * spreads evenly. A background check runs every few seconds and marks a replica unhealthy if it
+ * cannot be reached or its replication lag (MySQL SHOW REPLICA STATUS) is above the limit.
+ * A replica that fails to connect is also marked unhealthy right away. When no replica is usable,
+ * open() returns null and the caller uses the primary.
+ */
+class ReplicaRouter {
+    private static final long HEALTH_CHECK_SECONDS = 5;
+    private static final Duration HEALTH_CHECK_TIMEOUT = Duration.ofSeconds(2);
+
+    // MySQL error ER_SPECIFIC_ACCESS_DENIED_ERROR (e.g. no REPLICATION CLIENT privilege)
+    private static final int MYSQL_ACCESS_DENIED = 1227;
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final String user;
+    private final String password;
+    private final long maxLagSeconds;
+    private final AtomicInteger nextStart = new AtomicInteger();
+
+    ReplicaRouter(List<String> urls, String user, String password, long maxLagSeconds) {
+        this.user = user;
+        this.password = password;
+        this.maxLagSeconds = maxLagSeconds;
+
+        for (String url : urls) {
+            replicas.add(new Replica(url));
+        }
+
+        if (!replicas.isEmpty()) {
+            ScheduledExecutorService checker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "replica-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checker.scheduleWithFixedDelay(this::checkHealth, 0, HEALTH_CHECK_SECONDS,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    boolean isEmpty() {
+        return replicas.isEmpty();
+    }
+
+    long maxLagNanos() {
+        return TimeUnit.SECONDS.toNanos(maxLagSeconds);
+    }
+
+    /**
+     * Open a connection to the best replica, or return null if none is usable.
+     */
+    Connection open() {
+        int size = replicas.size();
+        int start = Math.floorMod(nextStart.getAndIncrement(), size);
+        List<Replica> tried = new ArrayList<>(size);
+
+        while (tried.size() < size) {
+            Replica best = null;
+
+            for (int i = 0; i < size; i++) {
+                Replica replica = replicas.get((start + i) % size);
+                if (replica.healthy && !tried.contains(replica)
+                        && (best == null || replica.inUse.get() < best.inUse.get())) {
+                    best = replica;
+                }
+            }
+
+            if (best == null) {
+                return null;
+            }
+
+            try {
+                return best.track(DriverManager.getConnection(best.url,
+                        DbConnection.connectProperties(user, password)));
+            } catch (SQLException e) {
+                best.healthy = false; // the next health check brings it back
+                tried.add(best);
+            }
+        }
+
+        return null;
+    }
+
+    /*
+     * Check every replica, each within HEALTH_CHECK_TIMEOUT (connect, socket and query timeouts,
+     * as for other connections), so one hung replica cannot stall the checks of the others.
+     */
+    private void checkHealth() {
+        for (Replica replica : replicas) {
+            replica.healthy = Deadline.within(HEALTH_CHECK_TIMEOUT, () -> isHealthy(replica));
+        }
+    }
+
+    private boolean isHealthy(Replica replica) {
+        try (Connection conn = DbConnection.withQueryTimeouts(DriverManager.getConnection(
+                replica.url, DbConnection.connectProperties(user, password)))) {
+            return lagSeconds(conn) <= maxLagSeconds;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /*
+     * Replication lag in seconds. A database that is not a MySQL replica (for example a local
+     * stand-in) has no replica status and counts as up to date: either the status is empty, or
+     * the database does not know the statement at all. A replica whose replication has stopped
+     * reports no lag value and counts as infinitely behind. So does a replica whose status
+     * cannot be read for any other reason (e.g. a lost connection or a missing privilege): it is
+     * only used again once it shows that it is up to date.
+     * MySQL before 8.0.22 (and MariaDB) only know the older statement and column names.
+     */
+    private long lagSeconds(Connection conn) {
+        try {
+            return lagSeconds(conn, "SHOW REPLICA STATUS", "Seconds_Behind_Source");
+        } catch (SQLException e) {
+            if (!isUnsupported(e)) {
+                return Long.MAX_VALUE;
+            }
+        }
+
+        try {
+            return lagSeconds(conn, "SHOW SLAVE STATUS", "Seconds_Behind_Master");
+        } catch (SQLException e) {
+            return isUnsupported(e) ? 0 : Long.MAX_VALUE;
+        }
+    }
+
+    /*
+     * True if the database rejected the statement itself (syntax error or unsupported feature,
+     * SQLSTATE class 42), rather than failing to run it. MySQL also reports a missing privilege
+     * in class 42; that is a real failure.
+     */
+    private static boolean isUnsupported(SQLException e) {
+        boolean rejected = e instanceof SQLSyntaxErrorException
+                || e instanceof SQLFeatureNotSupportedException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("42"));
+        return rejected && e.getErrorCode() != MYSQL_ACCESS_DENIED;
+    }
+
+    private static long lagSeconds(Connection conn, String sql, String lagColumn)
+            throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            if (!rs.next()) {
+                return 0;
+            }
+
+            long lag = rs.getLong(lagColumn);
+            return rs.wasNull() ? Long.MAX_VALUE : lag;
+        }
+    }
+
+    private static class Replica {
+        private final String url;
+        private final AtomicInteger inUse = new AtomicInteger();
+        private volatile boolean healthy = true;
+
+        Replica(String url) {
+            this.url = url;
+        }
+
+        /*
+         * Count the connection as in use until it is closed.
+         */
+        Connection track(Connection conn) {
+            inUse.incrementAndGet();
+            boolean[] closed = new boolean[1];
+
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                        if (method.getName().equals("close")) {
+                            synchronized (closed) {
+                                if (!closed[0]) {
+                                    closed[0] = true;
+                                    inUse.decrementAndGet();
+                                }
+                            }
+                        }
+                        try {
+                            return method.invoke(conn, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
@@ -5,7 +5,6 @@ package provided.util;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -13,7 +12,6 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
-import java.sql.Types;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.Objects;
@@ -57,6 +55,52 @@ public abstract class DaoBase {
     conn.rollback();
   }
 
+  /**
+   * This starts a read-only MySQL transaction with a consistent snapshot: every SELECT in the
+   * transaction sees the database as it was when the transaction started, even if other
+   * connections commit changes in the meantime. Use it for reads that need more than one SELECT
+   * (a parent row and its children, for example). A read that is a single SELECT does not need a
+   * transaction at all: leave auto-commit on and skip this call.
+   * 
+   * Compared to {@link #startTransaction(Connection)}, the server does not have to prepare for
+   * writes (no transaction ID, no undo logging), and the connection stays in auto-commit mode, so
+   * no extra requests are needed to switch auto-commit off and back on. It also works on
+   * read-only replicas.
+   * 
+   * @param conn The connection on which to start the transaction.
+   * @throws SQLException Thrown if an error occurs starting the transaction.
+   */
+  protected void startReadTransaction(Connection conn) throws SQLException {
+    try(Statement stmt = conn.createStatement()) {
+      stmt.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY");
+    }
+  }
+
+  /**
+   * Ends a transaction started by {@link #startReadTransaction(Connection)}. Nothing was written,
+   * so this only releases the snapshot.
+   * 
+   * @param conn The connection on which to end the transaction.
+   * @throws SQLException Thrown if an error occurs ending the transaction.
+   */
+  protected void commitReadTransaction(Connection conn) throws SQLException {
+    try(Statement stmt = conn.createStatement()) {
+      stmt.execute("COMMIT");
+    }
+  }
+
+  /**
+   * Ends a transaction started by {@link #startReadTransaction(Connection)} after an error.
+   * 
+   * @param conn The connection on which to end the transaction.
+   * @throws SQLException Thrown if an error occurs ending the transaction.
+   */
+  protected void rollbackReadTransaction(Connection conn) throws SQLException {
+    try(Statement stmt = conn.createStatement()) {
+      stmt.execute("ROLLBACK");
+    }
+  }
+
   /**
    * This sets a parameter on a prepared statement. If the parameter is null, it is handled
    * correctly.
@@ -73,67 +117,11 @@ public abstract class DaoBase {
    */
   protected void setParameter(PreparedStatement stmt, int parameterIndex, Object value,
       Class<?> classType) throws SQLException {
-    int sqlType = convertJavaClassToSqlType(classType);
-
-    if(Objects.isNull(value)) {
-      stmt.setNull(parameterIndex, sqlType);
-    }
-    else {
-      switch(sqlType) {
-        case Types.DECIMAL:
-          stmt.setBigDecimal(parameterIndex, (BigDecimal)value);
-          break;
-
-        case Types.DOUBLE:
-          stmt.setDouble(parameterIndex, (Double)value);
-          break;
-
-        case Types.INTEGER:
-          stmt.setInt(parameterIndex, (Integer)value);
-          break;
-
-        case Types.OTHER:
-          stmt.setObject(parameterIndex, value);
-          break;
-
-        case Types.VARCHAR:
-          stmt.setString(parameterIndex, (String)value);
-          break;
-
-        default:
-          throw new DaoException("Unknown parameter type: " + classType);
-      }
-    }
-  }
-
-  /**
-   * Converts from a Java class to a java.sql.Types value.
-   * 
-   * @param classType The class type
-   * @return A java.sql.Types value
-   */
-  private int convertJavaClassToSqlType(Class<?> classType) {
-    if(Integer.class.equals(classType)) {
-      return Types.INTEGER;
-    }
-
-    if(String.class.equals(classType)) {
-      return Types.VARCHAR;
-    }
-
-    if(Double.class.equals(classType)) {
-      return Types.DOUBLE;
-    }
-
-    if(BigDecimal.class.equals(classType)) {
-      return Types.DECIMAL;
-    }
-
-    if(LocalTime.class.equals(classType)) {
-      return Types.OTHER;
-    }
-
-    throw new DaoException("Unsupported class type: " + classType.getName());
+    /*
+     * The setter for each class is created once and cached, so there is no type check per call.
+     * For statements executed often, a StatementBinder binds all parameters in one call.
+     */
+    StatementBinder.setterFor(classType).set(stmt, parameterIndex, value);
   }
 
   /**
@@ -169,17 +157,22 @@ public abstract class DaoBase {
    * This returns the integer primary key value of the last row inserted into the given table. It
    * allows the ID to be inserted into the entity object after inserting it into the table.
    * 
-   * The other way of doing this is to call {@link Statement#getGeneratedKeys()}, but this returns a
-   * result set that needs to be parsed for the ID. It's not really any easier than this approach
-   * but should be closer to database-agnostic.
+   * This costs an extra request to the database after every insert. Preparing the INSERT with
+   * {@link Statement#RETURN_GENERATED_KEYS} and reading {@link Statement#getGeneratedKeys()}
+   * avoids that: the key comes back with the INSERT's own response.
    * 
    * @param conn The connection
-   * @param table The name of the table on which to get the last inserted primary key value
+   * @param table The name of the table on which to get the last inserted primary key value. The
+   *        value is per connection, not per table, so this is only used in the error message.
    * @return The primary key value
    * @throws SQLException Thrown if an error occurs
    */
   protected Integer getLastInsertId(Connection conn, String table) throws SQLException {
-    String sql = String.format("SELECT LAST_INSERT_ID() FROM %s", table);
+    /*
+     * No FROM clause: "SELECT LAST_INSERT_ID() FROM table" would read the whole table and return
+     * the same value once per row.
+     */
+    String sql = "SELECT LAST_INSERT_ID()";
 
     try(Statement stmt = conn.createStatement()) {
       try(ResultSet rs = stmt.executeQuery(sql)) {
@@ -187,7 +180,8 @@ public abstract class DaoBase {
           return rs.getInt(1);
         }
 
-        throw new SQLException("Unable to retrieve the primary key value. No result set!");
+        throw new SQLException("Unable to retrieve the primary key value for " + table
+            + ". No result set!");
       }
     }
   }
@@ -224,6 +218,10 @@ public abstract class DaoBase {
    * Since the result set does not contain a column named "ingredients", the value is left alone and
    * the list initialization is preserved.
    * 
+   * This looks up the constructor and fields with reflection for every row. For entities marked
+   * with {@link provided.util.mapper.GenerateRowMapper}, use the row mapper generated at build time
+   * instead: it does the same work without reflection.
+   * 
    * @param <T> The Generic for the type of object to create and return.
    * @param rs The result set in which to extract values. The result set must be positioned on the
    *        correct row by the caller.
@@ -0,0 +1,24 @@
+/**
+ * 
+ */
+package provided.util.mapper;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity class for which {@link RowMapperProcessor} generates a {@link RowMapper} at
+ * build time. For class Recipe in package a.b, the generated class is a.b.RecipeRowMapper, with a
+ * single instance in RecipeRowMapper.INSTANCE.
+ * 
+ * Every field of a supported type that has a public setter is mapped from the column with the
+ * same name in snake case (numServings -> num_servings). Other fields, like lists of child
+ * entities, are left alone. A record is built with its canonical constructor, every component
+ * read from its snake-case column (null if the result set does not have that column).
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateRowMapper {
+}
@@ -0,0 +1,19 @@
+/**
+ * 
+ */
+package provided.util.mapper;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a public, zero-argument method of a {@link GenerateRowMapper} entity that the generated
+ * mapper calls after it has set all values from a row. Use it to reset state the setters change,
+ * such as change tracking.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.METHOD)
+public @interface PostLoad {
+}
@@ -0,0 +1,79 @@
+/**
+ * 
+ */
+package provided.util.mapper;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Builds entity objects from result set rows. Implementations are generated at build time by
+ * {@link RowMapperProcessor} for classes marked with {@link GenerateRowMapper}, so no reflection is
+ * used at run time.
+ * 
+ * Typical use:
+ * 
+ * <pre>
+ * RowReader&lt;Recipe&gt; reader = RecipeRowMapper.INSTANCE.reader(rs);
+ * 
+ * while(rs.next()) {
+ *   recipes.add(reader.read(rs));
+ * }
+ * </pre>
+ * 
+ * @param <T> The entity type
+ */
+public interface RowMapper<T> {
+
+  /**
+   * Creates a reader for one result set. The column positions are looked up here, once, so
+   * reading a row only accesses columns by index.
+   * 
+   * @param rs The result set
+   * @return A reader for the rows of this result set
+   * @throws SQLException Thrown if the result set metadata cannot be read.
+   */
+  RowReader<T> reader(ResultSet rs) throws SQLException;
+
+  /**
+   * Reads the current row of the result set it was created for.
+   * 
+   * @param <T> The entity type
+   */
+  @FunctionalInterface
+  interface RowReader<T> {
+    /**
+     * @param rs The result set, positioned on a row by the caller
+     * @return A new, populated object
+     * @throws SQLException Thrown if an error occurs.
+     */
+    T read(ResultSet rs) throws SQLException;
+  }
+
+  /**
+   * Finds the one-based position of each column in a result set. A column that is not in the
+   * result set gets position 0, and the generated mapper leaves its field unchanged.
+   * 
+   * @param rs The result set
+   * @param columns The column names (lower case)
+   * @return The positions, in the same order as the names
+   * @throws SQLException Thrown if the result set metadata cannot be read.
+   */
+  static int[] columnIndexes(ResultSet rs, String... columns) throws SQLException {
+    ResultSetMetaData meta = rs.getMetaData();
+    int[] indexes = new int[columns.length];
+
+    for(int col = meta.getColumnCount(); col >= 1; col--) {
+      String label = meta.getColumnLabel(col).toLowerCase();
+
+      for(int i = 0; i < columns.length; i++) {
+        if(columns[i].equals(label)) {
+          indexes[i] = col; // counting down, so the first matching column wins
+        }
+      }
+    }
+
+    return indexes;
+  }
+}
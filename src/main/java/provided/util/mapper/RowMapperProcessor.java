@@ -0,0 +1,250 @@
+/**
+ * 
+ */
+package provided.util.mapper;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.RecordComponentElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+/**
+ * This annotation processor runs while the application is compiled. For every class marked
+ * with {@link GenerateRowMapper} it writes the source of a {@link RowMapper} that creates the
+ * object with its zero-argument constructor and sets each mapped field through its setter,
+ * reading the column by position with ResultSet.getObject(int, Class). For a record it reads
+ * every component the same way and calls the canonical constructor.
+ *
+ * Everything that DaoBase.extract works out with reflection on every call (the list of fields,
+ * the snake-case column names, the constructor) is worked out here, once, at build time.
+ *
+ * The processor must be compiled before the classes that use it; see the compiler executions in
+ * pom.xml.
+ */
+@SupportedAnnotationTypes({"provided.util.mapper.GenerateRowMapper",
+    "provided.util.mapper.PostLoad"})
+public class RowMapperProcessor extends AbstractProcessor {
+
+  /*
+   * The field types that can be read with ResultSet.getObject(int, Class). Anything else (lists
+   * of children, for example) is not mapped.
+   */
+  private static final Set<String> SUPPORTED_TYPES = Set.of("java.lang.String",
+      "java.lang.Integer", "java.lang.Long", "java.lang.Double", "java.lang.Boolean",
+      "java.math.BigDecimal", "java.time.LocalDateTime", "java.time.LocalTime", "byte[]");
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for(Element element : roundEnv.getElementsAnnotatedWith(GenerateRowMapper.class)) {
+      if(element.getKind() != ElementKind.CLASS && element.getKind() != ElementKind.RECORD) {
+        error(element, "@GenerateRowMapper can only be used on a class or a record");
+        continue;
+      }
+
+      try {
+        generate((TypeElement)element);
+      }
+      catch(IOException e) {
+        error(element, "Unable to write the row mapper: " + e.getMessage());
+      }
+    }
+
+    return true;
+  }
+
+  private void generate(TypeElement entity) throws IOException {
+    String packageName = packageOf(entity).getQualifiedName().toString();
+    String entityName = entity.getSimpleName().toString();
+    String mapperName = entityName + "RowMapper";
+
+    boolean isRecord = entity.getKind() == ElementKind.RECORD;
+    List<String[]> mappings = new ArrayList<>(); // {column, setter, type}
+    String postLoad = null;
+
+    for(RecordComponentElement component : entity.getRecordComponents()) {
+      String type = component.asType().toString();
+
+      if(!SUPPORTED_TYPES.contains(type)) {
+        error(component, "Unsupported record component type for a row mapper: " + type);
+      }
+
+      mappings.add(new String[] {camelCaseToSnakeCase(component.getSimpleName().toString()),
+          null, type});
+    }
+
+    for(Element member : entity.getEnclosedElements()) {
+      if(!isRecord && member.getKind() == ElementKind.FIELD
+          && !member.getModifiers().contains(Modifier.STATIC)) {
+        VariableElement field = (VariableElement)member;
+        String type = field.asType().toString();
+        String setter = "set" + capitalize(field.getSimpleName().toString());
+
+        if(SUPPORTED_TYPES.contains(type) && hasSetter(entity, setter, field.asType())) {
+          mappings.add(new String[] {camelCaseToSnakeCase(field.getSimpleName().toString()),
+              setter, type});
+        }
+      }
+      else if(member.getKind() == ElementKind.METHOD
+          && member.getAnnotation(PostLoad.class) != null) {
+        ExecutableElement method = (ExecutableElement)member;
+
+        if(!method.getParameters().isEmpty() || !method.getModifiers().contains(Modifier.PUBLIC)) {
+          error(member, "@PostLoad methods must be public and take no arguments");
+        }
+
+        postLoad = method.getSimpleName().toString();
+      }
+    }
+
+    StringBuilder src = new StringBuilder();
+    src.append("package ").append(packageName).append(";\n\n");
+    src.append("import java.sql.ResultSet;\n");
+    src.append("import java.sql.SQLException;\n");
+    src.append("import javax.annotation.processing.Generated;\n");
+    src.append("import provided.util.mapper.RowMapper;\n\n");
+    src.append("/**\n * Maps result set rows to {@link ").append(entityName)
+        .append("} objects. Generated from the fields of ").append(entityName)
+        .append("; do not edit.\n */\n");
+    src.append("@Generated(\"").append(RowMapperProcessor.class.getName()).append("\")\n");
+    src.append("public final class ").append(mapperName).append(" implements RowMapper<")
+        .append(entityName).append("> {\n");
+    src.append("  public static final ").append(mapperName).append(" INSTANCE = new ")
+        .append(mapperName).append("();\n\n");
+
+    src.append("  /** The mapped columns, in the order used below. */\n");
+    src.append("  public static final String[] COLUMNS = {");
+    for(int i = 0; i < mappings.size(); i++) {
+      src.append(i == 0 ? "" : ", ").append('"').append(mappings.get(i)[0]).append('"');
+    }
+    src.append("};\n\n");
+
+    src.append("  private ").append(mapperName).append("() {\n  }\n\n");
+
+    src.append("  @Override\n");
+    src.append("  public RowReader<").append(entityName)
+        .append("> reader(ResultSet rs) throws SQLException {\n");
+    src.append("    int[] index = RowMapper.columnIndexes(rs, COLUMNS);\n\n");
+    src.append("    return row -> {\n");
+
+    if(isRecord) {
+      // A column that is not in the result set gives null
+      for(int i = 0; i < mappings.size(); i++) {
+        String type = mappings.get(i)[2];
+        src.append("      ").append(type).append(" v").append(i).append(" = index[").append(i)
+            .append("] > 0 ? row.getObject(index[").append(i).append("], ").append(type)
+            .append(".class) : null;\n");
+      }
+
+      src.append("      return new ").append(entityName).append('(');
+      for(int i = 0; i < mappings.size(); i++) {
+        src.append(i == 0 ? "" : ", ").append('v').append(i);
+      }
+      src.append(");\n");
+    }
+    else {
+      src.append("      ").append(entityName).append(" obj = new ").append(entityName)
+          .append("();\n");
+
+      for(int i = 0; i < mappings.size(); i++) {
+        String[] mapping = mappings.get(i);
+        String varName = "v" + i;
+        src.append("      if(index[").append(i).append("] > 0) {\n");
+        src.append("        ").append(mapping[2]).append(' ').append(varName)
+            .append(" = row.getObject(index[").append(i).append("], ").append(mapping[2])
+            .append(".class);\n");
+        src.append("        if(").append(varName).append(" != null) {\n");
+        src.append("          obj.").append(mapping[1]).append('(').append(varName)
+            .append(");\n");
+        src.append("        }\n");
+        src.append("      }\n");
+      }
+
+      if(postLoad != null) {
+        src.append("      obj.").append(postLoad).append("();\n");
+      }
+
+      src.append("      return obj;\n");
+    }
+
+    src.append("    };\n");
+    src.append("  }\n");
+    src.append("}\n");
+
+    String qualifiedName = packageName.isEmpty() ? mapperName : packageName + "." + mapperName;
+
+    try(Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, entity)
+        .openWriter()) {
+      writer.write(src.toString());
+    }
+  }
+
+  private boolean hasSetter(TypeElement entity, String setter, TypeMirror type) {
+    for(Element member : entity.getEnclosedElements()) {
+      if(member.getKind() == ElementKind.METHOD && member.getSimpleName().contentEquals(setter)
+          && member.getModifiers().contains(Modifier.PUBLIC)) {
+        List<? extends VariableElement> params = ((ExecutableElement)member).getParameters();
+
+        if(params.size() == 1
+            && processingEnv.getTypeUtils().isSameType(params.get(0).asType(), type)) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  private PackageElement packageOf(Element element) {
+    while(!(element instanceof PackageElement)) {
+      element = element.getEnclosingElement();
+    }
+
+    return (PackageElement)element;
+  }
+
+  private void error(Element element, String message) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+  }
+
+  private static String capitalize(String name) {
+    return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+  }
+
+  /*
+   * The same conversion DaoBase uses at run time: rowInsertTime -> row_insert_time.
+   */
+  private static String camelCaseToSnakeCase(String identifier) {
+    StringBuilder nameBuilder = new StringBuilder();
+
+    for(char ch : identifier.toCharArray()) {
+      if(Character.isUpperCase(ch)) {
+        nameBuilder.append('_').append(Character.toLowerCase(ch));
+      }
+      else {
+        nameBuilder.append(ch);
+      }
+    }
+
+    return nameBuilder.toString();
+  }
+}
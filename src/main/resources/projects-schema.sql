@@ -1,3 +1,4 @@
+DROP TABLE IF EXISTS project_change;
 DROP TABLE IF EXISTS project_category;
 DROP TABLE IF EXISTS material;
 DROP TABLE IF EXISTS step;
@@ -11,7 +12,11 @@ CREATE TABLE project (
   actual_hours DECIMAL(7, 2),
   difficulty INT,
   notes TEXT,
-  PRIMARY KEY (project_id)
+  notes_gz MEDIUMBLOB,       -- very long notes, gzip-compressed (then notes is NULL)
+  version INT NOT NULL DEFAULT 0,
+  updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (project_id),
+  KEY (updated_at, project_id)
 );
 
 CREATE TABLE category (
@@ -24,8 +29,9 @@ CREATE TABLE step (
   step_id INT AUTO_INCREMENT NOT NULL,
   project_id INT NOT NULL,
   step_text TEXT NOT NULL,
-  step_order INT NOT NULL,
+  step_order INT NOT NULL,   -- gap-based rank (1024, 2048, ...); only the order matters
   PRIMARY KEY (step_id),
+  KEY (project_id, step_order),
   FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE
 );
 
@@ -45,4 +51,33 @@ CREATE TABLE project_category (
   FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE,
   FOREIGN KEY (category_id) REFERENCES category (category_id) ON DELETE CASCADE,
   UNIQUE KEY (project_id, category_id)
-);
\ No newline at end of file
+);
+
+-- A change to a step, material or category link also counts as a change to its project
+CREATE TRIGGER step_insert_touch AFTER INSERT ON step FOR EACH ROW
+  UPDATE project SET updated_at = CURRENT_TIMESTAMP(3) WHERE project_id = NEW.project_id;
+CREATE TRIGGER step_update_touch AFTER UPDATE ON step FOR EACH ROW
+  UPDATE project SET updated_at = CURRENT_TIMESTAMP(3) WHERE project_id = NEW.project_id;
+CREATE TRIGGER step_delete_touch AFTER DELETE ON step FOR EACH ROW
+  UPDATE project SET updated_at = CURRENT_TIMESTAMP(3) WHERE project_id = OLD.project_id;
+
+CREATE TRIGGER material_insert_touch AFTER INSERT ON material FOR EACH ROW
+  UPDATE project SET updated_at = CURRENT_TIMESTAMP(3) WHERE project_id = NEW.project_id;
+CREATE TRIGGER material_update_touch AFTER UPDATE ON material FOR EACH ROW
+  UPDATE project SET updated_at = CURRENT_TIMESTAMP(3) WHERE project_id = NEW.project_id;
+CREATE TRIGGER material_delete_touch AFTER DELETE ON material FOR EACH ROW
+  UPDATE project SET updated_at = CURRENT_TIMESTAMP(3) WHERE project_id = OLD.project_id;
+
+CREATE TRIGGER project_category_insert_touch AFTER INSERT ON project_category FOR EACH ROW
+  UPDATE project SET updated_at = CURRENT_TIMESTAMP(3) WHERE project_id = NEW.project_id;
+CREATE TRIGGER project_category_delete_touch AFTER DELETE ON project_category FOR EACH ROW
+  UPDATE project SET updated_at = CURRENT_TIMESTAMP(3) WHERE project_id = OLD.project_id;
+
+CREATE TABLE project_change (
+  change_id BIGINT AUTO_INCREMENT NOT NULL,
+  project_id INT NOT NULL,
+  change_type VARCHAR(16) NOT NULL,
+  changed_fields VARCHAR(255),
+  created_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (change_id)
+);
@@ -0,0 +1,35 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Where the gap check in ProjectDao.fetchChangesSince expects each shard's next change ID.
+ * A change before that ID that is not settled yet holds the replay back.
+ */
+class ChangeReplayTest {
+
+  @Test
+  void fromTheStartEachShardExpectsItsFirstId() {
+    assertEquals(1, ProjectDao.firstChangeIdAfter(0, 0, 1));
+    assertEquals(1, ProjectDao.firstChangeIdAfter(0, 0, 3));
+    assertEquals(2, ProjectDao.firstChangeIdAfter(1, 0, 3));
+    assertEquals(3, ProjectDao.firstChangeIdAfter(2, 0, 3));
+  }
+
+  @Test
+  void afterAChangeTheShardExpectsItsNextId() {
+    assertEquals(8, ProjectDao.firstChangeIdAfter(0, 7, 1));
+    assertEquals(10, ProjectDao.firstChangeIdAfter(0, 7, 3)); // shard 0 has 1, 4, 7, 10
+    assertEquals(8, ProjectDao.firstChangeIdAfter(1, 5, 3)); // shard 1 has 2, 5, 8
+    assertEquals(6, ProjectDao.firstChangeIdAfter(2, 3, 3)); // shard 2 has 3, 6, 9
+  }
+
+  @Test
+  void aCursorBetweenIdsOfTheShardMovesToTheNextOne() {
+    // A cursor only ever holds the shard's own IDs, but an odd value must not skip one
+    assertEquals(4, ProjectDao.firstChangeIdAfter(0, 2, 3));
+    assertEquals(5, ProjectDao.firstChangeIdAfter(1, 3, 3));
+  }
+}
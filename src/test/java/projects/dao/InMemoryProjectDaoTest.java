@@ -0,0 +1,71 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Project;
+import projects.entity.ProjectChange;
+import projects.exception.ChangeCursorExpiredException;
+
+/**
+ * InMemoryProjectDao: the repository contract, and its change log. Callers get copies, and a
+ * cursor older than the kept changes is reported instead of skipped over.
+ */
+class InMemoryProjectDaoTest extends ProjectRepositoryContract {
+
+  @Override
+  protected ProjectRepository newStore() {
+    return new InMemoryProjectDao();
+  }
+
+  @Test
+  void changesAreCopies() {
+    InMemoryProjectDao store = new InMemoryProjectDao();
+    store.insertProject(newProject("Shelf"));
+
+    ProjectChange change = store.fetchChangesSince(ChangeCursor.START, 10).get(0);
+    change.setChangedFields("changed by the caller");
+
+    assertNotEquals("changed by the caller",
+        store.fetchChangesSince(ChangeCursor.START, 10).get(0).getChangedFields());
+  }
+
+  @Test
+  void expiredCursorIsReportedWithWhereToResume() {
+    InMemoryProjectDao store = new InMemoryProjectDao();
+    Project project = store.insertProject(newProject("Shelf"));
+    project.setVersion(null);
+
+    // Enough updates that the oldest changes are dropped from the log
+    for (int i = 0; i < 2 * InMemoryProjectDao.MAX_CHANGES; i++) {
+      project.setProjectName("Shelf " + i);
+      store.modifyProjectDetails(project);
+    }
+
+    ChangeCursorExpiredException e = assertThrows(ChangeCursorExpiredException.class,
+        () -> store.fetchChangesSince(ChangeCursor.START, 10));
+
+    List<ProjectChange> resumed = store.fetchChangesSince(e.resyncFrom(), 1);
+    assertEquals(e.resyncFrom().highest() + 1, resumed.get(0).getChangeId());
+  }
+
+  @Test
+  void recentCursorStillReads() {
+    InMemoryProjectDao store = new InMemoryProjectDao();
+    Project project = store.insertProject(newProject("Shelf"));
+    project.setVersion(null);
+
+    for (int i = 0; i < 2 * InMemoryProjectDao.MAX_CHANGES; i++) {
+      project.setProjectName("Shelf " + i);
+      store.modifyProjectDetails(project);
+    }
+
+    ChangeCursor recent = new ChangeCursor(List.of((long)(2 * InMemoryProjectDao.MAX_CHANGES)));
+    assertEquals(1, store.fetchChangesSince(recent, 10).size()); // the newest change
+  }
+}
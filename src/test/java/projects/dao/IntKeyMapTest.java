@@ -0,0 +1,134 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * IntKeyMap against a HashMap doing the same operations. Deletes use backward shifting, so
+ * a wrong shift shows up as a key that can no longer be found.
+ */
+class IntKeyMapTest {
+
+  @Test
+  void putGetRemove() {
+    IntKeyMap<String> map = new IntKeyMap<>();
+
+    assertNull(map.put(7, "a"));
+    assertEquals("a", map.put(7, "b"));
+    assertEquals("b", map.get(7));
+    assertEquals(1, map.size());
+
+    assertEquals("b", map.remove(7));
+    assertNull(map.get(7));
+    assertNull(map.remove(7));
+    assertEquals(0, map.size());
+  }
+
+  @Test
+  void negativeKeysWorkAndKeyZeroIsRejected() {
+    IntKeyMap<String> map = new IntKeyMap<>();
+    map.put(-5, "minus five");
+
+    assertEquals("minus five", map.get(-5));
+    assertThrows(IllegalArgumentException.class, () -> map.put(0, "zero"));
+  }
+
+  @Test
+  void computeReturningNullRemovesTheKey() {
+    IntKeyMap<Integer> map = new IntKeyMap<>();
+    map.put(3, 1);
+
+    assertEquals(1, map.compute(3, old -> old + 1));
+    assertEquals(2, map.get(3));
+    map.compute(3, old -> null);
+    assertNull(map.get(3));
+  }
+
+  @Test
+  void randomOperationsMatchAHashMap() {
+    IntKeyMap<Integer> map = new IntKeyMap<>();
+    Map<Integer, Integer> expected = new HashMap<>();
+    Random random = new Random(42);
+
+    // Few distinct keys and many operations: long probe runs, grown tables and many deletes
+    for (int i = 0; i < 200_000; i++) {
+      int key = random.nextInt(1, 5_000);
+
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(key), map.remove(key));
+      } else {
+        assertEquals(expected.put(key, i), map.put(key, i));
+      }
+    }
+
+    assertEquals(expected.size(), map.size());
+    for (int key = 1; key < 5_000; key++) {
+      assertEquals(expected.get(key), map.get(key), "key " + key);
+    }
+
+    List<Integer> values = new ArrayList<>();
+    map.forEach(values::add);
+    assertEquals(expected.size(), values.size());
+  }
+
+  @Test
+  void removingEveryOtherKeyKeepsTheRestReachable() {
+    IntKeyMap<Integer> map = new IntKeyMap<>();
+
+    for (int key = 1; key <= 50_000; key++) {
+      map.put(key, key);
+    }
+    for (int key = 2; key <= 50_000; key += 2) {
+      map.remove(key);
+    }
+
+    assertEquals(25_000, map.size());
+    for (int key = 1; key <= 50_000; key++) {
+      assertEquals(key % 2 == 1 ? key : null, map.get(key), "key " + key);
+    }
+  }
+
+  @Test
+  void concurrentWritersOnDifferentKeysLoseNothing() throws Exception {
+    IntKeyMap<Integer> map = new IntKeyMap<>();
+    int threads = 8;
+    int keysEach = 20_000;
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<?>> done = new ArrayList<>();
+
+    for (int t = 0; t < threads; t++) {
+      int first = t * keysEach + 1;
+      done.add(pool.submit(() -> {
+        for (int key = first; key < first + keysEach; key++) {
+          map.put(key, key);
+        }
+        for (int key = first; key < first + keysEach; key += 4) {
+          map.remove(key);
+        }
+        return null;
+      }));
+    }
+
+    for (Future<?> future : done) {
+      future.get();
+    }
+    pool.shutdown();
+
+    assertEquals(threads * keysEach * 3 / 4, map.size());
+    for (int key = 1; key <= threads * keysEach; key++) {
+      assertEquals((key - 1) % 4 == 0 ? null : key, map.get(key), "key " + key);
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import projects.entity.Project;
+import projects.exception.DbException;
+
+/**
+ * MappedProjectDao: the repository contract, and the file. It keeps what was committed across a
+ * reopen, ignores what was not, and compacts without losing live projects.
+ */
+class MappedProjectDaoTest extends ProjectRepositoryContract {
+  private static final int END_AT = 24; // committed end, in the file header
+
+  @TempDir
+  Path dir;
+
+  @Override
+  protected ProjectRepository newStore() {
+    return new MappedProjectDao(dir.resolve("contract.db"));
+  }
+
+  @Test
+  void reopeningRestoresCommittedProjects() {
+    Path file = dir.resolve("projects.db");
+    Integer keptId;
+
+    try (MappedProjectDao store = new MappedProjectDao(file)) {
+      Project kept = store.insertProject(newProject("Shelf", "notes"));
+      Project deleted = store.insertProject(newProject("Bench", null));
+      kept.setProjectName("Bookshelf");
+      assertEquals(UpdateResult.UPDATED, store.modifyProjectDetails(kept));
+      store.deleteProject(deleted.getProjectId());
+      keptId = kept.getProjectId();
+    }
+
+    try (MappedProjectDao store = new MappedProjectDao(file)) {
+      List<Project> projects = store.fetchAllProjects();
+      assertEquals(1, projects.size());
+
+      Project kept = store.fetchProjectById(keptId).orElseThrow();
+      assertEquals("Bookshelf", kept.getProjectName());
+      assertEquals("notes", kept.getNotes());
+      assertEquals(1, kept.getVersion());
+
+      // IDs are not handed out twice after a reopen
+      assertEquals(keptId + 2, store.insertProject(newProject("Stool", null)).getProjectId());
+    }
+  }
+
+  @Test
+  void bytesPastTheCommittedEndAreIgnored() throws IOException {
+    Path file = dir.resolve("projects.db");
+
+    try (MappedProjectDao store = new MappedProjectDao(file)) {
+      store.insertProject(newProject("Shelf", null));
+    }
+
+    // A crash in the middle of a write: a half-written record after the committed end
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(8);
+      channel.read(header, END_AT);
+      long end = header.flip().getLong();
+      channel.write(ByteBuffer.wrap(new byte[] {0, 0, 1, 0, 42, 42, 42}), end);
+    }
+
+    try (MappedProjectDao store = new MappedProjectDao(file)) {
+      assertEquals(1, store.fetchAllProjects().size());
+      store.insertProject(newProject("Bench", null)); // overwrites the leftover bytes
+    }
+
+    try (MappedProjectDao store = new MappedProjectDao(file)) {
+      assertEquals(2, store.fetchAllProjects().size());
+    }
+  }
+
+  @Test
+  void damagedCommittedRecordIsReported() throws IOException {
+    Path file = dir.resolve("projects.db");
+
+    try (MappedProjectDao store = new MappedProjectDao(file)) {
+      store.insertProject(newProject("Shelf", null));
+    }
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {-1}), 64 + 30); // inside the first record
+    }
+
+    assertThrows(DbException.class, () -> new MappedProjectDao(file));
+  }
+
+  @Test
+  void compactionDropsOldVersionsAndKeepsLiveProjects() throws IOException {
+    Path file = dir.resolve("projects.db");
+    String notes = "x".repeat(10_000);
+    Integer projectId;
+
+    try (MappedProjectDao store = new MappedProjectDao(file)) {
+      Project project = store.insertProject(newProject("Shelf", notes));
+      projectId = project.getProjectId();
+
+      // Old versions of one project: about 3 MB, far more than its live record
+      for (int i = 0; i < 300; i++) {
+        project.setProjectName("Shelf " + i);
+        store.modifyProjectDetails(project);
+      }
+
+      assertTrue(Files.size(file) < 300 * notes.length(), "compacted automatically");
+
+      store.compact(); // on request as well
+      assertEquals("Shelf 299", store.fetchProjectById(projectId).orElseThrow().getProjectName());
+    }
+
+    assertFalse(Files.exists(dir.resolve("projects.db.compact")));
+
+    try (MappedProjectDao store = new MappedProjectDao(file)) {
+      Project project = store.fetchProjectById(projectId).orElseThrow();
+      assertEquals("Shelf 299", project.getProjectName());
+      assertEquals(notes, project.getNotes());
+      assertEquals(300, project.getVersion());
+    }
+  }
+
+  @Test
+  void failedCompactionIsReportedAndTheStoreStaysUsable() throws IOException {
+    Path file = dir.resolve("projects.db");
+    Path blocker = dir.resolve("projects.db.compact");
+
+    try (MappedProjectDao store = new MappedProjectDao(file)) {
+      store.insertProject(newProject("Shelf", null));
+
+      Files.createDirectories(blocker.resolve("in-the-way")); // the new file cannot be created
+      assertThrows(DbException.class, store::compact);
+
+      store.insertProject(newProject("Bench", null));
+      assertEquals(2, store.fetchAllProjects().size());
+
+      Files.delete(blocker.resolve("in-the-way"));
+      Files.delete(blocker);
+    }
+
+    try (MappedProjectDao store = new MappedProjectDao(file)) {
+      assertEquals(2, store.fetchAllProjects().size());
+    }
+  }
+
+  @Test
+  void leftoverCompactionFileIsRemovedOnOpen() throws IOException {
+    Path file = dir.resolve("projects.db");
+    Path leftover = dir.resolve("projects.db.compact");
+    Files.write(leftover, new byte[] {1, 2, 3});
+
+    try (MappedProjectDao store = new MappedProjectDao(file)) {
+      assertTrue(store.fetchAllProjects().isEmpty());
+    }
+
+    assertFalse(Files.exists(leftover));
+  }
+
+  private static Project newProject(String name, String notes) {
+    Project project = new Project();
+    project.setProjectName(name);
+    project.setNotes(notes);
+    return project;
+  }
+}
@@ -0,0 +1,120 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Project;
+import projects.entity.ProjectChange;
+import projects.entity.ProjectChange.ChangeType;
+
+/**
+ * What every ProjectRepository must do the same way, so the service works on any of them.
+ * Each store's test class extends this one and says how to open the store.
+ */
+abstract class ProjectRepositoryContract {
+  protected ProjectRepository store;
+
+  /**
+   * @return a new, empty store
+   */
+  protected abstract ProjectRepository newStore();
+
+  @BeforeEach
+  void openStore() {
+    store = newStore();
+  }
+
+  @AfterEach
+  void closeStore() throws Exception {
+    if (store instanceof AutoCloseable closeable) {
+      closeable.close();
+    }
+  }
+
+  @Test
+  void insertAssignsIdsAndTheFirstVersion() {
+    Project first = store.insertProject(newProject("Shelf"));
+    Project second = store.insertProject(newProject("Bench"));
+
+    assertEquals(first.getProjectId() + 1, second.getProjectId());
+    assertEquals(0, first.getVersion());
+    assertEquals(List.of(first.getProjectId(), second.getProjectId()),
+        store.fetchAllProjects().stream().map(Project::getProjectId).toList());
+  }
+
+  @Test
+  void missingProjectsAreReportedNotThrown() {
+    Project ghost = newProject("Ghost");
+    ghost.setProjectId(999);
+
+    assertTrue(store.fetchProjectById(999).isEmpty());
+    assertEquals(UpdateResult.NOT_FOUND, store.modifyProjectDetails(ghost));
+    assertFalse(store.deleteProject(999));
+  }
+
+  @Test
+  void updateWritesOnlyModifiedFields() {
+    Project project = newProject("Shelf");
+    project.setEstimatedHours(new BigDecimal("4.00"));
+    Integer projectId = store.insertProject(project).getProjectId();
+
+    Project edit = new Project();
+    edit.setProjectId(projectId);
+    edit.setDifficulty(3);
+    assertEquals(UpdateResult.UPDATED, store.modifyProjectDetails(edit));
+
+    Project saved = store.fetchProjectById(projectId).orElseThrow();
+    assertEquals("Shelf", saved.getProjectName());
+    assertEquals(new BigDecimal("4.00"), saved.getEstimatedHours());
+    assertEquals(3, saved.getDifficulty());
+    assertEquals(1, saved.getVersion());
+  }
+
+  @Test
+  void staleVersionConflicts() {
+    Integer projectId = store.insertProject(newProject("Shelf")).getProjectId();
+    Project first = store.fetchProjectById(projectId).orElseThrow();
+    Project second = store.fetchProjectById(projectId).orElseThrow();
+
+    first.setProjectName("Bookshelf");
+    second.setProjectName("Shoe rack");
+
+    assertEquals(UpdateResult.UPDATED, store.modifyProjectDetails(first));
+    assertEquals(UpdateResult.CONFLICT, store.modifyProjectDetails(second));
+  }
+
+  @Test
+  void fetchedProjectsAreNotTheStoredOnes() {
+    Integer projectId = store.insertProject(newProject("Shelf")).getProjectId();
+    store.fetchProjectById(projectId).orElseThrow().setProjectName("Changed without saving");
+
+    assertEquals("Shelf", store.fetchProjectById(projectId).orElseThrow().getProjectName());
+  }
+
+  @Test
+  void everyWriteIsInTheChangeFeed() {
+    Project project = store.insertProject(newProject("Shelf"));
+    project.setProjectName("Bookshelf");
+    store.modifyProjectDetails(project);
+    store.deleteProject(project.getProjectId());
+
+    List<ProjectChange> changes = store.fetchChangesSince(ChangeCursor.START, 10);
+    assertEquals(List.of(ChangeType.INSERT, ChangeType.UPDATE, ChangeType.DELETE),
+        changes.stream().map(ProjectChange::getChangeType).toList());
+    assertTrue(store.fetchChangesSince(ChangeCursor.START.after(changes.get(2)), 10).isEmpty());
+  }
+
+  protected static Project newProject(String name) {
+    Project project = new Project();
+    project.setProjectName(name);
+    return project;
+  }
+}
@@ -0,0 +1,154 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import projects.exception.ServiceOverloadedException;
+import projects.service.AdmissionController.Operation;
+
+/**
+ * AdmissionController: the line is first come, first served, a full line or a long wait is
+ * turned away, and the limit goes down on slow requests and back up on fast ones.
+ */
+class AdmissionControllerTest {
+  private final ExecutorService pool = Executors.newCachedThreadPool();
+
+  @AfterEach
+  void stopPool() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  void waitingRequestsAreLetInInArrivalOrder() throws Exception {
+    AdmissionController admission = new AdmissionController(1, 10, Duration.ofSeconds(5));
+    CountDownLatch release = new CountDownLatch(1);
+    List<Integer> order = new CopyOnWriteArrayList<>();
+    List<Future<?>> calls = new ArrayList<>();
+
+    calls.add(pool.submit(() -> admission.call(Operation.SELECT, () -> await(release))));
+    waitUntil(() -> stats(admission).inFlight() == 1);
+
+    for (int i = 0; i < 5; i++) {
+      int position = i;
+      calls.add(pool.submit(() -> admission.call(Operation.SELECT, () -> order.add(position))));
+      waitUntil(() -> stats(admission).queued() == position + 1); // in line before the next
+    }
+
+    release.countDown();
+    for (Future<?> call : calls) {
+      call.get(5, TimeUnit.SECONDS);
+    }
+
+    assertEquals(List.of(0, 1, 2, 3, 4), order);
+  }
+
+  @Test
+  void fullLineIsRejectedRightAway() throws Exception {
+    AdmissionController admission = new AdmissionController(1, 0, Duration.ofSeconds(5));
+    CountDownLatch release = new CountDownLatch(1);
+
+    Future<?> holder = pool.submit(() -> admission.call(Operation.UPDATE, () -> await(release)));
+    waitUntil(() -> stats(admission, "update").inFlight() == 1);
+
+    assertThrows(ServiceOverloadedException.class,
+        () -> admission.call(Operation.UPDATE, () -> true));
+    assertEquals(1, stats(admission, "update").rejected());
+
+    // Other operations have limits of their own
+    assertTrue(admission.call(Operation.SELECT, () -> true));
+
+    release.countDown();
+    holder.get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void requestThatWaitsTooLongIsRejected() throws Exception {
+    AdmissionController admission = new AdmissionController(1, 1, Duration.ofMillis(50));
+    CountDownLatch release = new CountDownLatch(1);
+
+    Future<?> holder = pool.submit(() -> admission.call(Operation.SELECT, () -> await(release)));
+    waitUntil(() -> stats(admission).inFlight() == 1);
+
+    assertThrows(ServiceOverloadedException.class,
+        () -> admission.call(Operation.SELECT, () -> true));
+    assertEquals(1, stats(admission).timedOut());
+
+    release.countDown();
+    holder.get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void limitDropsOnSlowRequestsAndRecoversOnFastOnes() throws Exception {
+    AdmissionController admission = new AdmissionController(2, 10, Duration.ofSeconds(5));
+
+    admission.call(Operation.SELECT, () -> sleep(20)); // the usual latency: about 20 ms
+    assertEquals(2, stats(admission).limit());
+
+    // Both slots in use and both requests five times slower than usual: overload
+    Future<?> first = pool.submit(() -> admission.call(Operation.SELECT, () -> sleep(100)));
+    Future<?> second = pool.submit(() -> admission.call(Operation.SELECT, () -> sleep(100)));
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+    assertEquals(1, stats(admission).limit(), "cut by 10% once, not once per request");
+
+    // With one slot, every request finds it full: fast ones raise the limit again
+    admission.call(Operation.SELECT, () -> true);
+    assertEquals(2, stats(admission).limit());
+
+    for (int i = 0; i < 100; i++) {
+      admission.call(Operation.SELECT, () -> true);
+    }
+    assertEquals(2, stats(admission).limit(), "never above maxConcurrent");
+  }
+
+  private static AdmissionStats stats(AdmissionController admission) {
+    return stats(admission, "select");
+  }
+
+  private static AdmissionStats stats(AdmissionController admission, String operation) {
+    return admission.stats().stream()
+        .filter(stats -> stats.operation().equals(operation))
+        .findFirst().orElseThrow();
+  }
+
+  private static boolean await(CountDownLatch latch) {
+    try {
+      return latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static boolean sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+      return true;
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void waitUntil(Supplier<Boolean> condition) throws InterruptedException {
+    long giveUpAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+    while (!condition.get()) {
+      assertTrue(System.nanoTime() < giveUpAt, "timed out waiting");
+      Thread.sleep(1);
+    }
+  }
+}
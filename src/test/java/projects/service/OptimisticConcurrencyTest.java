@@ -0,0 +1,124 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.InMemoryProjectDao;
+import projects.dao.UpdateResult;
+import projects.entity.Project;
+import projects.exception.DbException;
+
+/**
+ * Version checks on modifyProjectDetails: an editor holding an old version never overwrites a
+ * newer save.
+ */
+class OptimisticConcurrencyTest {
+  private InMemoryProjectDao projectDao;
+  private ProjectService projectService;
+  private Integer projectId;
+
+  @BeforeEach
+  void addProject() {
+    projectDao = new InMemoryProjectDao();
+    projectService = new ProjectService(projectDao);
+
+    Project project = new Project();
+    project.setProjectName("Shelf");
+    project.setDifficulty(1);
+    projectId = projectService.addProject(project).getProjectId();
+  }
+
+  @Test
+  void secondEditorWithSameVersionGetsConflict() {
+    Project first = projectService.fetchProjectById(projectId);
+    Project second = projectService.fetchProjectById(projectId);
+
+    first.setProjectName("Bookshelf");
+    assertEquals(UpdateResult.UPDATED, projectDao.modifyProjectDetails(first));
+    assertEquals(first.getVersion(), second.getVersion() + 1, "the saver gets the new version");
+
+    second.setProjectName("Shoe rack");
+    assertEquals(UpdateResult.CONFLICT, projectDao.modifyProjectDetails(second));
+    assertEquals("Bookshelf", projectService.fetchProjectById(projectId).getProjectName());
+  }
+
+  @Test
+  void updateWithoutVersionIsNotChecked() {
+    Project edit = new Project();
+    edit.setProjectId(projectId);
+    edit.setDifficulty(4);
+
+    assertEquals(UpdateResult.UPDATED, projectDao.modifyProjectDetails(edit));
+    assertEquals(4, projectService.fetchProjectById(projectId).getDifficulty());
+  }
+
+  @Test
+  void failResolverReportsConflict() {
+    Project stale = projectService.fetchProjectById(projectId);
+    Project winner = projectService.fetchProjectById(projectId);
+    winner.setDifficulty(2);
+    projectService.modifyProjectDetails(winner);
+
+    stale.setDifficulty(3);
+    DbException e =
+        assertThrows(DbException.class, () -> projectService.modifyProjectDetails(stale));
+    assertTrue(e.getMessage().contains("changed by someone else"), e.getMessage());
+    assertEquals(2, projectService.fetchProjectById(projectId).getDifficulty());
+  }
+
+  @Test
+  void overwriteResolverRetriesOnLatestVersion() {
+    Project stale = projectService.fetchProjectById(projectId);
+    Project winner = projectService.fetchProjectById(projectId);
+    winner.setProjectName("Bookshelf");
+    projectService.modifyProjectDetails(winner);
+
+    stale.setDifficulty(5);
+    projectService.modifyProjectDetails(stale, ConflictResolver.OVERWRITE);
+
+    Project saved = projectService.fetchProjectById(projectId);
+    assertEquals("Bookshelf", saved.getProjectName()); // only the modified field is re-applied
+    assertEquals(5, saved.getDifficulty());
+  }
+
+  @Test
+  void concurrentReadModifyWriteLosesNoUpdates() throws Exception {
+    int threads = 8;
+    int incrementsEach = 50;
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<?>> done = new ArrayList<>();
+
+    for (int t = 0; t < threads; t++) {
+      done.add(pool.submit(() -> {
+        for (int i = 0; i < incrementsEach; i++) {
+          UpdateResult result;
+          do { // read, change, save; on a conflict read again
+            Project project = projectDao.fetchProjectById(projectId).orElseThrow();
+            project.setDifficulty(project.getDifficulty() + 1);
+            result = projectDao.modifyProjectDetails(project);
+          } while (result == UpdateResult.CONFLICT);
+        }
+        return null;
+      }));
+    }
+
+    for (Future<?> future : done) {
+      future.get();
+    }
+    pool.shutdown();
+
+    Project saved = projectDao.fetchProjectById(projectId).orElseThrow();
+    assertEquals(1 + threads * incrementsEach, saved.getDifficulty());
+    assertEquals(threads * incrementsEach, saved.getVersion());
+  }
+}
@@ -0,0 +1,136 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.ChangeCursor;
+import projects.dao.InMemoryProjectDao;
+import projects.entity.Project;
+import projects.entity.ProjectChange;
+import projects.entity.ProjectChange.ChangeType;
+
+/**
+ * The change feed: replay from a cursor, and the live stream.
+ */
+class ProjectChangeFeedTest {
+  private ProjectService projectService;
+
+  @BeforeEach
+  void createService() {
+    projectService = new ProjectService(new InMemoryProjectDao());
+  }
+
+  @Test
+  void replayReturnsEveryChangeInOrder() {
+    Project project = addProject("Shelf");
+    project.setProjectName("Bookshelf");
+    projectService.modifyProjectDetails(project);
+    projectService.deleteProject(project.getProjectId());
+
+    List<ProjectChange> changes = projectService.replayChanges(ChangeCursor.START, 10);
+
+    assertEquals(List.of(ChangeType.INSERT, ChangeType.UPDATE, ChangeType.DELETE),
+        changes.stream().map(ProjectChange::getChangeType).toList());
+    assertEquals(List.of(1L, 2L, 3L), changes.stream().map(ProjectChange::getChangeId).toList());
+  }
+
+  @Test
+  void cursorResumesAfterTheLastProcessedChange() {
+    for (int i = 0; i < 5; i++) {
+      addProject("Project " + i);
+    }
+
+    ChangeCursor cursor = ChangeCursor.START;
+    int read = 0;
+    List<ProjectChange> page;
+
+    while (!(page = projectService.replayChanges(cursor, 2)).isEmpty()) {
+      assertTrue(page.size() <= 2);
+      for (ProjectChange change : page) {
+        assertEquals(++read, change.getChangeId()); // no change skipped or seen twice
+        cursor = cursor.after(change);
+      }
+    }
+
+    assertEquals(5, read);
+  }
+
+  @Test
+  void liveSubscriberReceivesCommittedChanges() throws Exception {
+    List<ProjectChange> received = new CopyOnWriteArrayList<>();
+    CountDownLatch two = new CountDownLatch(2);
+
+    projectService.subscribeToChanges(new Flow.Subscriber<ProjectChange>() {
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(ProjectChange change) {
+        received.add(change);
+        two.countDown();
+      }
+
+      @Override
+      public void onError(Throwable e) {
+      }
+
+      @Override
+      public void onComplete() {
+      }
+    });
+
+    addProject("Shelf");
+    addProject("Bench");
+
+    assertTrue(two.await(5, TimeUnit.SECONDS));
+    assertEquals(2, received.size());
+  }
+
+  @Test
+  void slowSubscriberDoesNotHoldUpWriters() {
+    projectService.subscribeToChanges(new Flow.Subscriber<ProjectChange>() {
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        // never requests anything: its buffer fills up
+      }
+
+      @Override
+      public void onNext(ProjectChange change) {
+      }
+
+      @Override
+      public void onError(Throwable e) {
+      }
+
+      @Override
+      public void onComplete() {
+      }
+    });
+
+    int writes = 2000; // far more than the subscriber's buffer
+    for (int i = 0; i < writes; i++) {
+      addProject("Project " + i);
+    }
+
+    assertTrue(projectService.droppedChangeCount() > 0);
+    assertEquals(writes, projectService.replayChanges(ChangeCursor.START, writes + 1).size(),
+        "replay still has every change");
+  }
+
+  private Project addProject(String name) {
+    Project project = new Project();
+    project.setProjectName(name);
+    return projectService.addProject(project);
+  }
+}
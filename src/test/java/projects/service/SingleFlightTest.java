@@ -0,0 +1,142 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * SingleFlight: concurrent calls for one key share one load, and each gets its own copy.
+ */
+class SingleFlightTest {
+  private final SingleFlight<Integer, StringBuilder> flight =
+      new SingleFlight<>(StringBuilder::new);
+  private final ExecutorService pool = Executors.newCachedThreadPool();
+
+  @AfterEach
+  void stopPool() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  void concurrentCallsShareOneLoadButNotTheObject() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger loads = new AtomicInteger();
+    Supplier<StringBuilder> slowLoad = () -> {
+      loads.incrementAndGet();
+      await(release);
+      return new StringBuilder("project 1");
+    };
+
+    List<Future<StringBuilder>> calls = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      calls.add(pool.submit(() -> flight.load(1, slowLoad)));
+    }
+    waitUntil(() -> flight.stats().coalesced() == 4);
+    release.countDown();
+
+    List<StringBuilder> results = new ArrayList<>();
+    for (Future<StringBuilder> call : calls) {
+      results.add(call.get(5, TimeUnit.SECONDS));
+    }
+
+    assertEquals(1, loads.get());
+    assertEquals(1, flight.stats().loads());
+    assertEquals(5, results.stream().distinct().count(), "every caller has its own copy");
+    results.get(0).append(" changed");
+    assertEquals("project 1", results.get(1).toString());
+  }
+
+  @Test
+  void waitingCallsGetTheSameFailure() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    IllegalStateException failure = new IllegalStateException("database down");
+
+    Future<StringBuilder> first = pool.submit(() -> flight.load(1, () -> {
+      await(release);
+      throw failure;
+    }));
+    waitUntil(() -> flight.stats().inFlight() == 1);
+    Future<StringBuilder> second = pool.submit(() -> flight.load(1, StringBuilder::new));
+    waitUntil(() -> flight.stats().coalesced() == 1);
+    release.countDown();
+
+    assertSame(failure, causeOf(first));
+    assertSame(failure, causeOf(second));
+  }
+
+  @Test
+  void nothingIsCachedOnceTheLoadIsDone() {
+    AtomicInteger loads = new AtomicInteger();
+    Supplier<StringBuilder> load = () -> new StringBuilder("load " + loads.incrementAndGet());
+
+    assertEquals("load 1", flight.load(1, load).toString());
+    assertEquals("load 2", flight.load(1, load).toString());
+    assertEquals(0, flight.stats().coalesced());
+  }
+
+  @Test
+  void forgetLetsTheNextCallStartItsOwnLoad() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+
+    Future<StringBuilder> before = pool.submit(() -> flight.load(1, () -> {
+      await(release);
+      return new StringBuilder("before the write");
+    }));
+    waitUntil(() -> flight.stats().inFlight() == 1);
+
+    flight.forget(1); // a write happened
+    assertEquals("after the write", flight.load(1, () -> new StringBuilder("after the write"))
+        .toString());
+
+    release.countDown();
+    assertEquals("before the write", before.get(5, TimeUnit.SECONDS).toString());
+    assertEquals(0, flight.stats().coalesced());
+  }
+
+  @Test
+  void differentKeysDoNotShare() {
+    assertNotEquals(flight.load(1, () -> new StringBuilder("one")).toString(),
+        flight.load(2, () -> new StringBuilder("two")).toString());
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void waitUntil(Supplier<Boolean> condition) throws InterruptedException {
+    long giveUpAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+    while (!condition.get()) {
+      assertTrue(System.nanoTime() < giveUpAt, "timed out waiting");
+      Thread.sleep(1);
+    }
+  }
+
+  private static Throwable causeOf(Future<?> call) throws Exception {
+    try {
+      call.get(5, TimeUnit.SECONDS);
+      throw new AssertionError("expected a failure");
+    } catch (ExecutionException e) {
+      return e.getCause();
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.InMemoryProjectDao;
+import projects.dao.UpdateResult;
+import projects.entity.Project;
+
+/**
+ * Batching and merging in WriteBehindQueue. The delay is long, so only flush() and close()
+ * write.
+ */
+class WriteBehindQueueTest {
+  // Remembers the size of every batch of updates it is given
+  private static class CountingDao extends InMemoryProjectDao {
+    final List<Integer> updateBatches = new ArrayList<>();
+
+    @Override
+    public List<UpdateResult> modifyProjectDetails(List<Project> projects) {
+      updateBatches.add(projects.size());
+      return super.modifyProjectDetails(projects);
+    }
+  }
+
+  private CountingDao projectDao;
+  private WriteBehindQueue queue;
+  private Integer projectId;
+
+  @BeforeEach
+  void addProject() {
+    projectDao = new CountingDao();
+    queue = new WriteBehindQueue(projectDao, 100, Duration.ofMinutes(1));
+
+    Project project = new Project();
+    project.setProjectName("Shelf");
+    projectId = projectDao.insertProject(project).getProjectId();
+  }
+
+  @AfterEach
+  void closeQueue() {
+    queue.close();
+  }
+
+  @Test
+  void unversionedUpdatesToOneProjectAreMerged() throws Exception {
+    CompletableFuture<UpdateResult> first = queue.update(edit(null, "Bookshelf", null));
+    CompletableFuture<UpdateResult> second = queue.update(edit(null, null, 3));
+    queue.flush();
+
+    assertEquals(List.of(1), projectDao.updateBatches, "one UPDATE for both");
+    assertEquals(UpdateResult.UPDATED, first.get());
+    assertEquals(UpdateResult.UPDATED, second.get());
+
+    Project saved = projectDao.fetchProjectById(projectId).orElseThrow();
+    assertEquals("Bookshelf", saved.getProjectName());
+    assertEquals(3, saved.getDifficulty());
+    assertEquals(1, saved.getVersion());
+  }
+
+  @Test
+  void versionedUpdatesAreNotMerged() throws Exception {
+    Project first = edit(0, "Bookshelf", null);
+    Project second = edit(0, "Shoe rack", null);
+    CompletableFuture<UpdateResult> firstResult = queue.update(first);
+    CompletableFuture<UpdateResult> secondResult = queue.update(second);
+    queue.flush();
+
+    assertEquals(List.of(2), projectDao.updateBatches, "two UPDATEs, one batch");
+    assertEquals(UpdateResult.UPDATED, firstResult.get());
+    assertEquals(UpdateResult.CONFLICT, secondResult.get());
+    assertEquals(1, first.getVersion(), "the caller gets the new version");
+    assertEquals("Bookshelf",
+        projectDao.fetchProjectById(projectId).orElseThrow().getProjectName());
+  }
+
+  @Test
+  void mergedCallersAreAllMarkedSaved() {
+    Project first = edit(null, "Bookshelf", null);
+    Project second = edit(null, null, 2);
+    queue.update(first);
+    queue.update(second);
+    queue.flush();
+
+    assertTrue(first.getModifiedFields().isEmpty() && second.getModifiedFields().isEmpty());
+  }
+
+  @Test
+  void insertsGetIdsWhenFlushed() throws Exception {
+    Project project = new Project();
+    project.setProjectName("Bench");
+    CompletableFuture<Project> inserted = queue.insert(project);
+
+    assertTrue(!inserted.isDone(), "nothing is written before the flush");
+    queue.flush();
+    assertNotNull(inserted.get().getProjectId());
+  }
+
+  @Test
+  void closeWritesWhatIsWaiting() {
+    queue.update(edit(null, "Bookshelf", null));
+    queue.close();
+
+    assertEquals("Bookshelf",
+        projectDao.fetchProjectById(projectId).orElseThrow().getProjectName());
+  }
+
+  private Project edit(Integer version, String name, Integer difficulty) {
+    Project project = new Project();
+    project.setProjectId(projectId);
+    project.setVersion(version);
+    if (name != null) {
+      project.setProjectName(name);
+    }
+    if (difficulty != null) {
+      project.setDifficulty(difficulty);
+    }
+    return project;
+  }
+}
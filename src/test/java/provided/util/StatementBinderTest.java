@@ -0,0 +1,78 @@
+package provided.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * StatementBinder calls the right driver method for each parameter, in order.
+ */
+class StatementBinderTest {
+  record Row(String name, Integer count, BigDecimal cost, LocalDateTime at) {}
+
+  private static final StatementBinder<Row> BINDER = StatementBinder.<Row>builder()
+      .add(Row::name, String.class)
+      .add(Row::count, Integer.class)
+      .add(Row::cost, BigDecimal.class)
+      .add(Row::at, LocalDateTime.class)
+      .build();
+
+  // The driver calls made on the statement, e.g. "setInt(2, 7)"
+  private final List<String> calls = new ArrayList<>();
+
+  private final PreparedStatement stmt = (PreparedStatement) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class<?>[] {PreparedStatement.class},
+      (proxy, method, args) -> {
+        calls.add(method.getName() + "(" + args[0] + ", " + args[1] + ")");
+        return null;
+      });
+
+  @Test
+  void bindsEachValueWithItsTypedSetter() throws Exception {
+    LocalDateTime at = LocalDateTime.of(2024, 5, 1, 12, 30);
+    int next = BINDER.bind(stmt, new Row("Shelf", 7, new BigDecimal("2.50"), at));
+
+    assertEquals(List.of("setString(1, Shelf)", "setInt(2, 7)", "setBigDecimal(3, 2.50)",
+        "setTimestamp(4, " + Timestamp.valueOf(at) + ")"), calls);
+    assertEquals(5, next);
+  }
+
+  @Test
+  void bindsNullsAsSqlNullOfTheColumnType() throws Exception {
+    BINDER.bind(stmt, new Row(null, null, null, null));
+
+    assertEquals(List.of("setNull(1, " + Types.VARCHAR + ")", "setNull(2, " + Types.INTEGER + ")",
+        "setNull(3, " + Types.DECIMAL + ")", "setNull(4, " + Types.TIMESTAMP + ")"), calls);
+  }
+
+  @Test
+  void startsAtTheGivenIndex() throws Exception {
+    int next = BINDER.bind(stmt, new Row("Shelf", 1, BigDecimal.ONE, null), 3);
+
+    assertEquals("setString(3, Shelf)", calls.get(0));
+    assertEquals(7, next);
+  }
+
+  @Test
+  void setterIsBuiltOncePerType() {
+    assertSame(StatementBinder.setterFor(Long.class), StatementBinder.setterFor(Long.class));
+  }
+
+  @Test
+  void unsupportedTypeIsRejectedWhenBuilding() {
+    assertThrows(DaoBase.DaoException.class,
+        () -> StatementBinder.<Row>builder().add(Row::at, Date.class));
+  }
+}